@@ -0,0 +1,106 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Adaptive Replacement Cache (Megiddo and Modha). Resident pages are split into
+ * T1, pages seen once recently, and T2, pages seen at least twice. The ghost
+ * lists B1 and B2 remember the ids of pages recently evicted from each. A miss
+ * on a ghost shifts the target size p of T1 towards the list that would have
+ * kept the page, so the policy adapts between recency and frequency.
+ * <p>
+ * All lists are insertion-ordered sets with their LRU end first, so every
+ * operation on the hit path is O(1).
+ */
+class ArcPolicy implements BufferPool.EvictionPolicy {
+
+	private final int c;
+	private int p;
+	private final LinkedHashSet<PageId> t1 = new LinkedHashSet<>();
+	private final LinkedHashSet<PageId> t2 = new LinkedHashSet<>();
+	private final LinkedHashSet<PageId> b1 = new LinkedHashSet<>();
+	private final LinkedHashSet<PageId> b2 = new LinkedHashSet<>();
+
+	ArcPolicy(int numPages) {
+		this.c = Math.max(1, numPages);
+		this.p = 0;
+	}
+
+	public void recordAccess(PageId pid) {
+		if (t1.remove(pid) || t2.remove(pid))
+			t2.add(pid);
+	}
+
+	public void recordInsert(PageId pid) {
+		if (t1.contains(pid) || t2.contains(pid)) {
+			recordAccess(pid);
+		} else if (b1.remove(pid)) {
+			p = Math.min(c, p + Math.max(b2.size() / Math.max(1, b1.size()), 1));
+			t2.add(pid);
+		} else if (b2.remove(pid)) {
+			p = Math.max(0, p - Math.max(b1.size() / Math.max(1, b2.size()), 1));
+			t2.add(pid);
+		} else {
+			t1.add(pid);
+		}
+		// bound the directory: |T1| + |B1| <= c and the total <= 2c
+		while (t1.size() + b1.size() > c && !b1.isEmpty())
+			removeFirst(b1);
+		while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * c && !b2.isEmpty())
+			removeFirst(b2);
+	}
+
+	public void remove(PageId pid) {
+		t1.remove(pid);
+		t2.remove(pid);
+	}
+
+	public int temperature(PageId pid) {
+		return t2.contains(pid) ? 2 : 1;
+	}
+
+	public PageId evict(java.util.function.Predicate<PageId> evictable) {
+		boolean fromT1 = !t1.isEmpty() && (t1.size() > p || t2.isEmpty());
+		PageId victim = fromT1 ? evictFrom(t1, b1, evictable) : evictFrom(t2, b2, evictable);
+		if (victim == null)
+			victim = fromT1 ? evictFrom(t2, b2, evictable) : evictFrom(t1, b1, evictable);
+		return victim;
+	}
+
+	/**
+	 * Puts the page back at the LRU end of the list it was evicted from, which
+	 * its ghost list tells, without adapting p.
+	 */
+	public void restore(PageId pid) {
+		if (b1.remove(pid))
+			addFirst(t1, pid);
+		else if (b2.remove(pid))
+			addFirst(t2, pid);
+	}
+
+	private static void addFirst(LinkedHashSet<PageId> list, PageId pid) {
+		List<PageId> rest = new ArrayList<>(list);
+		list.clear();
+		list.add(pid);
+		list.addAll(rest);
+	}
+
+	private static PageId evictFrom(LinkedHashSet<PageId> list, LinkedHashSet<PageId> ghosts,
+			java.util.function.Predicate<PageId> evictable) {
+		for (Iterator<PageId> it = list.iterator(); it.hasNext();) {
+			PageId pid = it.next();
+			if (evictable.test(pid)) {
+				it.remove();
+				ghosts.add(pid);
+				return pid;
+			}
+		}
+		return null;
+	}
+
+	private static void removeFirst(LinkedHashSet<PageId> list) {
+		Iterator<PageId> it = list.iterator();
+		it.next();
+		it.remove();
+	}
+}
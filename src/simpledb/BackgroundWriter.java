@@ -0,0 +1,90 @@
+package simpledb;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.*;
+
+/**
+ * BackgroundWriter periodically writes back dirty pages of a BufferPool whose
+ * changes are committed, so that eviction finds clean frames instead of having
+ * to log and write a page while a transaction waits on its miss. Commits do not
+ * write their pages at all; their changes are safe in the log, and this writer
+ * trickles them out to the table files afterwards.
+ * <p>
+ * All pools share one daemon thread. A writer only holds its pool weakly and
+ * stops once the pool has been collected, so a pool that is simply dropped does
+ * not keep a thread busy. Other periodic pool tasks, such as dumping its
+ * {@link WarmState}, share the thread.
+ */
+class BackgroundWriter implements Runnable {
+	static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "simpledb-page-writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final WeakReference<BufferPool> pool;
+	private final int batch;
+	private long interval;
+	private ScheduledFuture<?> task;
+	private long failures;
+	private Exception lastFailure;
+
+	/**
+	 * @param pool  the pool to write back pages of
+	 * @param batch the maximum number of pages written per round
+	 */
+	BackgroundWriter(BufferPool pool, int batch) {
+		this.pool = new WeakReference<BufferPool>(pool);
+		this.batch = batch;
+	}
+
+	/**
+	 * Runs a round every intervalMillis milliseconds from now on; 0 stops the
+	 * writer.
+	 */
+	synchronized void schedule(long intervalMillis) {
+		if (task != null) {
+			task.cancel(false);
+			task = null;
+		}
+		interval = intervalMillis;
+		if (intervalMillis > 0) {
+			task = SCHEDULER.scheduleWithFixedDelay(this, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	synchronized long getInterval() {
+		return interval;
+	}
+
+	/** @return the number of rounds that failed. */
+	synchronized long getFailures() {
+		return failures;
+	}
+
+	/** @return the exception of the last round that failed, or null if none did. */
+	synchronized Exception getLastFailure() {
+		return lastFailure;
+	}
+
+	private synchronized void failed(Exception e) {
+		failures++;
+		lastFailure = e;
+	}
+
+	public void run() {
+		BufferPool bp = pool.get();
+		if (bp == null) {
+			schedule(0);
+			return;
+		}
+		try {
+			bp.writeBehind(batch);
+		} catch (IOException | RuntimeException e) {
+			// an exception would cancel the task; try again next round, and
+			// leave the pages dirty for eviction if the writes keep failing
+			failed(e);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package simpledb;
+
+/**
+ * BatchIterator is the batch-at-a-time counterpart of {@link DbIterator}: each
+ * call returns a {@link TupleBatch} of up to its capacity rows instead of a
+ * single Tuple, so that the cost of a call is spread over many rows. The same
+ * rules apply: open must be called first, and an iterator calls the open and
+ * close methods of its children.
+ *
+ * @see RowToBatchIterator
+ * @see BatchToRowIterator
+ */
+public interface BatchIterator {
+	/**
+	 * Opens the iterator. This must be called before any of the other methods.
+	 *
+	 * @throws DbException when there are problems opening/accessing the database.
+	 */
+	public void open() throws DbException, TransactionAbortedException;
+
+	/**
+	 * Returns the next batch of rows. The batch may be the one returned by the
+	 * previous call, refilled, so it is only valid until the next call; it has
+	 * at least one selected row.
+	 *
+	 * @return the next batch, or null if there are no more rows.
+	 * @throws IllegalStateException If the iterator has not been opened
+	 */
+	public TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+
+	/**
+	 * Resets the iterator to the start.
+	 *
+	 * @throws DbException           when rewind is unsupported.
+	 * @throws IllegalStateException If the iterator has not been opened
+	 */
+	public void rewind() throws DbException, TransactionAbortedException;
+
+	/**
+	 * @return the TupleDesc of the rows of the batches.
+	 */
+	public TupleDesc getTupleDesc();
+
+	/**
+	 * Closes the iterator.
+	 */
+	public void close();
+}
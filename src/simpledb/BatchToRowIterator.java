@@ -0,0 +1,59 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Implements a DbIterator over the selected rows of the batches of a
+ * BatchIterator, for operators that consume one tuple at a time. A Tuple is
+ * created for each row returned.
+ */
+public class BatchToRowIterator implements DbIterator {
+	private final BatchIterator child;
+	private TupleBatch batch;
+	/** The index in the selection vector of the next row. */
+	private int next;
+	private boolean open;
+
+	public BatchToRowIterator(BatchIterator child) {
+		this.child = child;
+	}
+
+	public void open() throws DbException, TransactionAbortedException {
+		child.open();
+		batch = null;
+		open = true;
+	}
+
+	public boolean hasNext() throws DbException, TransactionAbortedException {
+		if (!open)
+			throw new IllegalStateException("iterator is not open");
+		while (batch == null || next >= batch.numSelected()) {
+			batch = child.nextBatch();
+			next = 0;
+			if (batch == null)
+				return false;
+		}
+		return true;
+	}
+
+	public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return batch.getTuple(batch.getSelection()[next++]);
+	}
+
+	public void rewind() throws DbException, TransactionAbortedException {
+		child.rewind();
+		batch = null;
+	}
+
+	public TupleDesc getTupleDesc() {
+		return child.getTupleDesc();
+	}
+
+	public void close() {
+		child.close();
+		batch = null;
+		open = false;
+	}
+}
@@ -1,7 +1,9 @@
 package simpledb;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from disk.
@@ -11,11 +13,25 @@ import java.io.*;
  * The BufferPool is also responsible for locking; when a transaction fetches a
  * page, BufferPool which check that the transaction has the appropriate locks
  * to read/write the page.
+ * <p>
+ * Pages are written back STEAL/NO-FORCE: a commit only logs the after-images
+ * of its pages and forces the log, and a dirty page may be written at any time,
+ * by eviction or by the background writer, as long as its changes are in the
+ * log first. Aborts undo written pages from the log.
  */
 public class BufferPool {
-	/** Bytes per page, including header. */
+	/**
+	 * Bytes per page, including header, of tables that do not specify their own
+	 * page size. Pool sizes given in pages are in pages of this size.
+	 */
 	public static final int PAGE_SIZE = 4096;
 
+	/** Smallest page size a table may use. */
+	public static final int MIN_PAGE_SIZE = 512;
+
+	/** Largest page size a table may use. */
+	public static final int MAX_PAGE_SIZE = 1 << 20;
+
 	/**
 	 * Default number of pages passed to the constructor. This is used by other
 	 * classes. BufferPool should use the numPages argument to the constructor
@@ -23,19 +39,262 @@ public class BufferPool {
 	 */
 	public static final int DEFAULT_PAGES = 50;
 
+	/** Eviction policy used when none is specified. */
+	public static final Eviction DEFAULT_EVICTION = Eviction.CLOCK;
+
+	/** Maximum number of frames in the ring of a large sequential scan. */
+	public static final int SCAN_RING_PAGES = 16;
+
+	/**
+	 * Default fraction of the pool a table must exceed before sequential scans of
+	 * it run in a BufferRing.
+	 */
+	public static final double DEFAULT_SCAN_RING_THRESHOLD = 0.75;
+
+	/** Default number of pages read ahead of a sequential access. */
+	public static final int DEFAULT_READ_AHEAD_PAGES = 8;
+
+	/** Default milliseconds between two rounds of the background writer. */
+	public static final long DEFAULT_WRITER_INTERVAL_MS = 100;
+
+	/** Maximum number of pages prewarm reads with a single call. */
+	public static final int PREWARM_READ_PAGES = 64;
+
+	/**
+	 * An EvictionPolicy keeps track of the resident pages of a BufferPool and
+	 * decides which of them to evict when a frame is needed. The BufferPool
+	 * reports every hit and every page that becomes resident; bookkeeping on these
+	 * calls must be O(1), since recordAccess sits on the getPage hit path.
+	 * <p>
+	 * All methods are called while holding the pool's monitor, except
+	 * recordAccess on a policy whose concurrentAccess returns true.
+	 */
+	public interface EvictionPolicy {
+		/**
+		 * @return true if recordAccess may be called without the pool's monitor,
+		 *         concurrently with any other method. Hits then take no lock.
+		 */
+		default boolean concurrentAccess() {
+			return false;
+		}
+
+		/** A resident page was accessed. */
+		void recordAccess(PageId pid);
+
+		/** A page became resident after a miss. */
+		void recordInsert(PageId pid);
+
+		/** A resident page left the pool for a reason other than eviction. */
+		void remove(PageId pid);
+
+		/**
+		 * Choose a resident page to evict and stop tracking it as resident.
+		 *
+		 * @param evictable accepts the pages that may be evicted right now, e.g.
+		 *                  only clean ones.
+		 * @return the victim, or null if no resident page is evictable.
+		 */
+		PageId evict(java.util.function.Predicate<PageId> evictable);
+
+		/**
+		 * Undoes the last call to evict, which returned pid, because the page
+		 * could not be evicted after all. The page is tracked as resident again,
+		 * as close as possible to where it was, and no access is counted.
+		 */
+		void restore(PageId pid);
+
+		/**
+		 * @return how likely a resident page is to be accessed again, as a small
+		 *         number that is higher for hotter pages; 1 if the policy cannot
+		 *         tell. Saved with the pool's warm state.
+		 */
+		default int temperature(PageId pid) {
+			return 1;
+		}
+	}
+
+	/** The available eviction policies. */
+	public enum Eviction {
+		/** Second-chance clock sweep over reference bits. */
+		CLOCK {
+			@Override
+			public EvictionPolicy create(int numPages) {
+				return new ClockPolicy(numPages);
+			}
+		},
+		/** Least recently used. */
+		LRU {
+			@Override
+			public EvictionPolicy create(int numPages) {
+				return new LruPolicy();
+			}
+		},
+		/** LRU-2: the page whose second most recent access is oldest. */
+		LRU_K {
+			@Override
+			public EvictionPolicy create(int numPages) {
+				return new LruKPolicy(numPages, 2);
+			}
+		},
+		/** 2Q: a FIFO probation queue in front of an LRU main queue. */
+		TWO_Q {
+			@Override
+			public EvictionPolicy create(int numPages) {
+				return new TwoQueuePolicy(numPages);
+			}
+		},
+		/** Adaptive Replacement Cache. */
+		ARC {
+			@Override
+			public EvictionPolicy create(int numPages) {
+				return new ArcPolicy(numPages);
+			}
+		};
+
+		/**
+		 * @return a new policy instance for a pool of numPages pages.
+		 */
+		public abstract EvictionPolicy create(int numPages);
+	}
+
+	/**
+	 * Priority classes of tables, set in the Catalog. When a page must be evicted,
+	 * tables of a lower class give up their pages first.
+	 */
+	public enum Priority {
+		/** Batch tables, whose pages cycle through the pool. */
+		LOW,
+		/** The class of tables that are not assigned one. */
+		NORMAL,
+		/** Latency-critical tables, whose pages go last. */
+		HIGH
+	}
+
 	private int numPages;
-	private Map<PageId, Page> pages;
-	private Map<PageId, TransactionId> pageLocks;
+	/** Bytes the pool holds: numPages pages of PAGE_SIZE bytes. */
+	private final long capacity;
+	/** Bytes of the resident pages and of the pages being read. */
+	private long usedBytes;
+	/**
+	 * The resident pages. Only changed while holding the pool's monitor, but read
+	 * without it on the hit path.
+	 */
+	private final Map<PageId, Page> pages;
+	/**
+	 * Pages being read after a miss, completed once they are resident. Other
+	 * transactions that miss on such a page wait for it instead of reading it
+	 * again.
+	 */
+	private final Map<PageId, CompletableFuture<Page>> loading;
+	private final EvictionPolicy policy;
+	/** Resident pages read by a scan through a BufferRing, unknown to policy. */
+	private final Set<PageId> ringPages;
+	/**
+	 * Pin counts of the pinned pages; pinned pages are never evicted. A page
+	 * that is being removed holds EVICTING instead, which pinPage waits out.
+	 */
+	private final Map<PageId, Integer> pins;
+	private static final int EVICTING = -1;
+	/** The pins each transaction holds, released when it completes. */
+	private final Map<TransactionId, Map<PageId, Integer>> pinsByTransaction;
+	private double scanRingThreshold = DEFAULT_SCAN_RING_THRESHOLD;
+	private final ReadAhead readAhead;
+	/** The frames pages are read into, or null to keep pages on the heap. */
+	private final FrameArena arena;
+	private final BackgroundWriter writer;
+	private final WarmState warmState;
+	private final LockManager lockManager;
+	private final BufferPoolMetrics metrics = new BufferPoolMetrics();
+	private volatile long warmupNanos;
+	/** Residency and hit counts of the tables that used the pool. */
+	private final Map<Integer, TableUsage> tableUsage = new ConcurrentHashMap<>();
+
+	/**
+	 * How much of the pool a table holds. Only changed while holding the pool's
+	 * monitor.
+	 */
+	private static final class TableUsage {
+		long bytes;
+		int pages;
+	}
 
 	/**
-	 * Creates a BufferPool that caches up to numPages pages.
+	 * Creates a BufferPool that caches up to numPages pages. Tables with pages
+	 * larger or smaller than PAGE_SIZE take up correspondingly more or less of
+	 * the pool.
 	 *
 	 * @param numPages maximum number of pages in this buffer pool.
 	 */
 	public BufferPool(int numPages) {
+		this(numPages, DEFAULT_EVICTION);
+	}
+
+	/**
+	 * Creates a BufferPool that caches up to numPages pages and evicts them
+	 * according to the specified policy.
+	 *
+	 * @param numPages maximum number of pages in this buffer pool.
+	 * @param eviction the eviction policy to use.
+	 */
+	public BufferPool(int numPages, Eviction eviction) {
+		this(numPages, eviction, null);
+	}
+
+	/**
+	 * Creates a BufferPool that caches as many pages as fit in the specified
+	 * number of bytes.
+	 * <p>
+	 * An off-heap pool allocates all of its frames up front, outside the Java
+	 * heap, and reads pages into them. The pages the pool holds then add nothing
+	 * to garbage collection pauses, which matters for pools of many gigabytes. A
+	 * page that leaves an off-heap pool is copied to the heap first, so
+	 * transactions that still hold it keep a valid page. Only pages of
+	 * PAGE_SIZE bytes are read into frames; pages of other sizes stay on the
+	 * heap.
+	 *
+	 * @param bytes    the memory for pages, rounded down to whole pages
+	 * @param eviction the eviction policy to use.
+	 * @param offHeap  whether to keep the pages off the Java heap
+	 */
+	public BufferPool(long bytes, Eviction eviction, boolean offHeap) {
+		this(pagesIn(bytes), eviction, offHeap ? new FrameArena(pagesIn(bytes)) : null);
+	}
+
+	private static int pagesIn(long bytes) {
+		long n = bytes / PAGE_SIZE;
+		if (n < 1 || n > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("cannot make a pool of " + bytes + " bytes");
+		}
+		return (int) n;
+	}
+
+	private BufferPool(int numPages, Eviction eviction, FrameArena arena) {
 		this.numPages = numPages;
-		this.pages = new HashMap<>();
-		this.pageLocks = new HashMap<>();
+		this.capacity = (long) numPages * PAGE_SIZE;
+		this.arena = arena;
+		this.pages = new ConcurrentHashMap<>();
+		this.loading = new HashMap<>();
+		this.policy = eviction.create(numPages);
+		this.ringPages = ConcurrentHashMap.newKeySet();
+		this.pins = new ConcurrentHashMap<>();
+		this.pinsByTransaction = new ConcurrentHashMap<>();
+		this.readAhead = new ReadAhead(DEFAULT_READ_AHEAD_PAGES);
+		this.lockManager = new LockManager();
+		this.writer = new BackgroundWriter(this, Math.max(1, numPages / 4));
+		writer.schedule(DEFAULT_WRITER_INTERVAL_MS);
+		this.warmState = new WarmState(this);
+	}
+
+	/** @return true if this pool keeps its pages off the Java heap. */
+	public boolean isOffHeap() {
+		return arena != null;
+	}
+
+	/**
+	 * @return the LockManager that grants page locks for this buffer pool.
+	 */
+	public LockManager getLockManager() {
+		return lockManager;
 	}
 
 	/**
@@ -53,20 +312,686 @@ public class BufferPool {
 	 */
 	public Page getPage(TransactionId tid, PageId pid, Permissions perm)
 			throws TransactionAbortedException, DbException {
-		if (pages.containsKey(pid)) {
-			return pages.get(pid);
+		return getPage(tid, pid, perm, null);
+	}
+
+	/**
+	 * Retrieve the specified page on behalf of a sequential scan. Works like
+	 * {@link #getPage(TransactionId, PageId, Permissions)}, except that a page
+	 * read from disk is placed in the scan's ring rather than handed to the
+	 * eviction policy, and the frame of the ring's oldest page is reused once the
+	 * ring is full. A page read through a ring joins the regular pool as soon as it
+	 * is requested without one.
+	 * <p>
+	 * With or without a ring, sequential misses within a table make the pool read
+	 * the following pages in the background; a miss on such a page takes the
+	 * prefetched image instead of reading it again.
+	 * <p>
+	 * A hit takes no lock if the eviction policy can record accesses
+	 * concurrently. A miss only holds the pool's monitor to pick a frame and to
+	 * install the page; the read itself runs outside it, and concurrent misses
+	 * on the same page wait for that one read.
+	 *
+	 * @param ring the scan's ring, or null to use the pool normally
+	 */
+	public Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+			throws TransactionAbortedException, DbException {
+		if (!metrics.isEnabled()) {
+			return fetchPage(tid, pid, perm, ring);
+		}
+		long start = System.nanoTime();
+		try {
+			return fetchPage(tid, pid, perm, ring);
+		} finally {
+			metrics.recordGetPage(System.nanoTime() - start);
+		}
+	}
+
+	private Page fetchPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+			throws TransactionAbortedException, DbException {
+		// lock outside the pool monitor: waiting for a page lock must not block
+		// transactions working on other pages
+		lockManager.acquire(tid, pid, perm);
+
+		Page page = pages.get(pid);
+		if (page != null && policy.concurrentAccess()) {
+			if (!ringPages.contains(pid)) {
+				policy.recordAccess(pid);
+				metrics.recordHit(pid);
+				return page;
+			} else if (ring != null) {
+				metrics.recordHit(pid);
+				return page;
+			}
+			// a ring page requested outside a scan is adopted below
 		}
 
-		if (pages.size() >= numPages) {
+		while (true) {
+			CompletableFuture<Page> latch;
+			CompletableFuture<Page> staged = null;
+			int frame = -1;
+			int size = 0;
+			boolean reader = false;
+			synchronized (this) {
+				page = pages.get(pid);
+				if (page != null) {
+					if (!ringPages.contains(pid)) {
+						policy.recordAccess(pid);
+					} else if (ring == null) {
+						adoptRingPage(pid);
+					}
+					metrics.recordHit(pid);
+					return page;
+				}
+
+				latch = loading.get(pid);
+				if (latch == null) {
+					if (ring != null && ring.isFull()) {
+						recycle(ring.poll());
+					}
+					size = pageSize(pid);
+					makeRoom(pid, size);
+					usedBytes += size;
+					latch = new CompletableFuture<>();
+					loading.put(pid, latch);
+					staged = readAhead.take(pid);
+					frame = arena != null && size == PAGE_SIZE ? arena.allocate() : -1;
+					reader = true;
+					metrics.recordMiss(pid);
+				}
+			}
+
+			if (!reader) {
+				try {
+					latch.join();
+				} catch (CompletionException e) {
+					// the read failed; try it ourselves
+				}
+				continue;
+			}
+			return load(pid, ring, latch, staged, frame, size);
+		}
+	}
+
+	/**
+	 * Retrieves a page like {@link #getPage(TransactionId, PageId, Permissions)}
+	 * and pins it: the page stays resident, and the object returned stays the
+	 * page's image in the pool, until it is unpinned. Every pin should be
+	 * matched by a call to {@link #unpinPage}; pins still held when the
+	 * transaction completes are released then.
+	 */
+	public Page pinPage(TransactionId tid, PageId pid, Permissions perm)
+			throws TransactionAbortedException, DbException {
+		return pinPage(tid, pid, perm, null);
+	}
+
+	/**
+	 * Retrieves a page for a sequential scan like
+	 * {@link #getPage(TransactionId, PageId, Permissions, BufferRing)} and pins
+	 * it.
+	 *
+	 * @see #pinPage(TransactionId, PageId, Permissions)
+	 */
+	public Page pinPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+			throws TransactionAbortedException, DbException {
+		while (true) {
+			Page page = getPage(tid, pid, perm, ring);
+			int n = pins.compute(pid, (p, c) -> c == null ? 1 : c == EVICTING ? EVICTING : c + 1);
+			if (n == EVICTING) {
+				// the page is being removed; read it again once it is gone
+				Thread.yield();
+				continue;
+			}
+			// a page is only removed while it holds no pin, so it is safe if it
+			// is still resident after pinning
+			if (pages.get(pid) == page) {
+				pinsByTransaction.computeIfAbsent(tid, t -> new ConcurrentHashMap<>()).merge(pid, 1, Integer::sum);
+				return page;
+			}
+			releasePins(pid, 1);
+		}
+	}
+
+	/**
+	 * Releases one pin a transaction holds on a page. The page may be evicted
+	 * once all of its pins are released. Pins the transaction no longer holds,
+	 * because it completed, are ignored.
+	 */
+	public void unpinPage(TransactionId tid, PageId pid) {
+		Map<PageId, Integer> held = pinsByTransaction.get(tid);
+		if (held == null) {
+			return;
+		}
+		boolean[] released = new boolean[1];
+		held.computeIfPresent(pid, (p, n) -> {
+			released[0] = true;
+			return n == 1 ? null : n - 1;
+		});
+		if (released[0]) {
+			releasePins(pid, 1);
+		}
+	}
+
+	/** Takes n pins off a page's pin count. */
+	private void releasePins(PageId pid, int n) {
+		pins.computeIfPresent(pid, (p, c) -> c <= n ? null : c - n);
+	}
+
+	/** @return the number of pins held on a page. */
+	public int getPinCount(PageId pid) {
+		Integer n = pins.get(pid);
+		return n == null ? 0 : Math.max(0, n);
+	}
+
+	private boolean isPinned(PageId pid) {
+		Integer n = pins.get(pid);
+		return n != null && n > 0;
+	}
+
+	/**
+	 * Removes a page from the pool unless it is pinned. Claiming the page and
+	 * checking its pin count are one step, so a concurrent pinPage either pins
+	 * the page first, and it stays, or waits until it is gone and reads it
+	 * again.
+	 *
+	 * @return false if the page is pinned
+	 */
+	private boolean removeUnpinned(PageId pid) {
+		if (pins.putIfAbsent(pid, EVICTING) != null) {
+			return false;
+		}
+		try {
+			removePage(pid);
+		} finally {
+			pins.remove(pid, EVICTING);
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a page this thread registered as loading, installs it and releases
+	 * the transactions waiting for it.
+	 *
+	 * @param staged the page's read-ahead, or null if it was not read ahead
+	 * @param frame  the off-heap frame to read the page into, or -1
+	 * @param size   the bytes taken up for the page while it is read
+	 */
+	private Page load(PageId pid, BufferRing ring, CompletableFuture<Page> latch, CompletableFuture<Page> staged,
+			int frame, int size) {
+		Page page = null;
+		try {
+			if (staged != null) {
+				try {
+					page = staged.join();
+				} catch (CompletionException | CancellationException e) {
+					// read it again below
+				}
+			}
+			boolean timed = page == null && metrics.isEnabled();
+			long start = timed ? System.nanoTime() : 0;
+			if (frame >= 0) {
+				Page framed = readIntoFrame(pid, frame, page);
+				page = framed != null ? framed : page;
+			}
+			if (page == null) {
+				DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
+				page = file.readPage(pid);
+			}
+			if (timed) {
+				metrics.recordRead(pid, System.nanoTime() - start);
+			}
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				loading.remove(pid);
+				usedBytes -= size;
+				if (frame >= 0) {
+					arena.release(frame);
+				}
+			}
+			latch.completeExceptionally(e);
+			throw e;
+		}
+
+		synchronized (this) {
+			loading.remove(pid);
+			if (frame >= 0 && !(page instanceof HeapPage && ((HeapPage) page).inFrame())) {
+				arena.release(frame);
+			}
+			usedBytes += page.getPageSize() - size;
+			pages.put(pid, page);
+			recordResidency(pid, page.getPageSize(), 1);
+			if (ring != null) {
+				ringPages.add(pid);
+				ring.add(pid);
+			} else {
+				policy.recordInsert(pid);
+			}
+			readAhead.recordAccess(pid, p -> pages.containsKey(p) || loading.containsKey(p));
+		}
+		latch.complete(page);
+		return page;
+	}
+
+	/**
+	 * Reads a page into an off-heap frame, or copies its read-ahead image there.
+	 *
+	 * @param staged the page's read-ahead image, or null to read it from its file
+	 * @return the page, or null if its file cannot read into a frame
+	 */
+	private Page readIntoFrame(PageId pid, int frame, Page staged) {
+		ByteBuffer buf = arena.frame(frame);
+		if (staged != null) {
+			buf.put(staged.getPageData());
+			buf.clear();
+		} else {
+			DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
+			if (!(file instanceof HeapFile)) {
+				return null;
+			}
+			((HeapFile) file).readPage(pid, buf);
+		}
+		try {
+			return new HeapPage((HeapPageId) pid, buf, frame);
+		} catch (IOException e) {
+			throw new RuntimeException("failed to read page " + pid.pageno() + " into a frame", e);
+		}
+	}
+
+	/**
+	 * Gives back the frame of a page that left the pool. The page's image moves
+	 * to the heap, since transactions may still be using the page.
+	 */
+	private void releaseFrame(Page page) {
+		if (arena != null && page instanceof HeapPage) {
+			int frame = ((HeapPage) page).detach();
+			if (frame >= 0) {
+				arena.release(frame);
+			}
+		}
+	}
+
+	/**
+	 * Returns a ring for a sequential scan over a table of tablePages pages of
+	 * PAGE_SIZE bytes, or null if the table is small enough to be scanned through
+	 * the regular pool.
+	 */
+	public BufferRing newScanRing(int tablePages) {
+		return newScanRing(tablePages, PAGE_SIZE);
+	}
+
+	/**
+	 * Returns a ring for a sequential scan over a table of tablePages pages of
+	 * pageSize bytes, or null if the table is small enough to be scanned through
+	 * the regular pool. The ring takes up at most an eighth of the pool.
+	 */
+	public BufferRing newScanRing(int tablePages, int pageSize) {
+		if ((double) tablePages * pageSize <= scanRingThreshold * capacity) {
+			return null;
+		}
+		return new BufferRing((int) Math.min(SCAN_RING_PAGES, Math.max(1, capacity / 8 / pageSize)));
+	}
+
+	/** @return the bytes a page of the specified table takes up in the pool. */
+	private static int pageSize(PageId pid) {
+		return Database.getCatalog().getPageSize(pid.getTableId());
+	}
+
+	/**
+	 * Evicts pages until bytes more bytes of pid's table fit in the pool. A table
+	 * that would exceed its maximum share of the pool gives up one of its own
+	 * pages first, if it has one that can go. Pages being read count as taken;
+	 * when nothing else is resident, the pool grows past its size until the reads
+	 * finish.
+	 */
+	private void makeRoom(PageId pid, int bytes) throws DbException {
+		int tableId = pid.getTableId();
+		double maxShare = Database.getCatalog().getMaxPoolShare(tableId);
+		TableUsage usage = tableUsage.get(tableId);
+		if (maxShare < 1 && usage != null) {
+			while (usage.bytes + bytes > maxShare * capacity && evictPage(p -> p.getTableId() == tableId)) {
+			}
+		}
+		while (usedBytes + bytes > capacity && !pages.isEmpty()) {
 			evictPage();
 		}
+	}
 
-		DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
-		Page page = file.readPage(pid);
-		pages.put(pid, page);
+	private TableUsage usage(int tableId) {
+		return tableUsage.computeIfAbsent(tableId, t -> new TableUsage());
+	}
+
+	/** Adds to the residency of pid's table. */
+	private void recordResidency(PageId pid, int bytes, int pages) {
+		TableUsage usage = usage(pid.getTableId());
+		usage.bytes += bytes;
+		usage.pages += pages;
+	}
+
+	/**
+	 * Removes a page from the pool's map and gives back the memory it took up.
+	 *
+	 * @return the page, or null if it was not resident
+	 */
+	private Page removePage(PageId pid) {
+		Page page = pages.remove(pid);
+		if (page != null) {
+			usedBytes -= page.getPageSize();
+			recordResidency(pid, -page.getPageSize(), -1);
+			releaseFrame(page);
+		}
 		return page;
 	}
 
+	/**
+	 * Sets the fraction of the pool a table must exceed before its sequential
+	 * scans run in a BufferRing.
+	 */
+	public void setScanRingThreshold(double fraction) {
+		this.scanRingThreshold = fraction;
+	}
+
+	/**
+	 * Sets how many pages are read ahead of a sequential access; 0 disables
+	 * read-ahead.
+	 */
+	public synchronized void setReadAheadWindow(int pages) {
+		readAhead.setWindow(pages);
+	}
+
+	/** @return the number of pages read ahead of a sequential access. */
+	public synchronized int getReadAheadWindow() {
+		return readAhead.getWindow();
+	}
+
+	/**
+	 * Sets the milliseconds between two rounds of the background writer; 0 stops
+	 * it, leaving all write-back to eviction.
+	 */
+	public void setBackgroundWriterInterval(long millis) {
+		writer.schedule(millis);
+	}
+
+	/** @return the milliseconds between two rounds of the background writer. */
+	public long getBackgroundWriterInterval() {
+		return writer.getInterval();
+	}
+
+	/**
+	 * @return the number of rounds of the background writer that failed to write
+	 *         back a page. The pages stay dirty, and are written by a later
+	 *         round or by eviction.
+	 */
+	public long getBackgroundWriterFailures() {
+		return writer.getFailures();
+	}
+
+	/**
+	 * @return the exception of the last round of the background writer that
+	 *         failed, or null if none did.
+	 */
+	public Exception getLastBackgroundWriterFailure() {
+		return writer.getLastFailure();
+	}
+
+	/**
+	 * Saves the warm state of this pool to file every intervalMillis
+	 * milliseconds, for {@link #prewarm} to read after a restart; 0 stops saving
+	 * it.
+	 */
+	public void setWarmStateDump(File file, long intervalMillis) {
+		warmState.schedule(file, intervalMillis);
+	}
+
+	/** @return the milliseconds between two dumps of the warm state. */
+	public long getWarmStateDumpInterval() {
+		return warmState.getInterval();
+	}
+
+	/** @return the number of periodic warm state dumps that failed. */
+	public long getWarmStateDumpFailures() {
+		return warmState.getFailures();
+	}
+
+	/**
+	 * @return the exception of the last periodic warm state dump that failed,
+	 *         or null if none did.
+	 */
+	public Exception getLastWarmStateDumpFailure() {
+		return warmState.getLastFailure();
+	}
+
+	/** Stops the periodic tasks of a pool that is being replaced. */
+	void stopBackgroundTasks() {
+		writer.schedule(0);
+		warmState.schedule(null, 0);
+	}
+
+	/**
+	 * Saves the ids of the resident pages, and their temperature according to the
+	 * eviction policy, to file. Pages only read by scans through a ring are saved
+	 * as the coldest.
+	 */
+	public void dumpWarmState(File file) throws IOException {
+		List<WarmState.Entry> entries = new ArrayList<>();
+		synchronized (this) {
+			for (PageId pid : pages.keySet()) {
+				int temperature = ringPages.contains(pid) ? 0 : policy.temperature(pid);
+				entries.add(new WarmState.Entry(pid.getTableId(), pid.pageno(), temperature));
+			}
+		}
+		WarmState.write(file, entries);
+	}
+
+	/**
+	 * Reads the pages saved by {@link #dumpWarmState} back into the pool, so that
+	 * a restarted database starts out with the pages it was using. Pages are
+	 * chosen hottest first for as long as they fit, and read in file order, with
+	 * one sequential read for each run of up to PREWARM_READ_PAGES consecutive
+	 * pages. Pages of tables that are no longer in the catalog, or no longer that
+	 * large, are skipped.
+	 * <p>
+	 * The pool's monitor is held throughout, so that no page is written while it
+	 * is being read; call this at startup, after loading the catalog and before
+	 * running queries.
+	 *
+	 * @return the number of pages read; 0 if file does not exist
+	 * @see #getWarmupMillis
+	 */
+	public synchronized int prewarm(File file) throws IOException {
+		long start = System.nanoTime();
+		if (!file.exists()) {
+			return 0;
+		}
+		List<WarmState.Entry> entries = WarmState.read(file);
+		entries.sort((a, b) -> Integer.compare(b.temperature, a.temperature));
+
+		List<WarmState.Entry> wanted = new ArrayList<>();
+		long bytes = usedBytes;
+		for (WarmState.Entry e : entries) {
+			DbFile f;
+			try {
+				f = Database.getCatalog().getDbFile(e.tableId);
+			} catch (NoSuchElementException ex) {
+				continue;
+			}
+			HeapPageId pid = new HeapPageId(e.tableId, e.pageno);
+			if (!(f instanceof HeapFile) || e.pageno >= ((HeapFile) f).numPages() || pages.containsKey(pid)
+					|| loading.containsKey(pid) || bytes + f.getPageSize() > capacity) {
+				continue;
+			}
+			bytes += f.getPageSize();
+			wanted.add(e);
+		}
+
+		List<WarmState.Entry> inFileOrder = new ArrayList<>(wanted);
+		inFileOrder.sort(Comparator.<WarmState.Entry>comparingInt(e -> e.tableId).thenComparingInt(e -> e.pageno));
+		Map<PageId, Page> read = new HashMap<>();
+		for (int i = 0; i < inFileOrder.size();) {
+			WarmState.Entry first = inFileOrder.get(i);
+			int n = 1;
+			while (i + n < inFileOrder.size() && n < PREWARM_READ_PAGES
+					&& inFileOrder.get(i + n).tableId == first.tableId
+					&& inFileOrder.get(i + n).pageno == first.pageno + n) {
+				n++;
+			}
+			HeapFile f = (HeapFile) Database.getCatalog().getDbFile(first.tableId);
+			for (Page page : f.readPages(first.pageno, n)) {
+				read.put(page.getId(), page);
+				if (metrics.isEnabled()) {
+					metrics.recordRead(page.getId(), -1);
+				}
+			}
+			i += n;
+		}
+
+		// coldest first, so that the hottest pages are the most recently used;
+		// pages that were re-referenced are accessed once more to say so
+		for (int i = wanted.size() - 1; i >= 0; i--) {
+			WarmState.Entry e = wanted.get(i);
+			PageId pid = new HeapPageId(e.tableId, e.pageno);
+			Page page = read.get(pid);
+			int frame = arena != null && page.getPageSize() == PAGE_SIZE ? arena.allocate() : -1;
+			if (frame >= 0) {
+				page = readIntoFrame(pid, frame, page);
+			}
+			usedBytes += page.getPageSize();
+			pages.put(pid, page);
+			recordResidency(pid, page.getPageSize(), 1);
+			policy.recordInsert(pid);
+			if (e.temperature > 1) {
+				policy.recordAccess(pid);
+			}
+			readAhead.invalidate(pid);
+		}
+		warmupNanos = System.nanoTime() - start;
+		return wanted.size();
+	}
+
+	/** @return the milliseconds the last call to prewarm took; 0 if none. */
+	public long getWarmupMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(warmupNanos);
+	}
+
+	/**
+	 * @return the counters and latencies of this pool
+	 * @see #setMetricsEnabled
+	 */
+	public BufferPoolMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Starts or stops recording metrics. Recording is on by default; with it off,
+	 * only the total hit and miss counts and ratio below keep changing, and the
+	 * per-table ones stop.
+	 */
+	public void setMetricsEnabled(boolean enabled) {
+		metrics.setEnabled(enabled);
+	}
+
+	/** @return the number of page requests served from the pool. */
+	public long getHitCount() {
+		return metrics.getHits();
+	}
+
+	/** @return the number of page requests that read their page. */
+	public long getMissCount() {
+		return metrics.getMisses();
+	}
+
+	/**
+	 * @return the fraction of page requests served from the pool, or NaN before
+	 *         the first request. Pages read by prewarm count as neither.
+	 */
+	public double getHitRatio() {
+		return metrics.getHitRatio();
+	}
+
+	/** @return the number of pages in the pool. */
+	public int getResidentPages() {
+		return pages.size();
+	}
+
+	/** @return the number of pages in the pool that are dirty. */
+	public synchronized int getDirtyPages() {
+		int n = 0;
+		for (Page page : pages.values()) {
+			if (page.isDirty() != null) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/** @return the bytes taken up by the pages in the pool and being read. */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/** @return the bytes of pages this pool holds. */
+	public long getCapacityBytes() {
+		return capacity;
+	}
+
+	/** @return the number of pages of the specified table in the pool. */
+	public synchronized int getResidentPages(int tableId) {
+		TableUsage usage = tableUsage.get(tableId);
+		return usage == null ? 0 : usage.pages;
+	}
+
+	/** @return the bytes the pages of the specified table take up in the pool. */
+	public synchronized long getResidentBytes(int tableId) {
+		TableUsage usage = tableUsage.get(tableId);
+		return usage == null ? 0 : usage.bytes;
+	}
+
+	/**
+	 * @return the number of requests for pages of the specified table served
+	 *         from the pool, while metrics were enabled.
+	 */
+	public long getHitCount(int tableId) {
+		return metrics.getHits(tableId);
+	}
+
+	/**
+	 * @return the number of requests for pages of the specified table that read
+	 *         their page, while metrics were enabled.
+	 */
+	public long getMissCount(int tableId) {
+		return metrics.getMisses(tableId);
+	}
+
+	/**
+	 * @return the fraction of requests for pages of the specified table served
+	 *         from the pool, or NaN before the first request.
+	 */
+	public double getHitRatio(int tableId) {
+		return metrics.getHitRatio(tableId);
+	}
+
+	/** Hands a page that was read through a ring over to the eviction policy. */
+	private void adoptRingPage(PageId pid) {
+		ringPages.remove(pid);
+		policy.recordInsert(pid);
+	}
+
+	/**
+	 * Frees the frame of a page leaving a scan's ring. The page stays resident if
+	 * it was adopted by the regular pool in the meantime, and is adopted if it is
+	 * dirty, so that the scan never waits for a page to be written back, or
+	 * pinned.
+	 */
+	private void recycle(PageId pid) {
+		if (pid == null || !ringPages.contains(pid)) {
+			return;
+		}
+		if (pages.get(pid).isDirty() == null && removeUnpinned(pid)) {
+			ringPages.remove(pid);
+		} else {
+			adoptRingPage(pid);
+		}
+	}
+
 	/**
 	 * Releases the lock on a page. Calling this is very risky, and may result in
 	 * wrong behavior. Think hard about who needs to call this and why, and why they
@@ -76,7 +1001,7 @@ public class BufferPool {
 	 * @param pid the ID of the page to unlock
 	 */
 	public void releasePage(TransactionId tid, PageId pid) {
-		pageLocks.remove(pid);
+		lockManager.release(tid, pid);
 	}
 
 	/**
@@ -90,7 +1015,7 @@ public class BufferPool {
 
 	/** Return true if the specified transaction has a lock on the specified page */
 	public boolean holdsLock(TransactionId tid, PageId p) {
-		return tid.equals(pageLocks.get(p));
+		return lockManager.holdsLock(tid, p);
 	}
 
 	/**
@@ -101,21 +1026,59 @@ public class BufferPool {
 	 * @param commit a flag indicating whether we should commit or abort
 	 */
 	public void transactionComplete(TransactionId tid, boolean commit) throws IOException {
-		if (commit) {
-			flushPages(tid);
-		} else {
-			// Abort: revert changes
-			for (PageId pid : pages.keySet()) {
-				Page page = pages.get(pid);
-				if (tid.equals(page.isDirty())) {
-					Page oldPage = page.getBeforeImage();
-					pages.put(pid, oldPage);
+		synchronized (this) {
+			LogFile log = Database.getLogFile();
+			if (commit) {
+				// NO-FORCE: the after-images go to the log, the pages stay dirty
+				// until eviction or the background writer writes them
+				for (Page page : pages.values()) {
+					synchronized (page) {
+						if (tid.equals(page.isDirty())) {
+							log.logWrite(tid, page.getBeforeImage(), page);
+							page.setBeforeImage();
+						} else if (lockManager.holdsExclusive(tid, page.getId())) {
+							// written back before the commit, and logged then
+							page.setBeforeImage();
+						}
+					}
+				}
+				if (log.hasLogRecords(tid)) {
+					log.logCommit(tid);
+				}
+			} else {
+				// Abort: restore the pages that were written back from the log,
+				// which also drops them from the pool, then revert the rest
+				if (log.hasLogRecords(tid)) {
+					log.logAbort(tid);
+				}
+				for (Map.Entry<PageId, Page> entry : pages.entrySet()) {
+					Page page = entry.getValue();
+					if (tid.equals(page.isDirty())) {
+						// the before-image may hold committed changes that are
+						// not on disk yet, so it still needs writing
+						Page restored = page.getBeforeImage();
+						restored.markDirty(true, tid);
+						entry.setValue(restored);
+						releaseFrame(page);
+						DbFile file = Database.getCatalog().getDbFile(entry.getKey().getTableId());
+						if (file instanceof HeapFile) {
+							// the undone inserts may have filled the page
+							((HeapFile) file).updateFreeSpace(restored);
+						}
+					}
 				}
 			}
 		}
 
+		// release the pins of iterators that were never closed, e.g. after an
+		// operator failed
+		Map<PageId, Integer> held = pinsByTransaction.remove(tid);
+		if (held != null) {
+			held.forEach(this::releasePins);
+		}
+
 		// Release locks held by the transaction
-		pageLocks.entrySet().removeIf(entry -> tid.equals(entry.getValue()));
+		lockManager.releaseAll(tid);
 	}
 
 	/**
@@ -135,9 +1098,11 @@ public class BufferPool {
 			throws DbException, IOException, TransactionAbortedException {
 		HeapFile table = (HeapFile) Database.getCatalog().getDbFile(tableId);
 		ArrayList<Page> affectedPages = table.addTuple(tid, t);
-		for (Page page : affectedPages) {
-			page.markDirty(true, tid);
-			pages.put(page.getId(), page);
+		synchronized (this) {
+			for (Page page : affectedPages) {
+				page.markDirty(true, tid);
+				cachePage(page);
+			}
 		}
 	}
 
@@ -157,7 +1122,9 @@ public class BufferPool {
 		HeapFile table = (HeapFile) Database.getCatalog().getDbFile(t.getRecordId().getPageId().getTableId());
 		Page affectedPage = table.deleteTuple(tid, t);
 		affectedPage.markDirty(true, tid);
-		pages.put(affectedPage.getId(), affectedPage);
+		synchronized (this) {
+			cachePage(affectedPage);
+		}
 	}
 
 	/**
@@ -176,11 +1143,46 @@ public class BufferPool {
 	 * cache.
 	 */
 	public synchronized void discardPage(PageId pid) {
-		pages.remove(pid);
+		if (removePage(pid) != null) {
+			if (!ringPages.remove(pid)) {
+				policy.remove(pid);
+			}
+		}
+		// the page is being restored on disk behind the pool's back
+		readAhead.invalidate(pid);
+	}
+
+	/**
+	 * Makes the specified page the cached version of its page id, evicting a page
+	 * first if it is not resident yet and the pool is full.
+	 */
+	private synchronized void cachePage(Page page) throws DbException {
+		PageId pid = page.getId();
+		if (pages.containsKey(pid)) {
+			Page old = pages.put(pid, page);
+			if (old != page) {
+				releaseFrame(old);
+			}
+			if (ringPages.contains(pid)) {
+				adoptRingPage(pid);
+			} else {
+				policy.recordAccess(pid);
+			}
+			return;
+		}
+		makeRoom(pid, page.getPageSize());
+		readAhead.invalidate(pid);
+		usedBytes += page.getPageSize();
+		pages.put(pid, page);
+		recordResidency(pid, page.getPageSize(), 1);
+		policy.recordInsert(pid);
 	}
 
 	/**
-	 * Flushes a certain page to disk
+	 * Flushes a certain page to disk. Changes to the page that are not in the log
+	 * yet are logged, and the log forced, before the page is written. The page's
+	 * monitor is held throughout, so the image that is logged is the one written
+	 * even while a transaction is modifying the page.
 	 *
 	 * @param pid an ID indicating the page to flush
 	 */
@@ -190,9 +1192,29 @@ public class BufferPool {
 			throw new NoSuchElementException("Page not found in BufferPool");
 		}
 
-		if (page.isDirty() != null) {
+		synchronized (page) {
+			TransactionId dirtier = page.isDirty();
+			if (dirtier == null) {
+				return;
+			}
+			// a page whose image equals its before-image holds committed
+			// changes, which were logged at commit
+			Page before = page.getBeforeImage();
+			if (!Arrays.equals(before.getPageData(), page.getPageData())) {
+				// the page may be modified before it is marked dirty, so the
+				// transaction that holds the page is the one that changed it
+				TransactionId holder = lockManager.exclusiveHolder(pid);
+				LogFile log = Database.getLogFile();
+				log.logWrite(holder != null ? holder : dirtier, before, page);
+				log.force();
+			}
 			DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
+			boolean timed = metrics.isEnabled();
+			long start = timed ? System.nanoTime() : 0;
 			file.writePage(page);
+			if (timed) {
+				metrics.recordWrite(pid, System.nanoTime() - start);
+			}
 			page.markDirty(false, null);
 		}
 	}
@@ -201,27 +1223,174 @@ public class BufferPool {
 	 * Write all pages of the specified transaction to disk.
 	 */
 	public synchronized void flushPages(TransactionId tid) throws IOException {
-//		for (Page page : pages.values()) {
-//			if (tid.equals(page.isDirty())) {
-//				flushPage(page.getId());
-//			}
-//		}
+		for (Page page : pages.values()) {
+			if (tid.equals(page.isDirty())) {
+				flushPage(page.getId());
+			}
+		}
+	}
+
+	/**
+	 * Writes back up to maxPages dirty pages whose changes are committed, that is,
+	 * pages no transaction holds an exclusive lock on. Called by the background
+	 * writer; the pool monitor is only held for one page at a time.
+	 *
+	 * @return the number of pages written.
+	 */
+	int writeBehind(int maxPages) throws IOException {
+		List<PageId> candidates = new ArrayList<>();
+		synchronized (this) {
+			for (Map.Entry<PageId, Page> entry : pages.entrySet()) {
+				if (candidates.size() >= maxPages) {
+					break;
+				}
+				if (entry.getValue().isDirty() != null && lockManager.exclusiveHolder(entry.getKey()) == null) {
+					candidates.add(entry.getKey());
+				}
+			}
+		}
+		int written = 0;
+		for (PageId pid : candidates) {
+			synchronized (this) {
+				Page page = pages.get(pid);
+				if (page != null && page.isDirty() != null && lockManager.exclusiveHolder(pid) == null) {
+					flushPage(pid);
+					written++;
+				}
+			}
+		}
+		return written;
 	}
 
 	/**
-	 * Discards a page from the buffer pool. Flushes the page to disk to ensure
-	 * dirty pages are updated on disk.
+	 * Discards a page from the buffer pool.
+	 *
+	 * @see #evictPage(java.util.function.Predicate)
 	 */
 	private synchronized void evictPage() throws DbException {
-		for (Iterator<Map.Entry<PageId, Page>> it = pages.entrySet().iterator(); it.hasNext();) {
-			Map.Entry<PageId, Page> entry = it.next();
-			Page page = entry.getValue();
-			if (page.isDirty() == null) {
-				it.remove();
-				return;
+		if (!evictPage(pid -> true)) {
+			throw new DbException("All pages in the BufferPool are pinned, cannot evict");
+		}
+	}
+
+	/**
+	 * Discards one of the pages accepted by candidates from the buffer pool, as
+	 * chosen by the eviction policy. Pinned pages are never chosen. Tables give up
+	 * pages in order of their priority class, lowest first; a table that holds no
+	 * more than its reserved share of the pool only gives one up when nothing
+	 * else can go. Within a class, clean pages are preferred; when every
+	 * candidate is dirty, the victim is flushed first, which logs its uncommitted
+	 * changes (STEAL). A victim that was pinned while it was being flushed is
+	 * kept, and another one is chosen.
+	 *
+	 * @return false if every candidate is pinned
+	 */
+	private synchronized boolean evictPage(java.util.function.Predicate<PageId> candidates) throws DbException {
+		boolean timed = metrics.isEnabled();
+		long start = timed ? System.nanoTime() : 0;
+		Set<PageId> kept = new HashSet<>();
+		while (true) {
+			PageId victim = chooseVictim(candidates.and(pid -> !kept.contains(pid)));
+			if (victim == null) {
+				return false;
+			}
+			boolean dirty = pages.get(victim).isDirty() != null;
+			try {
+				flushPage(victim);
+			} catch (IOException e) {
+				// keep the page, and keep it evictable
+				unchoose(victim);
+				throw new DbException("could not write back evicted page: " + e.getMessage());
+			}
+			// pinPage does not take the pool's monitor, so the page may have
+			// been pinned during the flush, or be pinned right now
+			if (!removeUnpinned(victim)) {
+				unchoose(victim);
+				kept.add(victim);
+				continue;
+			}
+			ringPages.remove(victim);
+			if (timed) {
+				metrics.recordEviction(dirty, System.nanoTime() - start);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Gives a victim that is not evicted after all back to the eviction policy,
+	 * unless it is a page of some scan's ring, which the policy does not track.
+	 */
+	private void unchoose(PageId victim) {
+		if (!ringPages.contains(victim)) {
+			policy.restore(victim);
+		}
+	}
+
+	/**
+	 * Chooses the page to evict among the unpinned candidates, in the order
+	 * described in {@link #evictPage(java.util.function.Predicate)}. A page the
+	 * eviction policy chose is no longer tracked by it; a page of some scan's
+	 * ring stays in ringPages until it is removed.
+	 *
+	 * @return the victim, or null if every candidate is pinned
+	 */
+	private PageId chooseVictim(java.util.function.Predicate<PageId> candidates) {
+		Catalog catalog = Database.getCatalog();
+		Map<Integer, Integer> classOf = new HashMap<>();
+		Set<Integer> reserved = new HashSet<>();
+		for (Map.Entry<Integer, TableUsage> e : tableUsage.entrySet()) {
+			if (e.getValue().pages > 0) {
+				int tableId = e.getKey();
+				classOf.put(tableId, catalog.getPoolPriority(tableId).ordinal());
+				if (e.getValue().bytes <= catalog.getMinPoolShare(tableId) * capacity) {
+					reserved.add(tableId);
+				}
+			}
+		}
+
+		java.util.function.Predicate<PageId> evictable = pid -> candidates.test(pid) && !isPinned(pid);
+		java.util.function.Predicate<PageId> clean = pid -> pages.get(pid).isDirty() == null;
+		PageId victim = null;
+		for (int level : new TreeSet<>(classOf.values())) {
+			java.util.function.Predicate<PageId> inClass = evictable.and(pid -> !reserved.contains(pid.getTableId())
+					&& classOf.getOrDefault(pid.getTableId(), Priority.NORMAL.ordinal()) == level);
+			victim = policy.evict(inClass.and(clean));
+			if (victim == null) {
+				// the policy has nothing clean; fall back to a page of some scan's ring
+				victim = ringVictim(inClass.and(clean));
+			}
+			if (victim == null) {
+				victim = policy.evict(inClass);
+			}
+			if (victim == null) {
+				victim = ringVictim(inClass);
+			}
+			if (victim != null) {
+				break;
+			}
+		}
+		if (victim == null) {
+			// only reserved pages are left
+			victim = policy.evict(evictable);
+			if (victim == null) {
+				victim = ringVictim(evictable);
+			}
+		}
+		return victim;
+	}
+
+	/**
+	 * Returns a page of some scan's ring accepted by evictable, or null if there
+	 * is none.
+	 */
+	private PageId ringVictim(java.util.function.Predicate<PageId> evictable) {
+		for (PageId pid : ringPages) {
+			if (evictable.test(pid)) {
+				return pid;
 			}
 		}
-		throw new DbException("All pages in the BufferPool are dirty, cannot evict");
+		return null;
 	}
 
 }
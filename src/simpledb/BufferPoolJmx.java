@@ -0,0 +1,154 @@
+package simpledb;
+
+import java.lang.management.ManagementFactory;
+import javax.management.*;
+
+import simpledb.BufferPoolMetrics.Op;
+
+/**
+ * Implements the BufferPoolMXBean over whatever pool the Database currently
+ * uses, so that a single registration survives the pool being replaced.
+ */
+class BufferPoolJmx implements BufferPoolMXBean {
+	static final String NAME = "simpledb:type=BufferPool";
+
+	private static volatile Exception registrationFailure;
+
+	/**
+	 * Registers the bean with the platform MBean server, unless it is registered
+	 * already. A server that refuses it leaves the database without JMX, but
+	 * otherwise working; the refusal is kept for
+	 * {@link #getRegistrationFailure()}.
+	 */
+	static void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(NAME);
+			if (!server.isRegistered(name))
+				server.registerMBean(new BufferPoolJmx(), name);
+			registrationFailure = null;
+		} catch (JMException | SecurityException e) {
+			registrationFailure = e;
+		}
+	}
+
+	/**
+	 * @return the exception of the last registration that failed, or null if
+	 *         the bean is registered.
+	 */
+	static Exception getRegistrationFailure() {
+		return registrationFailure;
+	}
+
+	private static BufferPool pool() {
+		return Database.getBufferPool();
+	}
+
+	private static BufferPoolMetrics metrics() {
+		return pool().getMetrics();
+	}
+
+	private static double micros(double nanos) {
+		return nanos / 1000;
+	}
+
+	private static long p99Micros(Op op) {
+		return metrics().getLatency(op).getPercentileNanos(0.99) / 1000;
+	}
+
+	public boolean isMetricsEnabled() {
+		return metrics().isEnabled();
+	}
+
+	public void setMetricsEnabled(boolean enabled) {
+		metrics().setEnabled(enabled);
+	}
+
+	public void resetMetrics() {
+		metrics().reset();
+	}
+
+	public long getHits() {
+		return metrics().getHits();
+	}
+
+	public long getMisses() {
+		return metrics().getMisses();
+	}
+
+	public double getHitRatio() {
+		return metrics().getHitRatio();
+	}
+
+	public long getEvictions() {
+		return metrics().getEvictions();
+	}
+
+	public long getDirtyEvictions() {
+		return metrics().getDirtyEvictions();
+	}
+
+	public long getPageReads() {
+		return metrics().getPageReads();
+	}
+
+	public long getPageWrites() {
+		return metrics().getPageWrites();
+	}
+
+	public int getResidentPages() {
+		return pool().getResidentPages();
+	}
+
+	public int getDirtyPages() {
+		return pool().getDirtyPages();
+	}
+
+	public long getUsedBytes() {
+		return pool().getUsedBytes();
+	}
+
+	public long getCapacityBytes() {
+		return pool().getCapacityBytes();
+	}
+
+	public long getBackgroundWriterFailures() {
+		return pool().getBackgroundWriterFailures();
+	}
+
+	public long getWarmStateDumpFailures() {
+		return pool().getWarmStateDumpFailures();
+	}
+
+	public double getGetPageMeanMicros() {
+		return micros(metrics().getLatency(Op.GET_PAGE).getMeanNanos());
+	}
+
+	public long getGetPageP99Micros() {
+		return p99Micros(Op.GET_PAGE);
+	}
+
+	public double getReadPageMeanMicros() {
+		return micros(metrics().getLatency(Op.READ_PAGE).getMeanNanos());
+	}
+
+	public long getReadPageP99Micros() {
+		return p99Micros(Op.READ_PAGE);
+	}
+
+	public double getWritePageMeanMicros() {
+		return micros(metrics().getLatency(Op.WRITE_PAGE).getMeanNanos());
+	}
+
+	public long getWritePageP99Micros() {
+		return p99Micros(Op.WRITE_PAGE);
+	}
+
+	public double getEvictPageMeanMicros() {
+		return micros(metrics().getLatency(Op.EVICT_PAGE).getMeanNanos());
+	}
+
+	public long getEvictPageP99Micros() {
+		return p99Micros(Op.EVICT_PAGE);
+	}
+}
@@ -0,0 +1,61 @@
+package simpledb;
+
+/**
+ * The management interface of the BufferPool, registered with the platform
+ * MBean server as <code>simpledb:type=BufferPool</code>. It always describes
+ * the database's current pool, {@link Database#getBufferPool()}.
+ *
+ * @see BufferPoolMetrics
+ */
+public interface BufferPoolMXBean {
+	boolean isMetricsEnabled();
+
+	void setMetricsEnabled(boolean enabled);
+
+	/** Sets all metrics back to zero. */
+	void resetMetrics();
+
+	long getHits();
+
+	long getMisses();
+
+	double getHitRatio();
+
+	long getEvictions();
+
+	long getDirtyEvictions();
+
+	long getPageReads();
+
+	long getPageWrites();
+
+	int getResidentPages();
+
+	int getDirtyPages();
+
+	long getUsedBytes();
+
+	long getCapacityBytes();
+
+	/** @return the number of rounds of the background writer that failed. */
+	long getBackgroundWriterFailures();
+
+	/** @return the number of periodic warm state dumps that failed. */
+	long getWarmStateDumpFailures();
+
+	double getGetPageMeanMicros();
+
+	long getGetPageP99Micros();
+
+	double getReadPageMeanMicros();
+
+	long getReadPageP99Micros();
+
+	double getWritePageMeanMicros();
+
+	long getWritePageP99Micros();
+
+	double getEvictPageMeanMicros();
+
+	long getEvictPageP99Micros();
+}
@@ -0,0 +1,203 @@
+package simpledb;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BufferPoolMetrics counts what a BufferPool does: hits, misses, evictions and
+ * the pages it reads and writes, in total and per table, and how long getPage,
+ * page reads, page writes and evictions take.
+ * <p>
+ * All counters are LongAdders, which threads update without contending with
+ * each other. The total hits and misses are always counted, since the pool's
+ * hit ratio is built on them; that is one uncontended increment per request.
+ * Everything else, including the per-table counters, is only recorded while
+ * metrics are enabled; while they are disabled, the pool adds one volatile
+ * read to that increment and takes no timestamps.
+ */
+public class BufferPoolMetrics {
+	/** The operations whose latency is recorded. */
+	public enum Op {
+		/** A page request, including the wait for its lock. */
+		GET_PAGE,
+		/** A page read from its file after a miss. */
+		READ_PAGE,
+		/** A page written to its file, including forcing the log first. */
+		WRITE_PAGE,
+		/** An eviction, including writing back a dirty victim. */
+		EVICT_PAGE
+	}
+
+	/** The counters of one table. */
+	private static final class TableCounters {
+		final LongAdder hits = new LongAdder();
+		final LongAdder misses = new LongAdder();
+		final LongAdder reads = new LongAdder();
+		final LongAdder writes = new LongAdder();
+	}
+
+	private volatile boolean enabled = true;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder reads = new LongAdder();
+	private final LongAdder writes = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder dirtyEvictions = new LongAdder();
+	private final LatencyHistogram[] latencies = new LatencyHistogram[Op.values().length];
+	private final Map<Integer, TableCounters> tables = new ConcurrentHashMap<>();
+
+	BufferPoolMetrics() {
+		for (int i = 0; i < latencies.length; i++)
+			latencies[i] = new LatencyHistogram();
+	}
+
+	/** @return true if the pool records metrics beyond the total hits and misses. */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts or stops recording everything but the total hits and misses.
+	 * Counters keep their values while recording is stopped.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	private TableCounters table(int tableId) {
+		TableCounters counters = tables.get(tableId);
+		return counters != null ? counters : tables.computeIfAbsent(tableId, t -> new TableCounters());
+	}
+
+	void recordHit(PageId pid) {
+		hits.increment();
+		if (enabled)
+			table(pid.getTableId()).hits.increment();
+	}
+
+	void recordMiss(PageId pid) {
+		misses.increment();
+		if (enabled)
+			table(pid.getTableId()).misses.increment();
+	}
+
+	void recordRead(PageId pid, long nanos) {
+		reads.increment();
+		table(pid.getTableId()).reads.increment();
+		if (nanos >= 0)
+			latencies[Op.READ_PAGE.ordinal()].record(nanos);
+	}
+
+	void recordWrite(PageId pid, long nanos) {
+		writes.increment();
+		table(pid.getTableId()).writes.increment();
+		latencies[Op.WRITE_PAGE.ordinal()].record(nanos);
+	}
+
+	void recordEviction(boolean dirty, long nanos) {
+		evictions.increment();
+		if (dirty)
+			dirtyEvictions.increment();
+		latencies[Op.EVICT_PAGE.ordinal()].record(nanos);
+	}
+
+	void recordGetPage(long nanos) {
+		latencies[Op.GET_PAGE.ordinal()].record(nanos);
+	}
+
+	/** @return the number of page requests served from the pool. */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/** @return the number of page requests that read their page. */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the fraction of page requests served from the pool, or NaN before
+	 *         the first request.
+	 */
+	public double getHitRatio() {
+		return ratio(hits.sum(), misses.sum());
+	}
+
+	/**
+	 * @return the number of pages read from their files, not counting pages that
+	 *         were read ahead.
+	 */
+	public long getPageReads() {
+		return reads.sum();
+	}
+
+	/** @return the number of pages written to their files. */
+	public long getPageWrites() {
+		return writes.sum();
+	}
+
+	/** @return the number of pages evicted. */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/** @return the number of evicted pages that had to be written back first. */
+	public long getDirtyEvictions() {
+		return dirtyEvictions.sum();
+	}
+
+	/** @return the latencies of the specified operation. */
+	public LatencyHistogram getLatency(Op op) {
+		return latencies[op.ordinal()];
+	}
+
+	/** @return the number of requests for pages of a table served from the pool. */
+	public long getHits(int tableId) {
+		TableCounters counters = tables.get(tableId);
+		return counters == null ? 0 : counters.hits.sum();
+	}
+
+	/** @return the number of requests for pages of a table that read their page. */
+	public long getMisses(int tableId) {
+		TableCounters counters = tables.get(tableId);
+		return counters == null ? 0 : counters.misses.sum();
+	}
+
+	/**
+	 * @return the fraction of requests for pages of a table served from the
+	 *         pool, or NaN before the first request.
+	 */
+	public double getHitRatio(int tableId) {
+		return ratio(getHits(tableId), getMisses(tableId));
+	}
+
+	/** @return the number of pages of a table read from its file. */
+	public long getPageReads(int tableId) {
+		TableCounters counters = tables.get(tableId);
+		return counters == null ? 0 : counters.reads.sum();
+	}
+
+	/** @return the number of pages of a table written to its file. */
+	public long getPageWrites(int tableId) {
+		TableCounters counters = tables.get(tableId);
+		return counters == null ? 0 : counters.writes.sum();
+	}
+
+	private static double ratio(long hits, long misses) {
+		return hits + misses == 0 ? Double.NaN : (double) hits / (hits + misses);
+	}
+
+	/** Sets all counters and histograms back to zero. */
+	public void reset() {
+		hits.reset();
+		misses.reset();
+		reads.reset();
+		writes.reset();
+		evictions.reset();
+		dirtyEvictions.reset();
+		for (LatencyHistogram latency : latencies)
+			latency.reset();
+		tables.clear();
+	}
+}
@@ -0,0 +1,49 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * A BufferRing is a small private set of buffer pool frames used by one
+ * sequential scan, similar to PostgreSQL's BufferAccessStrategy. Pages the scan
+ * reads on a miss are kept out of the pool's eviction policy; once the ring is
+ * full, the scan's oldest page is dropped to make room for the next one. A
+ * large scan therefore cycles through a handful of frames instead of evicting
+ * the working set of other transactions.
+ * <p>
+ * Rings are obtained from {@link BufferPool#newScanRing} and passed to
+ * {@link BufferPool#getPage(TransactionId, PageId, Permissions, BufferRing)}.
+ * A ring must not be shared between concurrent scans.
+ */
+public class BufferRing {
+
+	private final int capacity;
+	private final ArrayDeque<PageId> members;
+
+	/**
+	 * Creates a ring that recycles frames after capacity pages.
+	 *
+	 * @param capacity the number of frames in the ring.
+	 */
+	public BufferRing(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.members = new ArrayDeque<>(this.capacity);
+	}
+
+	/** @return the number of frames in this ring. */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	boolean isFull() {
+		return members.size() >= capacity;
+	}
+
+	void add(PageId pid) {
+		members.addLast(pid);
+	}
+
+	/** Removes and returns the page the ring read longest ago. */
+	PageId poll() {
+		return members.pollFirst();
+	}
+}
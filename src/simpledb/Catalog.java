@@ -19,6 +19,9 @@ public class Catalog {
 	private HashMap<Integer, String> names;
 	private HashMap<Integer, String> pkeyFields;
 	private HashMap<String, Integer> nameToId;
+	private HashMap<Integer, Double> minPoolShares;
+	private HashMap<Integer, Double> maxPoolShares;
+	private HashMap<Integer, BufferPool.Priority> poolPriorities;
 
 	/**
 	 * Constructor. Creates a new, empty catalog.
@@ -28,6 +31,9 @@ public class Catalog {
 		names = new HashMap<>();
 		pkeyFields = new HashMap<>();
 		nameToId = new HashMap<>();
+		minPoolShares = new HashMap<>();
+		maxPoolShares = new HashMap<>();
+		poolPriorities = new HashMap<>();
 	}
 
 	/**
@@ -98,6 +104,16 @@ public class Catalog {
 		return file.getTupleDesc();
 	}
 
+	/**
+	 * Returns the number of bytes per page of the specified table.
+	 *
+	 * @param tableid The id of the table, as specified by the DbFile.getId()
+	 *                function passed to addTable
+	 */
+	public int getPageSize(int tableid) throws NoSuchElementException {
+		return getDbFile(tableid).getPageSize();
+	}
+
 	/**
 	 * Returns the DbFile that can be used to read the contents of the specified
 	 * table.
@@ -113,12 +129,67 @@ public class Catalog {
 		return file;
 	}
 
+	/**
+	 * Sets how much of the BufferPool the specified table may hold. While the
+	 * table holds no more than minShare of the pool, its pages are only evicted
+	 * when no other page can be; once it would exceed maxShare, it has to give up
+	 * one of its own pages for each page it reads.
+	 *
+	 * @param minShare the reserved fraction of the pool, 0 by default
+	 * @param maxShare the largest fraction of the pool, 1 by default
+	 * @throws IllegalArgumentException unless 0 &lt;= minShare &lt;= maxShare
+	 *                                  &lt;= 1
+	 */
+	public void setPoolQuota(int tableid, double minShare, double maxShare) throws NoSuchElementException {
+		getDbFile(tableid);
+		if (!(0 <= minShare && minShare <= maxShare && maxShare <= 1)) {
+			throw new IllegalArgumentException("invalid pool quota " + minShare + " to " + maxShare);
+		}
+		minPoolShares.put(tableid, minShare);
+		maxPoolShares.put(tableid, maxShare);
+	}
+
+	/**
+	 * Sets the priority class of the specified table in the BufferPool.
+	 */
+	public void setPoolPriority(int tableid, BufferPool.Priority priority) throws NoSuchElementException {
+		getDbFile(tableid);
+		poolPriorities.put(tableid, priority);
+	}
+
+	/**
+	 * @return the fraction of the BufferPool reserved for the specified table; 0
+	 *         for tables without a quota.
+	 */
+	public double getMinPoolShare(int tableid) {
+		return minPoolShares.getOrDefault(tableid, 0.0);
+	}
+
+	/**
+	 * @return the largest fraction of the BufferPool the specified table may
+	 *         hold; 1 for tables without a quota.
+	 */
+	public double getMaxPoolShare(int tableid) {
+		return maxPoolShares.getOrDefault(tableid, 1.0);
+	}
+
+	/**
+	 * @return the priority class of the specified table in the BufferPool;
+	 *         NORMAL for tables without one.
+	 */
+	public BufferPool.Priority getPoolPriority(int tableid) {
+		return poolPriorities.getOrDefault(tableid, BufferPool.Priority.NORMAL);
+	}
+
 	/** Delete all tables from the catalog */
 	public void clear() {
 		files.clear();
 		names.clear();
 		pkeyFields.clear();
 		nameToId.clear();
+		minPoolShares.clear();
+		maxPoolShares.clear();
+		poolPriorities.clear();
 	}
 
 	public String getPrimaryKey(int tableid) {
@@ -141,7 +212,13 @@ public class Catalog {
 
 	/**
 	 * Reads the schema from a file and creates the appropriate tables in the
-	 * database.
+	 * database. Each line describes one table as
+	 * <code>name (field type [pk], ...) [option value ...]</code>, where type is
+	 * one of the names accepted by {@link Type#forName}. The options
+	 * are <code>pagesize</code>, in bytes, BufferPool.PAGE_SIZE by default;
+	 * <code>minshare</code> and <code>maxshare</code>, see
+	 * {@link #setPoolQuota}; and <code>priority</code>, one of
+	 * <code>low</code>, <code>normal</code> and <code>high</code>.
 	 * 
 	 * @param catalogFile
 	 */
@@ -156,20 +233,42 @@ public class Catalog {
 				// System.out.println("TABLE NAME: " + name);
 				String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
 				String[] els = fields.split(",");
+				String options = line.substring(line.indexOf(")") + 1).trim();
+				int pageSize = BufferPool.PAGE_SIZE;
+				double minShare = 0, maxShare = 1;
+				BufferPool.Priority priority = BufferPool.Priority.NORMAL;
+				String[] opts = options.isEmpty() ? new String[0] : options.split("\\s+");
+				if (opts.length % 2 != 0) {
+					System.out.println("Invalid table options " + options);
+					System.exit(0);
+				}
+				for (int i = 0; i < opts.length; i += 2) {
+					String option = opts[i].toLowerCase();
+					if (option.equals("pagesize"))
+						pageSize = Integer.parseInt(opts[i + 1]);
+					else if (option.equals("minshare"))
+						minShare = Double.parseDouble(opts[i + 1]);
+					else if (option.equals("maxshare"))
+						maxShare = Double.parseDouble(opts[i + 1]);
+					else if (option.equals("priority"))
+						priority = BufferPool.Priority.valueOf(opts[i + 1].toUpperCase());
+					else {
+						System.out.println("Unknown table option " + opts[i]);
+						System.exit(0);
+					}
+				}
 				ArrayList<String> names = new ArrayList<String>();
 				ArrayList<Type> types = new ArrayList<Type>();
 				String primaryKey = "";
 				for (String e : els) {
 					String[] els2 = e.trim().split(" ");
 					names.add(els2[0].trim());
-					if (els2[1].trim().toLowerCase().equals("int"))
-						types.add(Type.INT_TYPE);
-					else if (els2[1].trim().toLowerCase().equals("string"))
-						types.add(Type.STRING_TYPE);
-					else {
+					Type type = Type.forName(els2[1]);
+					if (type == null) {
 						System.out.println("Unknown type " + els2[1]);
 						System.exit(0);
 					}
+					types.add(type);
 					if (els2.length == 3) {
 						if (els2[2].trim().equals("pk"))
 							primaryKey = els2[0].trim();
@@ -182,14 +281,16 @@ public class Catalog {
 				Type[] typeAr = types.toArray(new Type[0]);
 				String[] namesAr = names.toArray(new String[0]);
 				TupleDesc t = new TupleDesc(typeAr, namesAr);
-				HeapFile tabHf = new HeapFile(new File(name + ".dat"), t);
+				HeapFile tabHf = new HeapFile(new File(name + ".dat"), t, pageSize);
 				addTable(tabHf, name, primaryKey);
+				setPoolQuota(tabHf.getId(), minShare, maxShare);
+				setPoolPriority(tabHf.getId(), priority);
 				System.out.println("Added table : " + name + " with schema " + t);
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.exit(0);
-		} catch (IndexOutOfBoundsException e) {
+		} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
 			System.out.println("Invalid catalog entry : " + line);
 			System.exit(0);
 		}
@@ -0,0 +1,115 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CLOCK (second chance) eviction. Resident pages occupy the slots of a circular
+ * buffer, each with a reference bit that is set on every access. The clock hand
+ * sweeps the buffer, clearing set bits and evicting the first evictable page
+ * whose bit is already clear.
+ * <p>
+ * An access only sets a bit, so hits may record it without holding the pool's
+ * monitor. Such an access may race with the sweep or with the page's slot being
+ * reused, which at worst gives a page one second chance too many or too few.
+ */
+class ClockPolicy implements BufferPool.EvictionPolicy {
+
+	private PageId[] slots;
+	private boolean[] referenced;
+	private final Map<PageId, Integer> slotOf;
+	private final Deque<Integer> freeSlots;
+	private int hand;
+
+	ClockPolicy(int numPages) {
+		int n = Math.max(1, numPages);
+		this.slots = new PageId[n];
+		this.referenced = new boolean[n];
+		this.slotOf = new ConcurrentHashMap<>();
+		this.freeSlots = new ArrayDeque<>();
+		for (int i = 0; i < n; i++)
+			freeSlots.add(i);
+		this.hand = 0;
+	}
+
+	public boolean concurrentAccess() {
+		return true;
+	}
+
+	public void recordAccess(PageId pid) {
+		Integer slot = slotOf.get(pid);
+		boolean[] bits = referenced;
+		if (slot != null && slot < bits.length)
+			bits[slot] = true;
+	}
+
+	public void recordInsert(PageId pid) {
+		if (slotOf.containsKey(pid)) {
+			recordAccess(pid);
+			return;
+		}
+		if (freeSlots.isEmpty())
+			grow();
+		int slot = freeSlots.poll();
+		slots[slot] = pid;
+		referenced[slot] = true;
+		slotOf.put(pid, slot);
+	}
+
+	public void remove(PageId pid) {
+		Integer slot = slotOf.remove(pid);
+		if (slot != null) {
+			slots[slot] = null;
+			referenced[slot] = false;
+			freeSlots.add(slot);
+		}
+	}
+
+	/**
+	 * Puts the page back in the slot it was evicted from, with its reference bit
+	 * clear, and turns the hand back to it.
+	 */
+	public void restore(PageId pid) {
+		int slot = hand == 0 ? slots.length - 1 : hand - 1;
+		if (slots[slot] != null || !freeSlots.remove(slot)) {
+			recordInsert(pid);
+			slot = slotOf.get(pid);
+		}
+		slots[slot] = pid;
+		referenced[slot] = false;
+		slotOf.put(pid, slot);
+		hand = slot;
+	}
+
+	public PageId evict(java.util.function.Predicate<PageId> evictable) {
+		// two full sweeps: the first may only clear reference bits
+		for (int step = 0; step < 2 * slots.length; step++) {
+			int slot = hand;
+			hand = (hand + 1) % slots.length;
+			PageId pid = slots[slot];
+			if (pid == null || !evictable.test(pid))
+				continue;
+			if (referenced[slot]) {
+				referenced[slot] = false;
+				continue;
+			}
+			remove(pid);
+			return pid;
+		}
+		return null;
+	}
+
+	public int temperature(PageId pid) {
+		Integer slot = slotOf.get(pid);
+		return slot != null && referenced[slot] ? 2 : 1;
+	}
+
+	/** Adds slots when more pages are resident than the pool was sized for. */
+	private void grow() {
+		int old = slots.length;
+		slots = Arrays.copyOf(slots, old * 2);
+		referenced = Arrays.copyOf(referenced, old * 2);
+		for (int i = old; i < old * 2; i++)
+			freeSlots.add(i);
+	}
+}
@@ -0,0 +1,195 @@
+package simpledb;
+
+/**
+ * CompoundPredicate is the conjunction (AND) or disjunction (OR) of other
+ * filters, evaluated with short-circuiting.
+ * <p>
+ * The terms are reordered as the predicate learns how selective they are: a
+ * conjunction first tries the term that rejects the most rows, a disjunction
+ * the one that accepts the most, so that the fewest terms are evaluated per
+ * row. Every REORDER_INTERVAL rows the terms are sorted by the fraction of rows
+ * they passed, and their counts are halved so that the order follows changes
+ * in the data.
+ * <p>
+ * On a TupleBatch, each term is applied to a whole column at a time: a
+ * conjunction narrows the selection term by term, and a disjunction applies
+ * each term only to the rows no earlier term accepted.
+ * <p>
+ * The counts are not synchronized; a CompoundPredicate should be used by one
+ * thread at a time, like the operator it belongs to.
+ */
+public class CompoundPredicate implements TupleFilter {
+	/** How the terms are combined. */
+	public enum Kind {
+		AND, OR
+	}
+
+	/** The number of rows between reorderings of the terms. */
+	static final int REORDER_INTERVAL = 1024;
+
+	private final Kind kind;
+	/** The terms, in the order they are evaluated. */
+	private final TupleFilter[] terms;
+	/** The number of rows each term was evaluated on, and passed. */
+	private final long[] evaluated;
+	private final long[] passed;
+	private int sinceReorder;
+	/** Scratch arrays of disjunctions over batches. */
+	private int[] original;
+	private int[] remaining;
+	private boolean[] accepted;
+
+	/**
+	 * @param kind  whether all or any of the terms must be satisfied
+	 * @param terms the terms, in the order they are evaluated at first
+	 */
+	public CompoundPredicate(Kind kind, TupleFilter... terms) {
+		if (terms.length == 0)
+			throw new IllegalArgumentException("a compound predicate needs a term");
+		this.kind = kind;
+		this.terms = terms.clone();
+		this.evaluated = new long[terms.length];
+		this.passed = new long[terms.length];
+	}
+
+	/** @return the conjunction of the terms. */
+	public static CompoundPredicate and(TupleFilter... terms) {
+		return new CompoundPredicate(Kind.AND, terms);
+	}
+
+	/** @return the disjunction of the terms. */
+	public static CompoundPredicate or(TupleFilter... terms) {
+		return new CompoundPredicate(Kind.OR, terms);
+	}
+
+	/** @return how the terms are combined. */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/** @return the terms, in the order they are currently evaluated. */
+	public TupleFilter[] getTerms() {
+		return terms.clone();
+	}
+
+	public boolean filter(Tuple t) {
+		boolean and = kind == Kind.AND;
+		boolean result = and;
+		for (int i = 0; i < terms.length; i++) {
+			evaluated[i]++;
+			boolean pass = terms[i].filter(t);
+			if (pass)
+				passed[i]++;
+			if (pass != and) {
+				result = pass;
+				break;
+			}
+		}
+		counted(1);
+		return result;
+	}
+
+	public int filter(TupleBatch batch) {
+		int n = batch.numSelected();
+		int kept = kind == Kind.AND ? and(batch) : or(batch);
+		counted(n);
+		return kept;
+	}
+
+	private int and(TupleBatch batch) {
+		int n = batch.numSelected();
+		for (int i = 0; i < terms.length && n > 0; i++) {
+			evaluated[i] += n;
+			n = terms[i].filter(batch);
+			passed[i] += n;
+		}
+		return n;
+	}
+
+	private int or(TupleBatch batch) {
+		int n = batch.numSelected();
+		int[] sel = batch.getSelection();
+		if (original == null || original.length < batch.capacity()) {
+			original = new int[batch.capacity()];
+			remaining = new int[batch.capacity()];
+			accepted = new boolean[batch.capacity()];
+		}
+		System.arraycopy(sel, 0, original, 0, n);
+		System.arraycopy(sel, 0, remaining, 0, n);
+		int left = n;
+		for (int i = 0; i < terms.length && left > 0; i++) {
+			batch.setSelection(remaining, left);
+			evaluated[i] += left;
+			int pass = terms[i].filter(batch);
+			passed[i] += pass;
+			for (int k = 0; k < pass; k++)
+				accepted[sel[k]] = true;
+			int still = 0;
+			for (int k = 0; k < left; k++)
+				if (!accepted[remaining[k]])
+					remaining[still++] = remaining[k];
+			left = still;
+		}
+		int kept = 0;
+		for (int k = 0; k < n; k++) {
+			int row = original[k];
+			if (accepted[row]) {
+				sel[kept++] = row;
+				accepted[row] = false;
+			}
+		}
+		batch.setNumSelected(kept);
+		return kept;
+	}
+
+	/** Reorders the terms once REORDER_INTERVAL rows have been filtered. */
+	private void counted(int rows) {
+		sinceReorder += rows;
+		if (sinceReorder < REORDER_INTERVAL)
+			return;
+		sinceReorder = 0;
+		// insertion sort by pass rate: ascending for AND, descending for OR
+		for (int i = 1; i < terms.length; i++) {
+			for (int j = i; j > 0 && before(j, j - 1); j--) {
+				swap(terms, j);
+				swap(evaluated, j);
+				swap(passed, j);
+			}
+		}
+		for (int i = 0; i < terms.length; i++) {
+			evaluated[i] /= 2;
+			passed[i] /= 2;
+		}
+	}
+
+	/** @return true if term a should be evaluated before term b. */
+	private boolean before(int a, int b) {
+		// rates with one pass and one failure added, so that unevaluated terms
+		// are in the middle
+		double rateA = (passed[a] + 1.0) / (evaluated[a] + 2.0);
+		double rateB = (passed[b] + 1.0) / (evaluated[b] + 2.0);
+		return kind == Kind.AND ? rateA < rateB : rateA > rateB;
+	}
+
+	private static void swap(Object[] a, int j) {
+		Object x = a[j];
+		a[j] = a[j - 1];
+		a[j - 1] = x;
+	}
+
+	private static void swap(long[] a, int j) {
+		long x = a[j];
+		a[j] = a[j - 1];
+		a[j - 1] = x;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < terms.length; i++) {
+			if (i > 0)
+				sb.append(' ').append(kind).append(' ');
+			sb.append(terms[i]);
+		}
+		return sb.append(')').toString();
+	}
+}
@@ -13,6 +13,11 @@ import java.io.*;
 
 public class Database {
 	private static Database _instance = new Database();
+
+	static {
+		// the bean reads whichever pool is current, so it outlives resets
+		BufferPoolJmx.register();
+	}
 	private final Catalog _catalog;
 	private BufferPool _bufferpool;
 
@@ -52,12 +57,35 @@ public class Database {
 	 * return it
 	 */
 	public static BufferPool resetBufferPool(int pages) {
+		_instance._bufferpool.stopBackgroundTasks();
 		_instance._bufferpool = new BufferPool(pages);
 		return _instance._bufferpool;
 	}
 
+	/**
+	 * Method used for testing -- create a new instance of the buffer pool that
+	 * uses the specified eviction policy and return it
+	 */
+	public static BufferPool resetBufferPool(int pages, BufferPool.Eviction eviction) {
+		_instance._bufferpool.stopBackgroundTasks();
+		_instance._bufferpool = new BufferPool(pages, eviction);
+		return _instance._bufferpool;
+	}
+
+	/**
+	 * Method used for testing -- create a new instance of the buffer pool with the
+	 * specified number of bytes, on or off the heap, and return it
+	 */
+	public static BufferPool resetBufferPool(long bytes, boolean offHeap) {
+		_instance._bufferpool.stopBackgroundTasks();
+		_instance._bufferpool = new BufferPool(bytes, BufferPool.DEFAULT_EVICTION, offHeap);
+		return _instance._bufferpool;
+	}
+
 	// reset the database, used for unit tests only.
 	public static void reset() {
+		// the old pool's pages are dropped, as in a crash
+		_instance._bufferpool.stopBackgroundTasks();
 		_instance = new Database();
 	}
 
@@ -0,0 +1,72 @@
+package simpledb;
+
+import java.io.*;
+import java.time.LocalDate;
+
+/**
+ * Instance of Field that stores a single date, as the number of days since
+ * 1970-01-01.
+ */
+public class DateField implements Field {
+	private int days;
+
+	/** @return the number of days between 1970-01-01 and this date. */
+	public int getEpochDay() {
+		return days;
+	}
+
+	public LocalDate getValue() {
+		return LocalDate.ofEpochDay(days);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param epochDay The number of days between 1970-01-01 and the value of
+	 *                 this field.
+	 */
+	public DateField(int epochDay) {
+		days = epochDay;
+	}
+
+	public DateField(LocalDate date) {
+		this(Math.toIntExact(date.toEpochDay()));
+	}
+
+	/** @return the date in ISO-8601 format, e.g. 2024-02-29. */
+	public String toString() {
+		return getValue().toString();
+	}
+
+	public int hashCode() {
+		return days;
+	}
+
+	public boolean equals(Object field) {
+		return ((DateField) field).days == days;
+	}
+
+	public void serialize(DataOutputStream dos) throws IOException {
+		dos.writeInt(days);
+	}
+
+	/**
+	 * Compare the specified field to the value of this Field. Return semantics are
+	 * as specified by Field.compare
+	 *
+	 * @throws IllegalCastException if val is not a DateField
+	 * @see Field#compare
+	 */
+	public boolean compare(Predicate.Op op, Field val) {
+		return op.holds(Integer.compare(days, ((DateField) val).days));
+	}
+
+	/**
+	 * Return the Type of this field.
+	 * 
+	 * @return Type.DATE_TYPE
+	 */
+	public Type getType() {
+		return Type.DATE_TYPE;
+	}
+}
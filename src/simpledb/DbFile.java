@@ -84,4 +84,14 @@ public interface DbFile {
 	 * @return TupleDesc of this DbFile.
 	 */
 	public TupleDesc getTupleDesc();
+
+	/**
+	 * Returns the number of bytes per page of this DbFile. Every page of a file
+	 * has the same size; different files may use different sizes.
+	 *
+	 * @return the page size of this DbFile; BufferPool.PAGE_SIZE by default.
+	 */
+	public default int getPageSize() {
+		return BufferPool.PAGE_SIZE;
+	}
 }
@@ -0,0 +1,80 @@
+package simpledb;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Instance of Field that stores a single fixed-point decimal, as a long scaled
+ * by 10^{@link Type#DECIMAL_SCALE}. Decimals compare and are stored as their
+ * scaled values, so no BigDecimal is created unless one is asked for.
+ */
+public class DecimalField implements Field {
+	private long unscaled;
+
+	/**
+	 * @return the value of this field multiplied by 10^DECIMAL_SCALE.
+	 */
+	public long getUnscaledValue() {
+		return unscaled;
+	}
+
+	public BigDecimal getValue() {
+		return BigDecimal.valueOf(unscaled, Type.DECIMAL_SCALE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param unscaled The value of this field multiplied by 10^DECIMAL_SCALE.
+	 */
+	public DecimalField(long unscaled) {
+		this.unscaled = unscaled;
+	}
+
+	/**
+	 * Creates a field of the specified value, rounded half up to DECIMAL_SCALE
+	 * digits.
+	 *
+	 * @throws ArithmeticException if the value is out of range.
+	 */
+	public DecimalField(BigDecimal value) {
+		this(value.setScale(Type.DECIMAL_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+	}
+
+	public String toString() {
+		return getValue().toPlainString();
+	}
+
+	public int hashCode() {
+		return Long.hashCode(unscaled);
+	}
+
+	public boolean equals(Object field) {
+		return ((DecimalField) field).unscaled == unscaled;
+	}
+
+	public void serialize(DataOutputStream dos) throws IOException {
+		dos.writeLong(unscaled);
+	}
+
+	/**
+	 * Compare the specified field to the value of this Field. Return semantics are
+	 * as specified by Field.compare
+	 *
+	 * @throws IllegalCastException if val is not a DecimalField
+	 * @see Field#compare
+	 */
+	public boolean compare(Predicate.Op op, Field val) {
+		return op.holds(Long.compare(unscaled, ((DecimalField) val).unscaled));
+	}
+
+	/**
+	 * Return the Type of this field.
+	 * 
+	 * @return Type.DECIMAL_TYPE
+	 */
+	public Type getType() {
+		return Type.DECIMAL_TYPE;
+	}
+}
@@ -24,8 +24,7 @@ public interface Field {
 	public boolean compare(Predicate.Op op, Field value);
 
 	/**
-	 * Returns the type of this field (see {@link Type#INT_TYPE} or
-	 * {@link Type#STRING_TYPE}
+	 * Returns the type of this field (see {@link Type})
 	 * 
 	 * @return type of this field
 	 */
@@ -0,0 +1,74 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FrameArena is a fixed set of page-sized frames allocated off the Java heap
+ * when a BufferPool is created, for pools that keep their pages there. The
+ * images of resident pages then never move through the garbage collector,
+ * however large the pool is; only the small HeapPage objects viewing the
+ * frames, and the before-images of modified pages, live on the heap.
+ * <p>
+ * Frames are carved out of direct buffers of at most CHUNK_BYTES each, since a
+ * single buffer cannot exceed 2 GB. All methods must be called while holding
+ * the monitor of the owning BufferPool.
+ */
+class FrameArena {
+	static final int CHUNK_BYTES = 1 << 30;
+
+	private final ByteBuffer[] chunks;
+	private final int framesPerChunk;
+	private final int[] free;
+	private int numFree;
+
+	/**
+	 * Allocates numFrames frames of BufferPool.PAGE_SIZE bytes.
+	 */
+	FrameArena(int numFrames) {
+		this.framesPerChunk = CHUNK_BYTES / BufferPool.PAGE_SIZE;
+		int numChunks = (numFrames + framesPerChunk - 1) / framesPerChunk;
+		this.chunks = new ByteBuffer[numChunks];
+		for (int c = 0; c < numChunks; c++) {
+			int frames = Math.min(framesPerChunk, numFrames - c * framesPerChunk);
+			chunks[c] = ByteBuffer.allocateDirect(frames * BufferPool.PAGE_SIZE);
+		}
+		this.free = new int[numFrames];
+		// hand out low frames first
+		for (int i = 0; i < numFrames; i++)
+			free[i] = numFrames - 1 - i;
+		this.numFree = numFrames;
+	}
+
+	/** @return the number of frames in this arena. */
+	int numFrames() {
+		return free.length;
+	}
+
+	/** @return the number of frames not in use. */
+	int numFree() {
+		return numFree;
+	}
+
+	/**
+	 * @return the index of an unused frame, or -1 if every frame is in use.
+	 */
+	int allocate() {
+		return numFree == 0 ? -1 : free[--numFree];
+	}
+
+	/** Returns a frame that is no longer used. */
+	void release(int frame) {
+		free[numFree++] = frame;
+	}
+
+	/**
+	 * @return a buffer over the bytes of a frame, positioned at 0.
+	 */
+	ByteBuffer frame(int frame) {
+		ByteBuffer buf = chunks[frame / framesPerChunk].duplicate();
+		int start = (frame % framesPerChunk) * BufferPool.PAGE_SIZE;
+		buf.limit(start + BufferPool.PAGE_SIZE);
+		buf.position(start);
+		return buf.slice();
+	}
+}
@@ -0,0 +1,149 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * FreeSpaceMap records which pages of a HeapFile may have an empty slot, so
+ * that inserts go straight to such a page instead of reading every page of the
+ * file. It is one bit per page, kept in memory and persisted in a sidecar file
+ * next to the table (the table's file name plus ".fsm").
+ * <p>
+ * The map is a hint. A set bit on a full page only costs one page read before
+ * the insert moves on and the bit is cleared; a clear bit on a page with room
+ * only wastes that room until a delete on the page, or an abort or rollback
+ * that restores an image of the page with room, sets it again. A sidecar
+ * that is missing or was written for a different number of pages is therefore
+ * simply replaced by a map that has every bit set.
+ * <p>
+ * The sidecar starts with the number of pages as an int, followed by the
+ * bitmap, with page i in bit (i % 8) of byte (i / 8).
+ */
+public class FreeSpaceMap {
+	private static final int HEADER_SIZE = 4;
+
+	private final File file;
+	private final BitSet free;
+	private int numPages;
+	/** Byte range of the bitmap changed since the last sync, or -1 if clean. */
+	private int dirtyFrom = -1, dirtyTo = -1;
+	private boolean headerDirty = false;
+	private FileChannel channel;
+
+	/**
+	 * Opens the free space map stored in file for a table with numPages pages.
+	 */
+	public FreeSpaceMap(File file, int numPages) {
+		this.file = file;
+		this.numPages = numPages;
+		BitSet loaded = load(file, numPages);
+		if (loaded == null) {
+			loaded = new BitSet(numPages);
+			loaded.set(0, numPages);
+			headerDirty = true;
+			markDirty(0, bytesFor(numPages));
+		}
+		this.free = loaded;
+	}
+
+	/**
+	 * @return the bitmap stored in file, or null if the file does not hold a map
+	 *         of numPages pages.
+	 */
+	private static BitSet load(File file, int numPages) {
+		if (!file.exists() || file.length() != HEADER_SIZE + bytesFor(numPages))
+			return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != numPages)
+				return null;
+			byte[] bits = new byte[bytesFor(numPages)];
+			in.readFully(bits);
+			return BitSet.valueOf(bits);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static int bytesFor(int pages) {
+		return (pages + 7) / 8;
+	}
+
+	/**
+	 * @return the first page at or after from that may have an empty slot, or -1
+	 *         if there is none.
+	 */
+	public synchronized int nextFree(int from) {
+		int page = free.nextSetBit(from);
+		return page < numPages ? page : -1;
+	}
+
+	/**
+	 * @return true if page may have an empty slot.
+	 */
+	public synchronized boolean isFree(int page) {
+		return free.get(page);
+	}
+
+	/**
+	 * Records whether a page has an empty slot. Pages past the end of the map grow
+	 * it.
+	 */
+	public synchronized void setFree(int page, boolean hasRoom) {
+		if (page >= numPages) {
+			numPages = page + 1;
+			headerDirty = true;
+		} else if (free.get(page) == hasRoom) {
+			return;
+		}
+		free.set(page, hasRoom);
+		markDirty(page / 8, page / 8 + 1);
+	}
+
+	private void markDirty(int fromByte, int toByte) {
+		dirtyFrom = dirtyFrom < 0 ? fromByte : Math.min(dirtyFrom, fromByte);
+		dirtyTo = Math.max(dirtyTo, toByte);
+	}
+
+	/**
+	 * Writes the parts of the map that changed since the last sync to the
+	 * sidecar file. Cheap when nothing changed, which is the common case: a page's
+	 * bit only flips when it fills up or gets its first free slot.
+	 */
+	public synchronized void sync() throws IOException {
+		if (dirtyFrom < 0 && !headerDirty)
+			return;
+		if (channel == null || !channel.isOpen())
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+		if (headerDirty) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(0, numPages);
+			channel.truncate(HEADER_SIZE + bytesFor(numPages));
+			channel.write(header, 0);
+			headerDirty = false;
+		}
+		if (dirtyFrom >= 0) {
+			int to = Math.min(dirtyTo, bytesFor(numPages));
+			byte[] bits = new byte[to - dirtyFrom];
+			byte[] set = free.get(dirtyFrom * 8, to * 8).toByteArray();
+			System.arraycopy(set, 0, bits, 0, set.length);
+			ByteBuffer buf = ByteBuffer.wrap(bits);
+			while (buf.hasRemaining())
+				channel.write(buf, HEADER_SIZE + dirtyFrom + buf.position());
+			dirtyFrom = dirtyTo = -1;
+		}
+	}
+
+	/**
+	 * Syncs the map and closes the sidecar file.
+	 */
+	public synchronized void close() throws IOException {
+		sync();
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+}
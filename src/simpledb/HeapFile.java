@@ -1,6 +1,10 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 /**
@@ -15,25 +19,70 @@ import java.util.*;
  */
 public class HeapFile implements DbFile {
 
+	/**
+	 * Bytes per mapped segment in memory-mapped mode. A single mapping cannot
+	 * exceed 2 GB, so larger files are mapped in several segments; the size is a
+	 * multiple of the page size, so that no page straddles two of them.
+	 */
+	public static final long MAP_SEGMENT_SIZE = 1L << 30;
+
+	/** Number of pages bulkInsert writes with a single call. */
+	public static final int BULK_WRITE_PAGES = 64;
+
+	/** Consecutive read-only mappings of the first length bytes of the file. */
+	private static final class Mapping {
+		final MappedByteBuffer[] segments;
+		final long length;
+
+		Mapping(MappedByteBuffer[] segments, long length) {
+			this.segments = segments;
+			this.length = length;
+		}
+	}
+
+	private static final Mapping UNMAPPED = new Mapping(new MappedByteBuffer[0], 0);
+
 	private File f;
 	private TupleDesc td;
-	private int pageNum;
-	private HeapPageId [] hpID;
+	private final int pageSize;
+	private volatile int pageNum;
+	/** Opened on first use; see {@link #channel()}. */
+	private volatile FileChannel channel;
+	private volatile boolean memoryMapped = false;
+	private long segmentSize = MAP_SEGMENT_SIZE;
+	private volatile Mapping mapping = UNMAPPED;
+	/** Opened on the first insert or delete; see {@link #freeSpaceMap()}. */
+	private FreeSpaceMap fsm;
 
 	/**
-	 * Constructs a heap file backed by the specified file.
+	 * Constructs a heap file backed by the specified file, with pages of
+	 * BufferPool.PAGE_SIZE bytes.
 	 *
 	 * @param f the file that stores the on-disk backing store for this heap file.
 	 */
 	public HeapFile(File f, TupleDesc td) {
+		this(f, td, BufferPool.PAGE_SIZE);
+	}
+
+	/**
+	 * Constructs a heap file backed by the specified file, with pages of the
+	 * specified size. Larger pages suit scans of wide tables, smaller ones point
+	 * lookups; the file must have been written with the same size.
+	 *
+	 * @param f        the file that stores the on-disk backing store for this
+	 *                 heap file.
+	 * @param pageSize the number of bytes per page; a power of two between
+	 *                 BufferPool.MIN_PAGE_SIZE and BufferPool.MAX_PAGE_SIZE.
+	 * @throws IllegalArgumentException if the page size is not supported
+	 */
+	public HeapFile(File f, TupleDesc td, int pageSize) {
+		if (pageSize < BufferPool.MIN_PAGE_SIZE || pageSize > BufferPool.MAX_PAGE_SIZE
+				|| Integer.bitCount(pageSize) != 1)
+			throw new IllegalArgumentException("unsupported page size " + pageSize);
 		this.f = f;
 		this.td = td;
-		this.pageNum = (int)Math.ceil(f.length()/BufferPool.PAGE_SIZE);
-		this.hpID = new HeapPageId[pageNum];
-		for(int i = 0 ; i < pageNum ; i ++) {
-			HeapPageId tempPid = new HeapPageId(getId(), i);
-			hpID[i] = tempPid;
-		}
+		this.pageSize = pageSize;
+		this.pageNum = (int)(f.length()/pageSize);
 	}
 
 	/**
@@ -76,36 +125,238 @@ public class HeapFile implements DbFile {
 		//throw new UnsupportedOperationException("implement this");
 	}
 
+	// see DbFile.java for javadocs
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Returns the channel all page I/O of this file goes through, opening it on
+	 * first use. Reads and writes are positional, so they never move a shared file
+	 * pointer and concurrent readers do not serialize on it. A channel closed by an
+	 * interrupted thread is reopened.
+	 */
+	private FileChannel channel() throws IOException {
+		FileChannel ch = channel;
+		if (ch == null || !ch.isOpen()) {
+			synchronized (this) {
+				ch = channel;
+				if (ch == null || !ch.isOpen()) {
+					ch = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+							StandardOpenOption.WRITE);
+					channel = ch;
+				}
+			}
+		}
+		return ch;
+	}
+
+	/**
+	 * Returns the byte offset of a page in the file; 64-bit, so that files may
+	 * grow past 2 GB.
+	 */
+	private long offset(PageId pid) {
+		return (long) pid.pageno() * pageSize;
+	}
+
+	/**
+	 * Switches memory-mapped mode on or off. In memory-mapped mode readPage builds
+	 * pages directly over a read-only mapping of the file instead of reading
+	 * them into a fresh array, which saves a copy and a system call per page miss
+	 * on read-mostly tables. Writes still go through the file channel; the mapping
+	 * shares the operating system's page cache and sees them.
+	 */
+	public synchronized void setMemoryMapped(boolean enabled) {
+		this.memoryMapped = enabled;
+		this.mapping = UNMAPPED;
+	}
+
+	/**
+	 * @return true if pages are read from a memory mapping of the file.
+	 */
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
+	/** Sets the segment size of the mapping; used to test segmented files. */
+	synchronized void setMapSegmentSize(long bytes) {
+		if (bytes <= 0 || bytes % pageSize != 0)
+			throw new IllegalArgumentException("segment size must be a positive multiple of the page size");
+		this.segmentSize = bytes;
+		this.mapping = UNMAPPED;
+	}
+
+	/**
+	 * Returns a view of a page within the file mapping, mapping the rest of the
+	 * file first if it has grown past the mapped region.
+	 *
+	 * @return the page's bytes, or null if the file does not contain the whole
+	 *         page
+	 */
+	private ByteBuffer mappedPage(PageId pid) throws IOException {
+		long offset = offset(pid);
+		Mapping m = mapping;
+		if (offset + pageSize > m.length) {
+			m = extendMapping();
+			if (offset + pageSize > m.length)
+				return null;
+		}
+		ByteBuffer page = m.segments[(int) (offset / segmentSize)].duplicate();
+		int start = (int) (offset % segmentSize);
+		page.limit(start + pageSize);
+		page.position(start);
+		return page.slice();
+	}
+
+	/**
+	 * Maps the file up to its current size. The last segment is remapped if it
+	 * was only partially mapped; full segments are kept.
+	 */
+	private synchronized Mapping extendMapping() throws IOException {
+		FileChannel ch = channel();
+		long size = ch.size();
+		Mapping m = mapping;
+		if (size <= m.length)
+			return m;
+		List<MappedByteBuffer> segments = new ArrayList<>(Arrays.asList(m.segments));
+		long length = m.length;
+		if (length % segmentSize != 0) {
+			segments.remove(segments.size() - 1);
+			length -= length % segmentSize;
+		}
+		while (length < size) {
+			long len = Math.min(segmentSize, size - length);
+			segments.add(ch.map(FileChannel.MapMode.READ_ONLY, length, len));
+			length += len;
+		}
+		m = new Mapping(segments.toArray(new MappedByteBuffer[0]), length);
+		mapping = m;
+		return m;
+	}
+
+	/**
+	 * Returns the map of pages with empty slots, which is kept in a sidecar file
+	 * next to this file and opened on first use.
+	 */
+	synchronized FreeSpaceMap freeSpaceMap() {
+		if (fsm == null)
+			fsm = new FreeSpaceMap(new File(f.getPath() + ".fsm"), pageNum);
+		return fsm;
+	}
+
+	/**
+	 * Closes the file channel and the free space map. They are reopened if the
+	 * file is accessed again.
+	 */
+	public synchronized void close() throws IOException {
+		if (fsm != null) {
+			fsm.close();
+			fsm = null;
+		}
+		mapping = UNMAPPED;
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
 	// see DbFile.java for javadocs
 	public Page readPage(PageId pid) {
 		if(pid.pageno() >= pageNum || pid.pageno() < 0)
 			throw new IllegalArgumentException("the page does not exist in this file");
-		byte [] data = new byte[BufferPool.PAGE_SIZE];
-		try{
-			RandomAccessFile as = new RandomAccessFile(this.f, "r");
-			as.skipBytes(pid.pageno()*BufferPool.PAGE_SIZE);// jump to the no-th page.
-			as.read(data, 0, BufferPool.PAGE_SIZE);
-			as.close();
-			HeapPage hp = new HeapPage((HeapPageId)pid, data);
-			return hp;
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+		try {
+			if (memoryMapped) {
+				ByteBuffer mapped = mappedPage(pid);
+				if (mapped != null)
+					return new HeapPage((HeapPageId)pid, mapped);
+			}
+			ByteBuffer data = ByteBuffer.allocate(pageSize);
+			read(pid, data);
+			return new HeapPage((HeapPageId)pid, data.array());
+		} catch (IOException e) {
+			throw new RuntimeException("failed to read page " + pid.pageno() + " of " + f, e);
+		}
+	}
+
+	/**
+	 * Reads the image of a page into a page-sized buffer, such as a frame of an
+	 * off-heap BufferPool, instead of allocating one. The buffer's position is
+	 * left at 0.
+	 */
+	void readPage(PageId pid, ByteBuffer into) {
+		if(pid.pageno() >= pageNum || pid.pageno() < 0)
+			throw new IllegalArgumentException("the page does not exist in this file");
+		try {
+			ByteBuffer mapped = memoryMapped ? mappedPage(pid) : null;
+			if (mapped != null)
+				into.put(mapped);
+			else
+				read(pid, into);
+			into.clear();
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new RuntimeException("failed to read page " + pid.pageno() + " of " + f, e);
 		}
-		return null;
+	}
+
+	/**
+	 * Reads count consecutive pages, starting with page first, with a single
+	 * sequential read; used to prewarm a BufferPool.
+	 */
+	List<Page> readPages(int first, int count) {
+		if (first < 0 || count < 0 || first + count > pageNum)
+			throw new IllegalArgumentException("the pages do not exist in this file");
+		try {
+			ByteBuffer data = ByteBuffer.allocate(count * pageSize);
+			read((long) first * pageSize, data);
+			byte[] bytes = data.array();
+			List<Page> pages = new ArrayList<>(count);
+			for (int i = 0; i < count; i++)
+				pages.add(new HeapPage(new HeapPageId(getId(), first + i),
+						Arrays.copyOfRange(bytes, i * pageSize, (i + 1) * pageSize)));
+			return pages;
+		} catch (IOException e) {
+			throw new RuntimeException("failed to read pages " + first + " to " + (first + count - 1) + " of " + f, e);
+		}
+	}
+
+	private void read(PageId pid, ByteBuffer data) throws IOException {
+		read(offset(pid), data);
+	}
+
+	private void read(long offset, ByteBuffer data) throws IOException {
+		FileChannel ch = channel();
+		// a short read at the end of the file leaves the rest of the page zeroed
+		while (data.hasRemaining() && ch.read(data, offset + data.position()) >= 0)
+			;
+		while (data.hasRemaining())
+			data.put((byte) 0);
 	}
 
 	// see DbFile.java for javadocs
 	public void writePage(Page page) throws IOException {
-		if(page.isDirty() != null){
-			RandomAccessFile os = new RandomAccessFile(getFile(), "rw");
-			int offset = page.getId().pageno()*BufferPool.PAGE_SIZE;
-			os.skipBytes(offset);
-			byte [] data = page.getPageData();
-			os.write(data, 0, BufferPool.PAGE_SIZE);
-			os.close();
-		}
+		// the BufferPool only writes dirty pages; recovery writes clean
+		// before-images, which must reach the disk all the same
+		ByteBuffer data = page instanceof HeapPage ? ((HeapPage) page).getPageBuffer()
+				: ByteBuffer.wrap(page.getPageData(), 0, pageSize);
+		FileChannel ch = channel();
+		long offset = offset(page.getId());
+		while (data.hasRemaining())
+			ch.write(data, offset + data.position());
+		// rollback and recovery undo inserts by writing before-images
+		updateFreeSpace(page);
+		FreeSpaceMap map = fsm;
+		if (map != null)
+			map.sync();
+	}
+
+	/**
+	 * Sets the free space map bit of a page whose image was written or restored,
+	 * if the page has an empty slot. The bit is cleared when an insert fills the
+	 * page, so an abort or rollback that undoes the insert must set it again.
+	 */
+	void updateFreeSpace(Page page) {
+		if (page instanceof HeapPage && ((HeapPage) page).getNumEmptySlots() > 0)
+			freeSpaceMap().setFree(page.getId().pageno(), true);
 	}
 
 	/**
@@ -119,39 +370,149 @@ public class HeapFile implements DbFile {
 	// see DbFile.java for javadocs
 	public ArrayList<Page> addTuple(TransactionId tid, Tuple t)
 			throws DbException, IOException, TransactionAbortedException {
+		checkFits(t);
 		ArrayList<Page> pageList = new ArrayList<Page>();
+		BufferPool bp = Database.getBufferPool();
+		FreeSpaceMap map = freeSpaceMap();
 		int i;
 		HeapPage hp;
 
-		for(i = 0; i < pageNum; i++){
-			hp = (HeapPage)Database.getBufferPool().getPage(tid, hpID[i], Permissions.READ_WRITE);
-			if(hp.getNumEmptySlots() > 0){
+		// only visit pages the free space map says have room
+		for(i = map.nextFree(0); i >= 0 && i < pageNum; i = map.nextFree(i + 1)){
+			HeapPageId pid = new HeapPageId(getId(), i);
+			boolean held = bp.holdsLock(tid, pid);
+			hp = (HeapPage)bp.getPage(tid, pid, Permissions.READ_WRITE);
+			if(hp.hasRoomFor(t)){
 				hp.addTuple(t);
 				hp.markDirty(true, tid);
-				writePage(hp);
+				if(hp.getNumEmptySlots() == 0)
+					map.setFree(i, false);
 				pageList.add(hp);
-				break;
+				return pageList;
 			}
+			// the map was stale; nothing on the page was used, so other
+			// transactions need not wait for it
+			map.setFree(i, false);
+			if(!held)
+				bp.releasePage(tid, pid);
 		}
-		if(i == pageNum){
-			this.pageNum ++;
-			this.hpID = new HeapPageId[pageNum];
-			for(int k = 0 ; k < pageNum; k++) {
-				HeapPageId tempPid = new HeapPageId(getId(), k);
-				hpID[k] = tempPid;
-			}
+		// no page has room: append an empty one, and fill it in through the
+		// BufferPool like any other page, so that its contents are logged
+		// before they reach the disk
+		HeapPageId newPid = appendEmptyPage();
+		i = newPid.pageno();
 
-			byte [] pageData = new byte[BufferPool.PAGE_SIZE];
-			HeapPage newHp = new HeapPage(new HeapPageId(getId(), i), pageData);
-			newHp.addTuple(t);
-			newHp.markDirty(true, tid);
-			writePage(newHp);
-			System.out.println("Create a new page on the HeapFile.");
-			pageList.add(newHp);
-		}
+		hp = (HeapPage)bp.getPage(tid, newPid, Permissions.READ_WRITE);
+		hp.addTuple(t);
+		hp.markDirty(true, tid);
+		map.setFree(i, hp.getNumEmptySlots() > 0);
+		pageList.add(hp);
 		return pageList;
 	}
 
+	/**
+	 * @throws DbException if t does not fit even on an empty page of this file
+	 */
+	private void checkFits(Tuple t) throws DbException {
+		if (!HeapPage.fitsEmptyPage(td, t, pageSize))
+			throw new DbException("tuple of " + HeapPage.tupleSize(td, t) + " bytes does not fit on a page of "
+					+ pageSize + " bytes");
+	}
+
+	/**
+	 * Writes an empty page at the end of this file and counts it, as one step
+	 * with respect to other appends and bulk inserts.
+	 *
+	 * @return the id of the new page
+	 */
+	private synchronized HeapPageId appendEmptyPage() throws IOException {
+		HeapPageId pid = new HeapPageId(getId(), pageNum);
+		writePage(new HeapPage(pid, HeapPage.createEmptyPageData(pageSize)));
+		pageNum++;
+		return pid;
+	}
+
+	/**
+	 * Appends tuples to the end of this file, bypassing the BufferPool. Pages are
+	 * filled in memory and written BULK_WRITE_PAGES at a time with one sequential
+	 * write each; the page count is updated once, after the last write, so
+	 * concurrent readers see either none or all of the new pages.
+	 * <p>
+	 * Bulk inserts are meant for loading data: they take no locks, are not logged
+	 * and cannot be rolled back, and they never use free space in existing pages.
+	 * A bulk insert holds this file's monitor, so other bulk inserts, and
+	 * inserts that need a new page, wait for it to finish. A bulk insert that
+	 * fails leaves the file as it was.
+	 *
+	 * @param tuples the tuples to append; their RecordIds are set to where they
+	 *               were stored.
+	 * @return the number of tuples appended
+	 * @throws DbException if a tuple does not match the schema of this file, or
+	 *                     does not fit on a page
+	 */
+	public synchronized int bulkInsert(Iterator<Tuple> tuples) throws DbException, IOException {
+		int firstPage = pageNum;
+		int pageNo = firstPage;
+		int count = 0;
+		ByteBuffer batch = ByteBuffer.allocate(BULK_WRITE_PAGES * pageSize);
+		long batchOffset = (long) firstPage * pageSize;
+		HeapPage page = null;
+
+		try {
+			while (tuples.hasNext()) {
+				Tuple t = tuples.next();
+				checkFits(t);
+				if (page == null || !page.hasRoomFor(t)) {
+					if (page != null) {
+						batch.put(page.getPageBuffer());
+						pageNo++;
+						if (!batch.hasRemaining()) {
+							batchOffset = writeBatch(batch, batchOffset);
+						}
+					}
+					page = new HeapPage(new HeapPageId(getId(), pageNo), HeapPage.createEmptyPageData(pageSize));
+				}
+				page.addTuple(t);
+				count++;
+			}
+			if (page != null) {
+				batch.put(page.getPageBuffer());
+				pageNo++;
+			}
+			writeBatch(batch, batchOffset);
+		} catch (DbException | IOException | RuntimeException e) {
+			// the page count was not updated yet, so no one has seen the
+			// batches written so far
+			channel().truncate((long) firstPage * pageSize);
+			throw e;
+		}
+
+		FreeSpaceMap map = freeSpaceMap();
+		for (int i = firstPage; i < pageNo; i++)
+			map.setFree(i, false);
+		if (page != null && page.getNumEmptySlots() > 0)
+			map.setFree(pageNo - 1, true);
+		map.sync();
+		pageNum = pageNo;
+		return count;
+	}
+
+	/**
+	 * Writes the pages in batch at offset and empties the batch.
+	 *
+	 * @return the offset following the written pages
+	 */
+	private long writeBatch(ByteBuffer batch, long offset) throws IOException {
+		batch.flip();
+		FileChannel ch = channel();
+		long start = offset;
+		while (batch.hasRemaining())
+			ch.write(batch, start + batch.position());
+		offset += batch.limit();
+		batch.clear();
+		return offset;
+	}
+
 	// see DbFile.java for javadocs
 	public Page deleteTuple(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException {
 		// some code goes here
@@ -159,26 +520,118 @@ public class HeapFile implements DbFile {
 		HeapPage hp = (HeapPage)Database.getBufferPool().getPage(tid, hpId, Permissions.READ_WRITE);
 		hp.deleteTuple(t);
 		hp.markDirty(true, tid);
+		freeSpaceMap().setFree(hpId.pageno(), true);
 		return hp;
 	}
 
 	// see DbFile.java for javadocs
 	public DbFileIterator iterator(TransactionId tid) {
-		List<Tuple> tpList = new ArrayList<Tuple>();
-		for(int i = 0; i < pageNum; i ++) {
-			try{
-				HeapPage hp = (HeapPage)Database.getBufferPool().getPage(tid, hpID[i], Permissions.READ_ONLY);
-				Iterator<Tuple> pageIter = hp.iterator();
-				while(pageIter.hasNext()) // pageIter.hasNext cann't write as: hp.iterator().hasNext()
-					tpList.add(pageIter.next());
-			} catch (TransactionAbortedException e) {
-				e.printStackTrace();
-			} catch (DbException e) {
-				e.printStackTrace();
+		return new HeapFileIterator(tid);
+	}
+
+	/**
+	 * Iterates over the tuples of this file one page at a time. A page is fetched
+	 * through the BufferPool only when the tuples of the previous one are used up,
+	 * so a scan runs in constant memory whatever the size of the table; tables
+	 * larger than most of the pool are read through a BufferRing. The page being
+	 * read is pinned until the iterator moves past it or is closed.
+	 * <p>
+	 * The iterator also returns batches, decoded straight from the pages into the
+	 * columns of a TupleBatch. Tuples and batches continue where the other left
+	 * off.
+	 */
+	private class HeapFileIterator implements DbFileIterator, BatchIterator {
+		private final TransactionId tid;
+		private BufferPool pool;
+		private BufferRing ring;
+		/** The page the tuples come from, which is pinned, or null. */
+		private HeapPage page;
+		private int pageNo;
+		/**
+		 * The slot of the current page to continue from, or -1 if the page is
+		 * used up; -2 while the iterator is closed.
+		 */
+		private int slot = -2;
+		private TupleBatch batch;
+
+		HeapFileIterator(TransactionId tid) {
+			this.tid = tid;
+		}
+
+		public void open() throws DbException, TransactionAbortedException {
+			pool = Database.getBufferPool();
+			ring = pool.newScanRing(numPages(), pageSize);
+			pageNo = -1;
+			slot = -1;
+		}
+
+		/**
+		 * Moves on to the next page once the current one is used up.
+		 *
+		 * @return false if there are no more pages.
+		 */
+		private boolean nextPage() throws DbException, TransactionAbortedException {
+			while (slot < 0) {
+				if (slot == -2)
+					return false;
+				unpin();
+				if (pageNo + 1 >= numPages())
+					return false;
+				pageNo++;
+				HeapPageId pid = new HeapPageId(getId(), pageNo);
+				page = (HeapPage)pool.pinPage(tid, pid, Permissions.READ_ONLY, ring);
+				slot = 0;
+			}
+			return true;
+		}
+
+		public boolean hasNext() throws DbException, TransactionAbortedException {
+			while (nextPage()) {
+				slot = page.nextUsedSlot(slot);
+				if (slot >= 0)
+					return true;
+			}
+			return false;
+		}
+
+		public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return page.getTuple(slot++);
+		}
+
+		public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+			if (slot == -2)
+				throw new IllegalStateException("iterator is not open");
+			if (batch == null)
+				batch = new TupleBatch(td, TupleBatch.DEFAULT_CAPACITY);
+			batch.clear();
+			while (!batch.isFull() && nextPage())
+				slot = page.fillBatch(batch, slot);
+			return batch.size() == 0 ? null : batch;
+		}
+
+		public TupleDesc getTupleDesc() {
+			return td;
+		}
+
+		public void rewind() throws DbException, TransactionAbortedException {
+			close();
+			open();
+		}
+
+		public void close() {
+			unpin();
+			slot = -2;
+			ring = null;
+		}
+
+		private void unpin() {
+			if (page != null) {
+				pool.unpinPage(tid, page.getId());
+				page = null;
 			}
 		}
-		TupleIterator dbfItr = new TupleIterator(td, tpList);
-		return (DbFileIterator) dbfItr;
 	}
 
 }
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
 /**
@@ -61,14 +62,16 @@ public class HeapFileEncoder {
 
 	/**
 	 * Convert the specified input text file into a binary page file. <br>
-	 * Assume format of the input file is (note that only integer fields are
-	 * supported):<br>
-	 * int,...,int\n<br>
-	 * int,...,int\n<br>
+	 * Assume format of the input file is:<br>
+	 * value,...,value\n<br>
+	 * value,...,value\n<br>
 	 * ...<br>
-	 * where each row represents a tuple.<br>
+	 * where each row represents a tuple, and each value is in the format
+	 * accepted by {@link Type#fromString} for the type of its field.<br>
 	 * <p>
 	 * The format of the output file will be as specified in HeapPage and HeapFile.
+	 * The input file is read as UTF-8. If a type is variable-length, the output
+	 * is made of slotted pages.
 	 *
 	 * @see HeapPage
 	 * @see HeapFile
@@ -81,6 +84,12 @@ public class HeapFileEncoder {
 	 */
 	public static void convert(File inFile, File outFile, int npagebytes, int numFields, Type[] typeAr)
 			throws IOException {
+		for (int i = 0; i < numFields; i++) {
+			if (typeAr[i].isVariableLength()) {
+				convertSlotted(inFile, outFile, npagebytes, numFields, typeAr);
+				return;
+			}
+		}
 
 		int nrecbytes = 0;
 		for (int i = 0; i < numFields; i++) {
@@ -95,7 +104,8 @@ public class HeapFileEncoder {
 			nheaderbytes++; // ceiling
 		int nheaderbits = nheaderbytes * 8;
 
-		BufferedReader br = new BufferedReader(new FileReader(inFile));
+		BufferedReader br = new BufferedReader(
+				new InputStreamReader(new FileInputStream(inFile), StandardCharsets.UTF_8));
 		FileOutputStream os = new FileOutputStream(outFile);
 
 		// our numbers probably won't be much larger than 1024 digits
@@ -136,16 +146,15 @@ public class HeapFileEncoder {
 						System.out.println("BAD LINE : " + s);
 					}
 				} else if (typeAr[fieldNo] == Type.STRING_TYPE) {
-					s = s.trim();
-					int overflow = Type.STRING_LEN - s.length();
-					if (overflow < 0) {
-						String news = s.substring(0, Type.STRING_LEN);
-						s = news;
+					new StringField(s.trim(), Type.STRING_LEN).serialize(pageStream);
+				} else {
+					try {
+						typeAr[fieldNo].fromString(s).serialize(pageStream);
+					} catch (IllegalArgumentException e) {
+						br.close();
+						os.close();
+						throw new IOException("BAD LINE : " + s);
 					}
-					pageStream.writeInt(s.length());
-					pageStream.writeBytes(s);
-					while (overflow-- > 0)
-						pageStream.write((byte) 0);
 				}
 				curpos = 0;
 				if (c == '\n')
@@ -211,4 +220,64 @@ public class HeapFileEncoder {
 		br.close();
 		os.close();
 	}
+
+	/**
+	 * Converts an input text file with a variable-length field into slotted
+	 * pages, filling each page with as many tuples as fit.
+	 *
+	 * @see #convert(File, File, int, int, Type[])
+	 */
+	private static void convertSlotted(File inFile, File outFile, int npagebytes, int numFields, Type[] typeAr)
+			throws IOException {
+		BufferedReader br = new BufferedReader(
+				new InputStreamReader(new FileInputStream(inFile), StandardCharsets.UTF_8));
+		FileOutputStream os = new FileOutputStream(outFile);
+		ArrayList<byte[]> page = new ArrayList<byte[]>();
+		int free = npagebytes - HeapPage.SLOTTED_HEADER_SIZE;
+		int npages = 0;
+
+		String line;
+		while ((line = br.readLine()) != null) {
+			if (line.isEmpty())
+				continue;
+			String[] fields = line.split(",", -1);
+			if (fields.length != numFields) {
+				br.close();
+				os.close();
+				throw new IOException("BAD LINE : " + line);
+			}
+			ByteArrayOutputStream tupleBAOS = new ByteArrayOutputStream();
+			DataOutputStream tupleStream = new DataOutputStream(tupleBAOS);
+			for (int fieldNo = 0; fieldNo < numFields; fieldNo++) {
+				try {
+					typeAr[fieldNo].fromString(fields[fieldNo]).serialize(tupleStream);
+				} catch (IllegalArgumentException e) {
+					br.close();
+					os.close();
+					throw new IOException("BAD LINE : " + line);
+				}
+			}
+			tupleStream.flush();
+			byte[] tuple = tupleBAOS.toByteArray();
+			int need = tuple.length + HeapPage.SLOT_ENTRY_SIZE;
+			if (need > npagebytes - HeapPage.SLOTTED_HEADER_SIZE) {
+				br.close();
+				os.close();
+				throw new IOException("tuple does not fit on a page: " + line);
+			}
+			if (need > free) {
+				os.write(HeapPage.createSlottedPageData(npagebytes, page));
+				npages++;
+				page.clear();
+				free = npagebytes - HeapPage.SLOTTED_HEADER_SIZE;
+			}
+			page.add(tuple);
+			free -= need;
+		}
+		// write the last page, or an empty one if the file is empty
+		if (!page.isEmpty() || npages == 0)
+			os.write(HeapPage.createSlottedPageData(npagebytes, page));
+		br.close();
+		os.close();
+	}
 }
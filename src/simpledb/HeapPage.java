@@ -2,10 +2,31 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * HeapPage stores pages of HeapFiles and implements the Page interface that is
  * used by BufferPool.
+ * <p>
+ * A HeapPage keeps its on-disk image in a ByteBuffer and works on it directly:
+ * tuples are decoded from it on demand, and addTuple and deleteTuple patch the
+ * affected slot and header bit in place, so getPageData never has to rebuild
+ * the page. The buffer a page is created from is never written to; it is copied
+ * on the first modification, and that first modification is also when the
+ * before-image is captured.
+ * <p>
+ * Tuples of a schema with a variable-length field are stored in a slotted page
+ * instead: a header of three ints (the number of slot entries, the offset at
+ * which tuple data starts, and the number of bytes freed by deleted tuples
+ * within the data), then one entry per slot of two ints (the offset of the
+ * slot's tuple, 0 if the slot is empty, and its length). Tuples are stored at
+ * the end of the page, each after the one added before it; the data is
+ * compacted when a tuple only fits in the space deleted tuples left behind.
+ * Slots keep their numbers when the data is compacted, so RecordIds stay valid.
+ * <p>
+ * The methods that modify the image or copy it out synchronize on the page, so
+ * that the BufferPool can write a page back while a transaction holding its
+ * lock keeps working on it, by holding the page's monitor for the write.
  *
  * @see HeapFile
  * @see BufferPool
@@ -14,11 +35,40 @@ public class HeapPage implements Page {
 
 	HeapPageId pid;
 	TupleDesc td;
-	byte[] header;
+	/**
+	 * The current image of the page. Slots are decoded from it on demand and
+	 * patched in place when tuples are added or deleted.
+	 */
+	private ByteBuffer data;
+	/**
+	 * The before-image, or null if the page has not been modified since the last
+	 * call to setBeforeImage. May be the same buffer as data, in which case data
+	 * is copied before it is modified.
+	 */
+	private ByteBuffer before;
+	/** True if data was allocated by this page and may be modified in place. */
+	private boolean ownsData = false;
+	/**
+	 * The BufferPool frame data lives in, or -1. A page in a frame is modified in
+	 * place, and its before-image is a copy on the heap.
+	 */
+	private int frame = -1;
+	/**
+	 * Tuples by slot, filled in when a slot is first decoded. A used slot without
+	 * a tuple here has not been asked for yet.
+	 */
 	Tuple[] tuples;
 	int numSlots;
+	private int headerSize;
+	/** Bytes per page of this page's table. */
+	private final int pageSize;
+	/** True if tuples vary in size, and this is a slotted page. */
+	private final boolean slotted;
 
-	byte[] oldData;
+	/** The size of the header of a slotted page. */
+	static final int SLOTTED_HEADER_SIZE = 12;
+	/** The size of a slot entry of a slotted page. */
+	static final int SLOT_ENTRY_SIZE = 8;
 
 	private TransactionId lastDirtyingTx = null;
 
@@ -28,57 +78,77 @@ public class HeapPage implements Page {
 	 * in use, some number of tuple slots. Specifically, the number of tuples is
 	 * equal to:
 	 * <p>
-	 * floor((BufferPool.PAGE_SIZE*8) / (tuple size * 8 + 1))
+	 * floor((page size*8) / (tuple size * 8 + 1))
 	 * <p>
-	 * where tuple size is the size of tuples in this database table, which can be
-	 * determined via {@link Catalog#getTupleDesc}. The number of 8-bit header words
+	 * where page size and tuple size are those of this database table, which can
+	 * be determined via {@link Catalog#getPageSize} and
+	 * {@link Catalog#getTupleDesc}. The number of 8-bit header words
 	 * is equal to:
 	 * <p>
 	 * ceiling(no. tuple slots / 8)
 	 * <p>
-	 * 
+	 * If the tuples of the table vary in size, the page is a slotted page as
+	 * described above.
+	 *
 	 * @see Database#getCatalog
 	 * @see Catalog#getTupleDesc
-	 * @see BufferPool#PAGE_SIZE
+	 * @see Catalog#getPageSize
 	 */
 	public HeapPage(HeapPageId id, byte[] data) throws IOException {
+		this(id, ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Create a HeapPage from the bytes of a page between the position and the
+	 * limit of a buffer, e.g. a slice of a memory-mapped file. Nothing is read up
+	 * front; tuples and fields are decoded from the buffer when they are asked
+	 * for, at fixed offsets given by the TupleDesc. The page keeps a reference to
+	 * the buffer and never modifies it; the caller must not modify it either.
+	 *
+	 * @see #HeapPage(HeapPageId, byte[])
+	 */
+	public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
 		this.pid = id;
 		this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+		this.pageSize = Database.getCatalog().getPageSize(id.getTableId());
+		this.slotted = !td.isFixedSize();
 		this.numSlots = getNumTuples();
-		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-		// allocate and read the header slots of this page
-		header = new byte[getHeaderSize()];
-		for (int i = 0; i < header.length; i++)
-			header[i] = dis.readByte();
-
-		try {
-			// allocate and read the actual records of this page
-			tuples = new Tuple[numSlots];
-			for (int i = 0; i < tuples.length; i++)
-				tuples[i] = readNextTuple(dis, i);
-		} catch (NoSuchElementException e) {
-			e.printStackTrace();
-		}
-		dis.close();
+		this.headerSize = getHeaderSize();
+		this.data = data.slice();
+		if (this.data.remaining() < pageSize)
+			throw new IOException("page data is shorter than a page");
+		this.tuples = new Tuple[numSlots];
+	}
 
-		setBeforeImage();
+	/**
+	 * Create a HeapPage that lives in a frame of an off-heap BufferPool. The page
+	 * owns the frame's buffer until {@link #detach} is called.
+	 *
+	 * @param frame the index of the frame data belongs to
+	 */
+	HeapPage(HeapPageId id, ByteBuffer data, int frame) throws IOException {
+		this(id, data);
+		this.frame = frame;
+		this.ownsData = true;
 	}
 
 	/**
 	 * Retrieve the number of tuples on this page.
-	 * 
-	 * @return the number of tuples on this page
+	 *
+	 * @return the number of tuples on this page; for a slotted page, the number
+	 *         of tuples of the minimum size that fit
 	 */
 	private int getNumTuples() {
-		return (int) Math.floor((BufferPool.PAGE_SIZE * 8.0) / (td.getSize() * 8 + 1));
+		if (slotted)
+			return (pageSize - SLOTTED_HEADER_SIZE) / (SLOT_ENTRY_SIZE + td.getSize());
+		return (int) Math.floor((pageSize * 8.0) / (td.getSize() * 8 + 1));
 
 	}
 
 	/**
 	 * Computes the number of bytes in the header of a page in a HeapFile with each
 	 * tuple occupying tupleSize bytes
-	 * 
+	 *
 	 * @return the number of bytes in the header of a page in a HeapFile with each
 	 *         tuple occupying tupleSize bytes
 	 */
@@ -91,9 +161,9 @@ public class HeapPage implements Page {
 	/**
 	 * Return a view of this page before it was modified -- used by recovery
 	 */
-	public HeapPage getBeforeImage() {
+	public synchronized HeapPage getBeforeImage() {
 		try {
-			return new HeapPage(pid, oldData);
+			return new HeapPage(pid, snapshot());
 		} catch (IOException e) {
 			e.printStackTrace();
 			// should never happen -- we parsed it OK before!
@@ -102,8 +172,68 @@ public class HeapPage implements Page {
 		return null;
 	}
 
-	public void setBeforeImage() {
-		oldData = getPageData().clone();
+	/**
+	 * Makes the current contents of this page its before-image. The image itself
+	 * is only captured when the page is next modified.
+	 */
+	public synchronized void setBeforeImage() {
+		before = null;
+	}
+
+	/**
+	 * Returns the before-image, capturing the current image as the before-image
+	 * if the page has not been modified since setBeforeImage.
+	 */
+	private ByteBuffer snapshot() {
+		if (before == null) {
+			// a read-only buffer may be a file mapping, which changes when the
+			// page is written back; a frame is modified in place
+			before = data.isReadOnly() || frame >= 0 ? copyOf(data) : data;
+		}
+		return before;
+	}
+
+	/**
+	 * Prepares the page image for an in-place modification: captures the
+	 * before-image if needed and copies the image if this page may not write to
+	 * it.
+	 */
+	private void beforeWrite() {
+		snapshot();
+		if (!ownsData || data == before) {
+			data = copyOf(data);
+			ownsData = true;
+		}
+	}
+
+	/** @return true if this page lives in a frame of an off-heap BufferPool. */
+	synchronized boolean inFrame() {
+		return frame >= 0;
+	}
+
+	/**
+	 * Moves the image of a page that lives in a frame onto the heap, so that the
+	 * frame can be reused while the page is still referenced.
+	 *
+	 * @return the frame the page lived in, or -1 if it was not in a frame
+	 */
+	synchronized int detach() {
+		int f = frame;
+		if (f >= 0) {
+			data = copyOf(data);
+			frame = -1;
+		}
+		return f;
+	}
+
+	private ByteBuffer copyOf(ByteBuffer src) {
+		ByteBuffer copy = ByteBuffer.allocate(pageSize);
+		ByteBuffer from = src.duplicate();
+		from.clear();
+		from.limit(pageSize);
+		copy.put(from);
+		copy.clear();
+		return copy;
 	}
 
 	/**
@@ -115,37 +245,166 @@ public class HeapPage implements Page {
 	}
 
 	/**
-	 * Suck up tuples from the source file.
+	 * @return the offset of a slot's tuple within the page image.
+	 */
+	private int slotOffset(int slotId) {
+		if (slotted)
+			return data.getInt(SLOTTED_HEADER_SIZE + slotId * SLOT_ENTRY_SIZE);
+		return headerSize + slotId * td.getSize();
+	}
+
+	/**
+	 * @return the offset of a field of a slot's tuple within the page image.
+	 */
+	private int fieldOffset(int slotId, int field) {
+		int at = slotOffset(slotId);
+		if (td.isFixedSize())
+			return at + td.getOffset(field);
+		for (int j = 0; j < field; j++)
+			at += td.getType(j).getLen(data, at);
+		return at;
+	}
+
+	/** @return the number of slot entries of a slotted page. */
+	private int slotEntries() {
+		return data.getInt(0);
+	}
+
+	/** @return the offset at which the tuple data of a slotted page starts. */
+	private int dataStart() {
+		int start = data.getInt(4);
+		// an empty page is all zeroes
+		return start == 0 ? pageSize : start;
+	}
+
+	/**
+	 * @return the number of bytes a slotted page has left for tuples and slot
+	 *         entries, including the space of deleted tuples.
+	 */
+	private int freeBytes() {
+		return dataStart() - SLOTTED_HEADER_SIZE - slotEntries() * SLOT_ENTRY_SIZE + data.getInt(8);
+	}
+
+	/**
+	 * Returns the tuple stored in a used slot, decoding it from the page image the
+	 * first time it is asked for. The tuple is packed; its fields are only
+	 * created if they are asked for.
+	 */
+	private Tuple tuple(int slotId) throws NoSuchElementException {
+		Tuple t = tuples[slotId];
+		if (t == null) {
+			try {
+				t = Tuple.decode(td, data, slotOffset(slotId));
+			} catch (java.text.ParseException e) {
+				e.printStackTrace();
+				throw new NoSuchElementException("parsing error!");
+			}
+			t.setRecordId(new RecordId(pid, slotId));
+			tuples[slotId] = t;
+		}
+		return t;
+	}
+
+	/**
+	 * Returns the tuple in a used slot.
+	 *
+	 * @throws NoSuchElementException if the slot is empty.
 	 */
-	private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-		// if associated bit is not set, read forward to the next tuple, and
-		// return null.
-		if (!getSlot(slotId)) {
-			for (int i = 0; i < td.getSize(); i++) {
-				try {
-					dis.readByte();
-				} catch (IOException e) {
-					throw new NoSuchElementException("error reading empty tuple");
+	Tuple getTuple(int slotId) throws NoSuchElementException {
+		if (!getSlot(slotId))
+			throw new NoSuchElementException("slot " + slotId + " is empty");
+		return tuple(slotId);
+	}
+
+	/**
+	 * Returns the first used slot at or after from.
+	 *
+	 * @return the slot, or -1 if all slots from there on are empty.
+	 */
+	int nextUsedSlot(int from) {
+		for (int i = from; i < numSlots; i++)
+			if (getSlot(i))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Adds the tuples of the used slots from a slot on to a batch, decoding them
+	 * straight from the page image into its columns, until the batch is full.
+	 *
+	 * @return the slot to continue from, which may be empty, or -1 if all tuples
+	 *         were added.
+	 */
+	int fillBatch(TupleBatch batch, int from) {
+		if (!slotted) {
+			// collect the used slots a header byte at a time, then decode the
+			// batch a column at a time
+			int[] slots = batch.scratchSlots();
+			int room = batch.capacity() - batch.size();
+			int n = 0;
+			int i = from;
+			while (i < numSlots && n < room) {
+				int bits = (data.get(i / 8) & 0xFF) >>> (i % 8);
+				if (bits == 0) {
+					i += 8 - i % 8;
+					continue;
 				}
+				i += Integer.numberOfTrailingZeros(bits);
+				if (i >= numSlots)
+					break;
+				slots[n++] = i++;
 			}
-			return null;
+			batch.add(data, headerSize, td.getSize(), pid, slots, n);
+			return i < numSlots ? i : -1;
+		}
+		for (int i = from; i < numSlots; i++) {
+			if (!getSlot(i))
+				continue;
+			if (batch.isFull())
+				return i;
+			batch.add(data, slotOffset(i), pid, i);
 		}
+		return -1;
+	}
 
-		// read fields in the tuple
-		Tuple t = new Tuple(td);
-		RecordId rid = new RecordId(pid, slotId);
-		t.setRecordId(rid);
+	private Field decodeField(int slotId, int field) throws NoSuchElementException {
 		try {
-			for (int j = 0; j < td.numFields(); j++) {
-				Field f = td.getType(j).parse(dis);
-				t.setField(j, f);
-			}
+			return td.getType(field).parse(data, fieldOffset(slotId, field));
 		} catch (java.text.ParseException e) {
 			e.printStackTrace();
 			throw new NoSuchElementException("parsing error!");
 		}
+	}
 
-		return t;
+	/**
+	 * Returns a single field of the tuple in a slot without building the whole
+	 * tuple.
+	 *
+	 * @param slotId the slot of the tuple; it must be in use.
+	 * @param field  the index of the field.
+	 * @throws NoSuchElementException if the slot is empty.
+	 */
+	public Field getField(int slotId, int field) throws NoSuchElementException {
+		if (!getSlot(slotId))
+			throw new NoSuchElementException("slot " + slotId + " is empty");
+		Tuple t = tuples[slotId];
+		return t != null ? t.getField(field) : decodeField(slotId, field);
+	}
+
+	/**
+	 * Returns an integer field of the tuple in a slot, reading it directly from
+	 * the page image.
+	 *
+	 * @param slotId the slot of the tuple; it must be in use.
+	 * @param field  the index of a field of type INT_TYPE.
+	 * @throws NoSuchElementException if the slot is empty.
+	 */
+	public int getInt(int slotId, int field) throws NoSuchElementException {
+		if (!getSlot(slotId))
+			throw new NoSuchElementException("slot " + slotId + " is empty");
+		if (td.getType(field) != Type.INT_TYPE)
+			throw new IllegalArgumentException("field " + field + " is not an int");
+		return data.getInt(fieldOffset(slotId, field));
 	}
 
 	/**
@@ -159,66 +418,28 @@ public class HeapPage implements Page {
 	 * @see #HeapPage
 	 * @return A byte array correspond to the bytes of this page.
 	 */
-	public byte[] getPageData() {
-		int len = BufferPool.PAGE_SIZE;
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-		DataOutputStream dos = new DataOutputStream(baos);
-
-		// create the header of the page
-		for (int i = 0; i < header.length; i++) {
-			try {
-				dos.writeByte(header[i]);
-			} catch (IOException e) {
-				// this really shouldn't happen
-				e.printStackTrace();
-			}
-		}
-
-		// create the tuples
-		for (int i = 0; i < tuples.length; i++) {
-
-			// empty slot
-			if (!getSlot(i)) {
-				for (int j = 0; j < td.getSize(); j++) {
-					try {
-						dos.writeByte(0);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-
-				}
-				continue;
-			}
-
-			// non-empty slot
-			for (int j = 0; j < td.numFields(); j++) {
-				Field f = tuples[i].getField(j);
-				try {
-					f.serialize(dos);
-
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
-		}
-
-		// padding
-		int zerolen = BufferPool.PAGE_SIZE - (header.length + td.getSize() * tuples.length); // - numSlots *
-																								// td.getSize();
-		byte[] zeroes = new byte[zerolen];
-		try {
-			dos.write(zeroes, 0, zerolen);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	public synchronized byte[] getPageData() {
+		byte[] bytes = new byte[pageSize];
+		ByteBuffer src = data.duplicate();
+		src.clear();
+		src.get(bytes);
+		return bytes;
+	}
 
-		try {
-			dos.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	/**
+	 * Returns a read-only view of the current page image, for writing the page
+	 * without copying it. The view is only valid until the page is next modified.
+	 */
+	ByteBuffer getPageBuffer() {
+		ByteBuffer view = data.asReadOnlyBuffer();
+		view.clear();
+		view.limit(pageSize);
+		return view;
+	}
 
-		return baos.toByteArray();
+	// see Page.java for javadocs
+	public int getPageSize() {
+		return pageSize;
 	}
 
 	/**
@@ -230,46 +451,244 @@ public class HeapPage implements Page {
 	 * @return The returned ByteArray.
 	 */
 	public static byte[] createEmptyPageData() {
-		int len = BufferPool.PAGE_SIZE;
-		return new byte[len]; // all 0
+		return createEmptyPageData(BufferPool.PAGE_SIZE);
+	}
+
+	/**
+	 * Generates the bytes of an empty HeapPage of a table with the specified page
+	 * size.
+	 *
+	 * @see #createEmptyPageData()
+	 */
+	public static byte[] createEmptyPageData(int pageSize) {
+		return new byte[pageSize]; // all 0
+	}
+
+	/**
+	 * Generates the bytes of a slotted page holding the specified serialized
+	 * tuples in slots 0, 1, ..., which must fit on the page.
+	 *
+	 * @see #createEmptyPageData(int)
+	 */
+	static byte[] createSlottedPageData(int pageSize, List<byte[]> tuples) {
+		ByteBuffer page = ByteBuffer.allocate(pageSize);
+		int start = pageSize;
+		for (int i = 0; i < tuples.size(); i++) {
+			byte[] bytes = tuples.get(i);
+			start -= bytes.length;
+			page.position(start);
+			page.put(bytes);
+			page.putInt(SLOTTED_HEADER_SIZE + i * SLOT_ENTRY_SIZE, start);
+			page.putInt(SLOTTED_HEADER_SIZE + i * SLOT_ENTRY_SIZE + 4, bytes.length);
+		}
+		page.putInt(0, tuples.size());
+		page.putInt(4, start);
+		return page.array();
 	}
 
 	/**
 	 * Delete the specified tuple from the page; the tuple should be updated to
-	 * reflect that it is no longer stored on any page.
-	 * 
+	 * reflect that it is no longer stored on any page. The tuple is found by its
+	 * RecordId. Only the header bit and the bytes of its slot are changed.
+	 *
 	 * @throws DbException if this tuple is not on this page, or tuple slot is
 	 *                     already empty.
 	 * @param t The tuple to delete
 	 */
-	public void deleteTuple(Tuple t) throws DbException {
-		for (int i = 0; i < numSlots; i++) {
-			if (getSlot(i) && tuples[i].equals(t)) {
-				setSlot(i, false);
-				return;
-			}
-		}
-		throw new DbException("Tuple not found in this page");
+	public synchronized void deleteTuple(Tuple t) throws DbException {
+		RecordId rid = t.getRecordId();
+		if (rid == null || !pid.equals(rid.getPageId()))
+			throw new DbException("Tuple not found in this page");
+		int i = rid.tupleno();
+		if (i < 0 || i >= numSlots || !getSlot(i))
+			throw new DbException("Tuple slot is already empty");
+		beforeWrite();
+		int offset = slotOffset(i);
+		int length = slotted ? data.getInt(SLOTTED_HEADER_SIZE + i * SLOT_ENTRY_SIZE + 4) : td.getSize();
+		for (int b = 0; b < length; b++)
+			data.put(offset + b, (byte) 0);
+		if (slotted)
+			clearSlottedEntry(i, offset, length);
+		else
+			setSlot(i, false);
+		tuples[i] = null;
+		t.setRecordId(null);
 	}
 
 	/**
 	 * Adds the specified tuple to the page; the tuple should be updated to reflect
-	 * that it is now stored on this page.
-	 * 
+	 * that it is now stored on this page. The tuple is serialized straight into
+	 * its slot.
+	 *
 	 * @throws DbException if the page is full (no empty slots) or tupledesc is
 	 *                     mismatch.
 	 * @param t The tuple to add.
 	 */
-	public void addTuple(Tuple t) throws DbException {
-		for (int i = 0; i < numSlots; i++) {
-			if (!getSlot(i)) {
-				setSlot(i, true);
-				t.setRecordId(new RecordId(pid, i));
-				tuples[i] = t;
-				return;
+	public synchronized void addTuple(Tuple t) throws DbException {
+		byte[] bytes = serialize(t);
+		if (slotted) {
+			addSlotted(t, bytes);
+			return;
+		}
+		int i = nextEmptySlot(0);
+		if (i < 0)
+			throw new DbException("Page is full, no empty slots available");
+		beforeWrite();
+		ByteBuffer slot = data.duplicate();
+		slot.position(slotOffset(i));
+		slot.put(bytes);
+		setSlot(i, true);
+		tuples[i] = null;
+		t.setRecordId(new RecordId(pid, i));
+	}
+
+	/**
+	 * @return the on-disk representation of a tuple of this page's schema.
+	 */
+	private byte[] serialize(Tuple t) throws DbException {
+		TupleDesc ttd = t.getTupleDesc();
+		if (ttd.numFields() != td.numFields())
+			throw new DbException("TupleDesc of the tuple does not match the page");
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(td.getSize());
+		DataOutputStream dos = new DataOutputStream(baos);
+		try {
+			for (int j = 0; j < td.numFields(); j++) {
+				if (ttd.getType(j) != td.getType(j))
+					throw new DbException("TupleDesc of the tuple does not match the page");
+				t.getField(j).serialize(dos);
 			}
+			dos.flush();
+		} catch (IOException e) {
+			throw new DbException("could not serialize tuple: " + e.getMessage());
 		}
-		throw new DbException("Page is full, no empty slots available");
+		if (slotted ? baos.size() < td.getSize() : baos.size() != td.getSize())
+			throw new DbException("TupleDesc of the tuple does not match the page");
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Returns true if the specified tuple fits on this page. For pages with a
+	 * fixed tuple size, that is when there is an empty slot.
+	 */
+	public synchronized boolean hasRoomFor(Tuple t) {
+		if (!slotted)
+			return getNumEmptySlots() > 0;
+		return tupleSize(td, t) + (firstEmptyEntry() < 0 ? SLOT_ENTRY_SIZE : 0) <= freeBytes();
+	}
+
+	/**
+	 * @return the number of bytes tuple t takes on a page of schema td, not
+	 *         counting its slot entry or header bit.
+	 */
+	static int tupleSize(TupleDesc td, Tuple t) {
+		if (td.isFixedSize())
+			return td.getSize();
+		int length = 0;
+		for (int j = 0; j < td.numFields(); j++) {
+			Type type = td.getType(j);
+			length += type == Type.VARCHAR_TYPE ? 2 + StringField.encodedLength(t.getString(j)) : type.getLen();
+		}
+		return length;
+	}
+
+	/**
+	 * @return true if tuple t fits on an empty page of schema td and the
+	 *         specified size. Only tuples with long VARCHAR fields may not.
+	 */
+	static boolean fitsEmptyPage(TupleDesc td, Tuple t, int pageSize) {
+		return td.isFixedSize() || tupleSize(td, t) + SLOT_ENTRY_SIZE <= pageSize - SLOTTED_HEADER_SIZE;
+	}
+
+	/**
+	 * @return the first empty slot entry of a slotted page, or -1 if every entry
+	 *         is in use.
+	 */
+	private int firstEmptyEntry() {
+		int entries = slotEntries();
+		for (int i = 0; i < entries; i++)
+			if (data.getInt(SLOTTED_HEADER_SIZE + i * SLOT_ENTRY_SIZE) == 0)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Stores a serialized tuple in a slotted page, in the first empty slot entry
+	 * or a new one.
+	 */
+	private void addSlotted(Tuple t, byte[] bytes) throws DbException {
+		int entries = slotEntries();
+		int i = firstEmptyEntry();
+		boolean newEntry = i < 0;
+		if (newEntry)
+			i = entries;
+		if (bytes.length + (newEntry ? SLOT_ENTRY_SIZE : 0) > freeBytes() || i >= numSlots)
+			throw new DbException("Page is full, no room for a tuple of " + bytes.length + " bytes");
+		beforeWrite();
+		// a new entry is only added to the header once the data has been
+		// compacted, which must not see it
+		int start = dataStart();
+		int directoryEnd = SLOTTED_HEADER_SIZE + (newEntry ? entries + 1 : entries) * SLOT_ENTRY_SIZE;
+		if (start - bytes.length < directoryEnd) {
+			compact(entries);
+			start = dataStart();
+		}
+		start -= bytes.length;
+		ByteBuffer slot = data.duplicate();
+		slot.position(start);
+		slot.put(bytes);
+		if (newEntry)
+			data.putInt(0, entries + 1);
+		data.putInt(4, start);
+		data.putInt(SLOTTED_HEADER_SIZE + i * SLOT_ENTRY_SIZE, start);
+		data.putInt(SLOTTED_HEADER_SIZE + i * SLOT_ENTRY_SIZE + 4, bytes.length);
+		tuples[i] = null;
+		t.setRecordId(new RecordId(pid, i));
+	}
+
+	/**
+	 * Empties a slot entry of a slotted page whose tuple bytes were cleared, and
+	 * drops empty entries at the end of the slot directory.
+	 */
+	private void clearSlottedEntry(int i, int offset, int length) {
+		int start = dataStart();
+		if (offset == start)
+			data.putInt(4, start + length);
+		else
+			data.putInt(8, data.getInt(8) + length);
+		data.putInt(SLOTTED_HEADER_SIZE + i * SLOT_ENTRY_SIZE, 0);
+		data.putInt(SLOTTED_HEADER_SIZE + i * SLOT_ENTRY_SIZE + 4, 0);
+		int entries = slotEntries();
+		while (entries > 0 && data.getInt(SLOTTED_HEADER_SIZE + (entries - 1) * SLOT_ENTRY_SIZE) == 0)
+			entries--;
+		data.putInt(0, entries);
+	}
+
+	/**
+	 * Moves the tuples of a slotted page to the end of the page, so that the
+	 * space of deleted tuples is between the slot entries and the data.
+	 */
+	private void compact(int entries) {
+		byte[] image = new byte[pageSize];
+		ByteBuffer src = data.duplicate();
+		src.clear();
+		src.get(image, 0, pageSize);
+		int start = pageSize;
+		for (int i = 0; i < entries; i++) {
+			int entry = SLOTTED_HEADER_SIZE + i * SLOT_ENTRY_SIZE;
+			int offset = data.getInt(entry);
+			if (offset == 0)
+				continue;
+			int length = data.getInt(entry + 4);
+			start -= length;
+			ByteBuffer dst = data.duplicate();
+			dst.position(start);
+			dst.put(image, offset, length);
+			data.putInt(entry, start);
+		}
+		for (int b = SLOTTED_HEADER_SIZE + entries * SLOT_ENTRY_SIZE; b < start; b++)
+			data.put(b, (byte) 0);
+		data.putInt(4, start);
+		data.putInt(8, 0);
 	}
 
 
@@ -293,22 +712,57 @@ public class HeapPage implements Page {
 	 * Returns the number of empty slots on this page.
 	 */
 	public int getNumEmptySlots() {
-		int count = 0;
-		for (int i = 0; i < numSlots; i++) {
-			if (!getSlot(i)) {
-				count++;
+		if (slotted) {
+			// as many tuples of the minimum size as fit, as if each needed a new
+			// slot entry
+			return Math.max(0, freeBytes() / (SLOT_ENTRY_SIZE + td.getSize()));
+		}
+		// count used slots a header word at a time
+		int whole = numSlots / 8;
+		int used = 0;
+		int i = 0;
+		for (; i + 8 <= whole; i += 8)
+			used += Long.bitCount(data.getLong(i));
+		for (; i < whole; i++)
+			used += Integer.bitCount(data.get(i) & 0xFF);
+		if (numSlots % 8 != 0)
+			used += Integer.bitCount(data.get(whole) & ((1 << (numSlots % 8)) - 1));
+		return numSlots - used;
+	}
+
+	/**
+	 * Returns the first empty slot at or after from, skipping full header words.
+	 *
+	 * @return the slot, or -1 if all slots from there on are in use.
+	 */
+	private int nextEmptySlot(int from) {
+		int byteIndex = from / 8;
+		int free = ~data.get(byteIndex) & 0xFF & (0xFF << (from % 8));
+		while (free == 0) {
+			byteIndex++;
+			if (byteIndex >= headerSize)
+				return -1;
+			if (byteIndex % 8 == 0) {
+				while (byteIndex + 8 <= headerSize && data.getLong(byteIndex) == -1L)
+					byteIndex += 8;
+				if (byteIndex >= headerSize)
+					return -1;
 			}
+			free = ~data.get(byteIndex) & 0xFF;
 		}
-		return count;
+		int slot = byteIndex * 8 + Integer.numberOfTrailingZeros(free);
+		return slot < numSlots ? slot : -1;
 	}
 
 	/**
 	 * Returns true if associated slot on this page is filled.
 	 */
 	public boolean getSlot(int i) {
+		if (slotted)
+			return i < slotEntries() && data.getInt(SLOTTED_HEADER_SIZE + i * SLOT_ENTRY_SIZE) != 0;
 		int byteIndex = i / 8;
 		int bitIndex = i % 8;
-		return (header[byteIndex] & (1 << bitIndex)) != 0;
+		return (data.get(byteIndex) & (1 << bitIndex)) != 0;
 	}
 
 	/**
@@ -318,10 +772,11 @@ public class HeapPage implements Page {
 		int byteIndex = i / 8;
 		int bitIndex = i % 8;
 		byte mask = (byte) (1 << bitIndex);
+		byte b = data.get(byteIndex);
 		if (value) {
-			header[byteIndex] |= mask;
+			data.put(byteIndex, (byte) (b | mask));
 		} else {
-			header[byteIndex] &= (byte) ~mask;
+			data.put(byteIndex, (byte) (b & ~mask));
 		}
 	}
 
@@ -350,7 +805,7 @@ public class HeapPage implements Page {
                 if (!hasNext()) {
                     throw new NoSuchElementException();
                 }
-                return tuples[++currentIdx];
+                return tuple(++currentIdx);
             }
         };
 	}
@@ -0,0 +1,72 @@
+package simpledb;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram counts durations in buckets of powers of two nanoseconds:
+ * bucket b holds the durations d with 2^(b-1) &lt;= d &lt; 2^b. Recording is two
+ * LongAdder increments and never blocks, so the histogram may sit on hot paths
+ * shared by many threads. Percentiles are only as precise as the buckets, i.e.
+ * within a factor of two.
+ */
+public class LatencyHistogram {
+	private static final int BUCKETS = 64;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder totalNanos = new LongAdder();
+
+	public LatencyHistogram() {
+		for (int b = 0; b < BUCKETS; b++)
+			buckets[b] = new LongAdder();
+	}
+
+	/** Records a duration. */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+		totalNanos.add(nanos);
+	}
+
+	/** @return the number of durations recorded. */
+	public long getCount() {
+		long n = 0;
+		for (LongAdder bucket : buckets)
+			n += bucket.sum();
+		return n;
+	}
+
+	/** @return the mean of the durations recorded, or 0 if there are none. */
+	public double getMeanNanos() {
+		long n = getCount();
+		return n == 0 ? 0 : (double) totalNanos.sum() / n;
+	}
+
+	/**
+	 * @param fraction the percentile, between 0 and 1
+	 * @return an upper bound of the durations below the specified percentile, or
+	 *         0 if there are none
+	 */
+	public long getPercentileNanos(double fraction) {
+		long[] counts = new long[BUCKETS];
+		long n = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			counts[b] = buckets[b].sum();
+			n += counts[b];
+		}
+		long rank = (long) Math.ceil(fraction * n);
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += counts[b];
+			if (seen >= rank && seen > 0)
+				return b == BUCKETS - 1 ? Long.MAX_VALUE : (1L << b) - 1;
+		}
+		return 0;
+	}
+
+	/** Forgets all durations recorded. */
+	public void reset() {
+		for (LongAdder bucket : buckets)
+			bucket.reset();
+		totalNanos.reset();
+	}
+}
@@ -0,0 +1,456 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LockManager grants page-level locks to transactions on behalf of the
+ * BufferPool. READ_ONLY requests take a shared lock, READ_WRITE requests take
+ * an exclusive lock, and a transaction that is the only holder of a shared lock
+ * may upgrade it to an exclusive one.
+ * <p>
+ * The lock table is striped by PageId hash: each stripe owns the locks of the
+ * pages that hash to it and is the monitor that waiting transactions block on,
+ * so requests for unrelated pages never contend on the same monitor.
+ * <p>
+ * Deadlocks are resolved according to a {@link DeadlockPolicy}. With
+ * {@link DeadlockPolicy#DETECT} every blocked request adds its edges to a
+ * wait-for graph and searches it for a cycle through the requester; a victim
+ * chosen by the {@link VictimPolicy} is aborted as soon as a cycle closes. A
+ * victim that is blocked is woken up and its pending request throws
+ * TransactionAbortedException; a victim that is running finds out on its next
+ * lock request. Either way it must be completed with
+ * {@link BufferPool#transactionComplete(TransactionId, boolean)}.
+ */
+public class LockManager {
+	/** Number of stripes in the lock table; must be a power of two. */
+	public static final int DEFAULT_STRIPES = 64;
+
+	/** How conflicting lock requests are kept from deadlocking. */
+	public enum DeadlockPolicy {
+		/** A requester younger than a conflicting holder aborts, an older one waits. */
+		WAIT_DIE,
+		/** A requester older than a conflicting holder aborts the holder, a younger one waits. */
+		WOUND_WAIT,
+		/** Requesters always wait; cycles in the wait-for graph are broken by aborting a victim. */
+		DETECT
+	}
+
+	/** Which transaction of a wait-for cycle is aborted under DETECT. */
+	public enum VictimPolicy {
+		/** The most recently started transaction. */
+		YOUNGEST,
+		/** The transaction holding the fewest locks, i.e. the cheapest to redo. */
+		FEWEST_LOCKS
+	}
+
+	/** Lock state of a single page. */
+	private static class PageLock {
+		/** The shared holders, or the single exclusive holder. */
+		final Set<TransactionId> holders = new HashSet<>(4);
+		boolean exclusive;
+	}
+
+	/** One partition of the lock table; also the monitor waiters block on. */
+	private static class Stripe {
+		final Map<PageId, PageLock> locks = new HashMap<>();
+	}
+
+	private final Stripe[] stripes;
+	private final int stripeMask;
+	private final Map<TransactionId, Set<PageId>> lockedPages;
+
+	private volatile DeadlockPolicy deadlockPolicy = DeadlockPolicy.DETECT;
+	private volatile VictimPolicy victimPolicy = VictimPolicy.YOUNGEST;
+
+	/** Wait-for graph: waiting transaction to the holders it waits for. Guarded by itself. */
+	private final Map<TransactionId, Set<TransactionId>> waitsFor = new HashMap<>();
+	/** The stripe each blocked transaction is waiting on. */
+	private final Map<TransactionId, Stripe> waitingOn = new ConcurrentHashMap<>();
+	/** Transactions chosen as victims that have not completed yet. */
+	private final Set<TransactionId> victims = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder waitCount = new LongAdder();
+	private final LongAdder detectionCount = new LongAdder();
+	private final LongAdder detectionNanos = new LongAdder();
+	private final LongAdder deadlockCount = new LongAdder();
+	private final LongAdder abortCount = new LongAdder();
+
+	/**
+	 * Creates a LockManager with the default number of stripes.
+	 */
+	public LockManager() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Creates a LockManager whose lock table is split into numStripes stripes.
+	 *
+	 * @param numStripes number of stripes; rounded up to a power of two.
+	 */
+	public LockManager(int numStripes) {
+		int n = Integer.highestOneBit(Math.max(1, numStripes - 1)) << 1;
+		this.stripes = new Stripe[n];
+		for (int i = 0; i < n; i++)
+			stripes[i] = new Stripe();
+		this.stripeMask = n - 1;
+		this.lockedPages = new ConcurrentHashMap<>();
+	}
+
+	private Stripe stripeFor(PageId pid) {
+		int h = pid.hashCode();
+		h ^= (h >>> 16);
+		return stripes[h & stripeMask];
+	}
+
+	/**
+	 * Acquire a lock on the specified page, blocking until it can be granted. A
+	 * READ_WRITE request by a transaction that already holds a shared lock is an
+	 * upgrade, and waits until every other shared holder has released the page.
+	 *
+	 * @param tid  the transaction requesting the lock
+	 * @param pid  the page to lock
+	 * @param perm READ_ONLY for a shared lock, READ_WRITE for an exclusive lock
+	 * @throws TransactionAbortedException if the transaction was chosen to abort
+	 *                                     by the deadlock policy, or the waiting
+	 *                                     thread is interrupted
+	 */
+	public void acquire(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException {
+		boolean exclusive = perm == Permissions.READ_WRITE;
+		Stripe stripe = stripeFor(pid);
+		boolean waited = false;
+		while (true) {
+			List<TransactionId> toWake;
+			synchronized (stripe) {
+				// publish where we wait before checking for abort, so that a
+				// concurrent abort either sees us here or is seen by the check
+				waitingOn.put(tid, stripe);
+				if (victims.contains(tid)) {
+					stopWaiting(tid);
+					throw new TransactionAbortedException();
+				}
+				if (tryGrant(stripe, tid, pid, exclusive)) {
+					stopWaiting(tid);
+					break;
+				}
+				if (!waited) {
+					waited = true;
+					waitCount.increment();
+				}
+				Set<TransactionId> holders = new HashSet<>(stripe.locks.get(pid).holders);
+				holders.remove(tid);
+				toWake = resolveConflict(tid, holders);
+				if (toWake.isEmpty()) {
+					try {
+						stripe.wait();
+					} catch (InterruptedException e) {
+						stopWaiting(tid);
+						Thread.currentThread().interrupt();
+						throw new TransactionAbortedException();
+					}
+					continue;
+				}
+			}
+			// wake victims outside our own stripe so that stripe monitors never nest
+			for (TransactionId victim : toWake)
+				wake(victim);
+		}
+		lockedPages.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet()).add(pid);
+	}
+
+	/**
+	 * Applies the deadlock policy to a request by tid that conflicts with holders.
+	 * Throws if tid itself has to abort.
+	 *
+	 * @return the other transactions that were made victims; empty if tid should
+	 *         simply wait.
+	 */
+	private List<TransactionId> resolveConflict(TransactionId tid, Set<TransactionId> holders)
+			throws TransactionAbortedException {
+		switch (deadlockPolicy) {
+		case WAIT_DIE:
+			for (TransactionId holder : holders) {
+				if (holder.getId() < tid.getId())
+					abortSelf(tid);
+			}
+			return Collections.emptyList();
+
+		case WOUND_WAIT:
+			List<TransactionId> wounded = new ArrayList<>();
+			for (TransactionId holder : holders) {
+				if (holder.getId() > tid.getId() && victims.add(holder)) {
+					abortCount.increment();
+					wounded.add(holder);
+				}
+			}
+			return wounded;
+
+		case DETECT:
+		default:
+			TransactionId victim = detect(tid, holders);
+			if (victim == null)
+				return Collections.emptyList();
+			if (victim.equals(tid)) {
+				stopWaiting(tid);
+				throw new TransactionAbortedException();
+			}
+			return Collections.singletonList(victim);
+		}
+	}
+
+	private void abortSelf(TransactionId tid) throws TransactionAbortedException {
+		stopWaiting(tid);
+		abortCount.increment();
+		throw new TransactionAbortedException();
+	}
+
+	/**
+	 * Records that tid waits for holders and searches the wait-for graph for a
+	 * cycle through tid. Any new cycle must pass through the edges just added, so
+	 * a search from tid is enough to find it.
+	 *
+	 * @return the victim chosen to break a cycle, or null if there is none.
+	 */
+	private TransactionId detect(TransactionId tid, Set<TransactionId> holders) {
+		long start = System.nanoTime();
+		try {
+			synchronized (waitsFor) {
+				waitsFor.put(tid, holders);
+				List<TransactionId> cycle = findCycle(tid);
+				if (cycle == null)
+					return null;
+				deadlockCount.increment();
+				TransactionId victim = chooseVictim(cycle);
+				victims.add(victim);
+				abortCount.increment();
+				if (!victim.equals(tid))
+					waitsFor.remove(victim);
+				return victim;
+			}
+		} finally {
+			detectionCount.increment();
+			detectionNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	/** Depth-first search for a path from start back to itself, ignoring victims. */
+	private List<TransactionId> findCycle(TransactionId start) {
+		Deque<TransactionId> path = new ArrayDeque<>();
+		Set<TransactionId> visited = new HashSet<>();
+		return findCycle(start, start, path, visited) ? new ArrayList<>(path) : null;
+	}
+
+	private boolean findCycle(TransactionId start, TransactionId node, Deque<TransactionId> path,
+			Set<TransactionId> visited) {
+		path.addLast(node);
+		Set<TransactionId> next = waitsFor.get(node);
+		if (next != null) {
+			for (TransactionId t : next) {
+				if (victims.contains(t))
+					continue;
+				if (t.equals(start))
+					return true;
+				if (visited.add(t) && findCycle(start, t, path, visited))
+					return true;
+			}
+		}
+		path.removeLast();
+		return false;
+	}
+
+	private TransactionId chooseVictim(List<TransactionId> cycle) {
+		TransactionId victim = null;
+		for (TransactionId t : cycle) {
+			if (victim == null || cheaperVictim(t, victim))
+				victim = t;
+		}
+		return victim;
+	}
+
+	private boolean cheaperVictim(TransactionId a, TransactionId b) {
+		if (victimPolicy == VictimPolicy.FEWEST_LOCKS) {
+			int la = getLockedPages(a).size();
+			int lb = getLockedPages(b).size();
+			if (la != lb)
+				return la < lb;
+		}
+		return a.getId() > b.getId();
+	}
+
+	/** Wakes up a victim if it is blocked, so that it notices its abort. */
+	private void wake(TransactionId victim) {
+		Stripe stripe = waitingOn.get(victim);
+		if (stripe != null) {
+			synchronized (stripe) {
+				stripe.notifyAll();
+			}
+		}
+	}
+
+	private void stopWaiting(TransactionId tid) {
+		waitingOn.remove(tid);
+		synchronized (waitsFor) {
+			waitsFor.remove(tid);
+		}
+	}
+
+	/** Grants the lock if it is compatible with the current holders. */
+	private boolean tryGrant(Stripe stripe, TransactionId tid, PageId pid, boolean exclusive) {
+		PageLock lock = stripe.locks.get(pid);
+		if (lock == null) {
+			lock = new PageLock();
+			lock.holders.add(tid);
+			lock.exclusive = exclusive;
+			stripe.locks.put(pid, lock);
+			return true;
+		}
+		if (lock.holders.contains(tid)) {
+			if (!exclusive || lock.exclusive)
+				return true;
+			if (lock.holders.size() == 1) {
+				lock.exclusive = true;
+				return true;
+			}
+			return false;
+		}
+		if (!exclusive && !lock.exclusive) {
+			lock.holders.add(tid);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Release the lock the specified transaction holds on the specified page, if
+	 * any, and wake up transactions waiting on it.
+	 */
+	public void release(TransactionId tid, PageId pid) {
+		Stripe stripe = stripeFor(pid);
+		synchronized (stripe) {
+			PageLock lock = stripe.locks.get(pid);
+			if (lock != null && lock.holders.remove(tid)) {
+				if (lock.holders.isEmpty())
+					stripe.locks.remove(pid);
+				stripe.notifyAll();
+			}
+		}
+		Set<PageId> pids = lockedPages.get(tid);
+		if (pids != null)
+			pids.remove(pid);
+	}
+
+	/**
+	 * Release every lock held by the specified transaction.
+	 */
+	public void releaseAll(TransactionId tid) {
+		Set<PageId> pids = lockedPages.remove(tid);
+		if (pids != null) {
+			for (PageId pid : pids)
+				release(tid, pid);
+		}
+		stopWaiting(tid);
+		victims.remove(tid);
+	}
+
+	/** Return true if the specified transaction holds a lock on the specified page */
+	public boolean holdsLock(TransactionId tid, PageId pid) {
+		Stripe stripe = stripeFor(pid);
+		synchronized (stripe) {
+			PageLock lock = stripe.locks.get(pid);
+			return lock != null && lock.holders.contains(tid);
+		}
+	}
+
+	/** Return true if the specified transaction holds an exclusive lock on the page */
+	public boolean holdsExclusive(TransactionId tid, PageId pid) {
+		Stripe stripe = stripeFor(pid);
+		synchronized (stripe) {
+			PageLock lock = stripe.locks.get(pid);
+			return lock != null && lock.exclusive && lock.holders.contains(tid);
+		}
+	}
+
+	/**
+	 * @return the transaction holding an exclusive lock on the page, or null if
+	 *         the page is unlocked or only share-locked.
+	 */
+	public TransactionId exclusiveHolder(PageId pid) {
+		Stripe stripe = stripeFor(pid);
+		synchronized (stripe) {
+			PageLock lock = stripe.locks.get(pid);
+			if (lock == null || !lock.exclusive || lock.holders.isEmpty())
+				return null;
+			return lock.holders.iterator().next();
+		}
+	}
+
+	/**
+	 * @return the pages the specified transaction currently holds locks on.
+	 */
+	public Set<PageId> getLockedPages(TransactionId tid) {
+		Set<PageId> pids = lockedPages.get(tid);
+		return pids == null ? Collections.<PageId>emptySet() : Collections.unmodifiableSet(pids);
+	}
+
+	/** Sets how conflicting lock requests are kept from deadlocking. */
+	public void setDeadlockPolicy(DeadlockPolicy policy) {
+		this.deadlockPolicy = policy;
+	}
+
+	public DeadlockPolicy getDeadlockPolicy() {
+		return deadlockPolicy;
+	}
+
+	/** Sets which transaction of a cycle is aborted under DeadlockPolicy.DETECT. */
+	public void setVictimPolicy(VictimPolicy policy) {
+		this.victimPolicy = policy;
+	}
+
+	public VictimPolicy getVictimPolicy() {
+		return victimPolicy;
+	}
+
+	/** @return the number of lock requests that had to wait at least once. */
+	public long getWaitCount() {
+		return waitCount.sum();
+	}
+
+	/** @return the number of wait-for graph searches performed. */
+	public long getDetectionCount() {
+		return detectionCount.sum();
+	}
+
+	/** @return the total time spent searching the wait-for graph, in nanoseconds. */
+	public long getDetectionNanos() {
+		return detectionNanos.sum();
+	}
+
+	/** @return the number of wait-for cycles found. */
+	public long getDeadlockCount() {
+		return deadlockCount.sum();
+	}
+
+	/** @return the number of transactions aborted by the deadlock policy. */
+	public long getAbortCount() {
+		return abortCount.sum();
+	}
+
+	/**
+	 * @return the fraction of waiting lock requests that ended in an abort, or 0
+	 *         if no request has waited.
+	 */
+	public double getAbortRate() {
+		long waits = waitCount.sum();
+		return waits == 0 ? 0.0 : (double) abortCount.sum() / waits;
+	}
+
+	/** Resets all counters to zero. */
+	public void resetStats() {
+		waitCount.reset();
+		detectionCount.reset();
+		detectionNanos.reset();
+		deadlockCount.reset();
+		abortCount.reset();
+	}
+}
@@ -207,6 +207,8 @@ public class LogFile {
 		 * record type transaction id before page data (see writePageData) after page
 		 * data start offset
 		 */
+		// a transaction that never logged a BEGIN starts with its first update
+		tidToFirstLogRecord.putIfAbsent(tid.getId(), currentOffset);
 		raf.writeInt(UPDATE_RECORD);
 		raf.writeLong(tid.getId());
 
@@ -218,6 +220,14 @@ public class LogFile {
 		Debug.log("WRITE OFFSET = " + currentOffset);
 	}
 
+	/**
+	 * @return true if the specified transaction has log records that are not
+	 *         followed by a COMMIT or ABORT record yet.
+	 */
+	synchronized boolean hasLogRecords(TransactionId tid) {
+		return tidToFirstLogRecord.containsKey(tid.getId());
+	}
+
 	void writePageData(RandomAccessFile raf, Page p) throws IOException {
 		PageId pid = p.getId();
 		int pageInfo[] = pid.serialize();
@@ -258,31 +268,33 @@ public class LogFile {
 			Class<?> idClass = Class.forName(idClassName);
 			Class<?> pageClass = Class.forName(pageClassName);
 
-			Constructor<?>[] idConsts = idClass.getDeclaredConstructors();
 			int numIdArgs = raf.readInt();
 			Object idArgs[] = new Object[numIdArgs];
+			Class<?> idTypes[] = new Class<?>[numIdArgs];
 			for (int i = 0; i < numIdArgs; i++) {
-				idArgs[i] = new Integer(raf.readInt());
+				idArgs[i] = Integer.valueOf(raf.readInt());
+				idTypes[i] = int.class;
 			}
-			pid = (PageId) idConsts[0].newInstance(idArgs);
+			pid = (PageId) idClass.getDeclaredConstructor(idTypes).newInstance(idArgs);
 
-			Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
+			// pages may have more than one constructor; use the one taking the
+			// bytes written by getPageData
+			Constructor<?> pageConst = pageClass.getDeclaredConstructor(idClass, byte[].class);
 			int pageSize = raf.readInt();
 
 			byte[] pageData = new byte[pageSize];
-			raf.read(pageData); // read before image
-
-			Object[] pageArgs = new Object[2];
-			pageArgs[0] = pid;
-			pageArgs[1] = pageData;
+			raf.readFully(pageData); // read before image
 
-			newPage = (Page) pageConsts[0].newInstance(pageArgs);
+			newPage = (Page) pageConst.newInstance(pid, pageData);
 
 			// Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " +
 			// newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
 		} catch (ClassNotFoundException e) {
 			e.printStackTrace();
 			throw new IOException();
+		} catch (NoSuchMethodException e) {
+			e.printStackTrace();
+			throw new IOException();
 		} catch (InstantiationException e) {
 			e.printStackTrace();
 			throw new IOException();
@@ -297,6 +309,31 @@ public class LogFile {
 
 	}
 
+	/** Skips over a page written by writePageData. */
+	void skipPageData(RandomAccessFile raf) throws IOException {
+		raf.readUTF();
+		raf.readUTF();
+		int numIdArgs = raf.readInt();
+		raf.seek(raf.getFilePointer() + numIdArgs * INT_SIZE);
+		int pageSize = raf.readInt();
+		raf.seek(raf.getFilePointer() + pageSize);
+	}
+
+	/** Skips the rest of a record, after its type and transaction id. */
+	void skipRecord(RandomAccessFile raf, int type) throws IOException {
+		switch (type) {
+		case UPDATE_RECORD:
+			skipPageData(raf);
+			skipPageData(raf);
+			break;
+		case CHECKPOINT_RECORD:
+			int numXactions = raf.readInt();
+			raf.seek(raf.getFilePointer() + numXactions * 2 * LONG_SIZE);
+			break;
+		}
+		raf.readLong();
+	}
+
 	/**
 	 * Write a BEGIN record for the specified transaction
 	 * 
@@ -471,7 +508,36 @@ public class LogFile {
 		synchronized (Database.getBufferPool()) {
 			synchronized (this) {
 				preAppend();
-				// some code goes here
+				Long first = tidToFirstLogRecord.get(tid.getId());
+				if (first == null) {
+					throw new NoSuchElementException("transaction " + tid.getId() + " has no log records");
+				}
+
+				// the first before-image of a page is its state when the
+				// transaction started writing it
+				Map<PageId, Page> restore = new LinkedHashMap<PageId, Page>();
+				raf.seek(first);
+				while (raf.getFilePointer() < currentOffset) {
+					int type = raf.readInt();
+					long recordTid = raf.readLong();
+					if (type == UPDATE_RECORD && recordTid == tid.getId()) {
+						Page before = readPageData(raf);
+						skipPageData(raf);
+						raf.readLong();
+						if (!restore.containsKey(before.getId())) {
+							restore.put(before.getId(), before);
+						}
+					} else {
+						skipRecord(raf, type);
+					}
+				}
+				raf.seek(currentOffset);
+
+				for (Page before : restore.values()) {
+					PageId pid = before.getId();
+					Database.getCatalog().getDbFile(pid.getTableId()).writePage(before);
+					Database.getBufferPool().discardPage(pid);
+				}
 			}
 		}
 	}
@@ -499,11 +565,75 @@ public class LogFile {
 		synchronized (Database.getBufferPool()) {
 			synchronized (this) {
 				recoveryUndecided = false;
-				// some code goes here
+				if (raf.length() < LONG_SIZE) {
+					raf.setLength(0);
+					raf.writeLong(NO_CHECKPOINT_ID);
+				}
+
+				// analysis: find the committed transactions and all updates
+				Set<Long> committed = new HashSet<Long>();
+				List<Long> updates = new ArrayList<Long>();
+				List<Long> updateTids = new ArrayList<Long>();
+				raf.seek(LONG_SIZE);
+				long end = raf.length();
+				while (raf.getFilePointer() < end) {
+					long start = raf.getFilePointer();
+					int type;
+					long recordTid;
+					try {
+						type = raf.readInt();
+						recordTid = raf.readLong();
+						skipRecord(raf, type);
+					} catch (EOFException e) {
+						// a record torn by the crash was never acknowledged
+						end = start;
+						break;
+					}
+					if (type == COMMIT_RECORD) {
+						committed.add(recordTid);
+					} else if (type == UPDATE_RECORD) {
+						updates.add(start);
+						updateTids.add(recordTid);
+					}
+				}
+
+				// undo every update of an uncommitted transaction, newest first,
+				// then redo the committed ones in log order; pages are logged
+				// whole, so each page ends up as its last committed image, or as
+				// it was before any of the losers touched it
+				Set<PageId> written = new HashSet<PageId>();
+				for (int i = updates.size() - 1; i >= 0; i--) {
+					if (!committed.contains(updateTids.get(i))) {
+						raf.seek(updates.get(i) + INT_SIZE + LONG_SIZE);
+						written.add(install(readPageData(raf)));
+					}
+				}
+				for (int i = 0; i < updates.size(); i++) {
+					if (committed.contains(updateTids.get(i))) {
+						raf.seek(updates.get(i) + INT_SIZE + LONG_SIZE);
+						skipPageData(raf);
+						written.add(install(readPageData(raf)));
+					}
+				}
+				for (PageId pid : written) {
+					Database.getBufferPool().discardPage(pid);
+				}
+
+				tidToFirstLogRecord.clear();
+				raf.setLength(end);
+				raf.seek(end);
+				currentOffset = end;
 			}
 		}
 	}
 
+	/** Writes a logged page image to its file. */
+	private PageId install(Page p) throws IOException {
+		PageId pid = p.getId();
+		Database.getCatalog().getDbFile(pid.getTableId()).writePage(p);
+		return pid;
+	}
+
 	/** Print out a human readable represenation of the log */
 	public void print() throws IOException {
 		// some code goes here
@@ -0,0 +1,104 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * LRU-K eviction (O'Neil, O'Neil and Weikum). Each page remembers the logical
+ * times of its last K accesses, and the victim is the page whose K-th most
+ * recent access is oldest; pages accessed fewer than K times go first, in LRU
+ * order. A page touched once by a scan therefore loses to a page that is
+ * re-referenced, which makes the policy scan resistant.
+ * <p>
+ * Accesses only update a page's history, so the hit path is O(1); the victim
+ * search is a linear pass over the resident pages. The history of evicted pages
+ * is retained for a while so that a page coming back is not treated as new.
+ */
+class LruKPolicy implements BufferPool.EvictionPolicy {
+
+	private final int k;
+	private final int retainedLimit;
+	private long clock;
+	/** History of resident pages: the last K access times, most recent first. */
+	private final Map<PageId, long[]> resident;
+	/** History of recently evicted pages, oldest first. */
+	private final LinkedHashMap<PageId, long[]> retained;
+
+	LruKPolicy(int numPages, int k) {
+		this.k = k;
+		this.retainedLimit = Math.max(1, numPages);
+		this.clock = 0;
+		this.resident = new HashMap<>();
+		this.retained = new LinkedHashMap<>();
+	}
+
+	public void recordAccess(PageId pid) {
+		long[] history = resident.get(pid);
+		if (history != null)
+			touch(history);
+	}
+
+	public void recordInsert(PageId pid) {
+		long[] history = retained.remove(pid);
+		if (history == null)
+			history = resident.get(pid);
+		if (history == null) {
+			history = new long[k];
+			Arrays.fill(history, -1);
+		}
+		touch(history);
+		resident.put(pid, history);
+	}
+
+	/** @return the number of the last K accesses the page has had. */
+	public int temperature(PageId pid) {
+		long[] history = resident.get(pid);
+		int n = 0;
+		while (history != null && n < k && history[n] >= 0)
+			n++;
+		return Math.max(1, n);
+	}
+
+	private void touch(long[] history) {
+		System.arraycopy(history, 0, history, 1, k - 1);
+		history[0] = ++clock;
+	}
+
+	public void remove(PageId pid) {
+		resident.remove(pid);
+	}
+
+	/** Makes the page resident again with its history as it was. */
+	public void restore(PageId pid) {
+		long[] history = retained.remove(pid);
+		if (history != null)
+			resident.put(pid, history);
+	}
+
+	public PageId evict(java.util.function.Predicate<PageId> evictable) {
+		PageId victim = null;
+		long victimKth = Long.MAX_VALUE;
+		long victimLast = Long.MAX_VALUE;
+		for (Map.Entry<PageId, long[]> e : resident.entrySet()) {
+			long[] history = e.getValue();
+			long kth = history[k - 1];
+			long last = history[0];
+			// a missing K-th access (-1) sorts before any real one
+			if (kth < victimKth || (kth == victimKth && last < victimLast)) {
+				if (!evictable.test(e.getKey()))
+					continue;
+				victim = e.getKey();
+				victimKth = kth;
+				victimLast = last;
+			}
+		}
+		if (victim != null) {
+			retained.put(victim, resident.remove(victim));
+			if (retained.size() > retainedLimit) {
+				Iterator<PageId> it = retained.keySet().iterator();
+				it.next();
+				it.remove();
+			}
+		}
+		return victim;
+	}
+}
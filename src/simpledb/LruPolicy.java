@@ -0,0 +1,44 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Least recently used eviction, kept in an access-ordered LinkedHashMap so that
+ * an access is a constant-time move to the tail.
+ */
+class LruPolicy implements BufferPool.EvictionPolicy {
+
+	private final LinkedHashMap<PageId, Boolean> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+	public void recordAccess(PageId pid) {
+		resident.get(pid);
+	}
+
+	public void recordInsert(PageId pid) {
+		resident.put(pid, Boolean.TRUE);
+	}
+
+	public void remove(PageId pid) {
+		resident.remove(pid);
+	}
+
+	/** Puts the page back at the least recently used end. */
+	public void restore(PageId pid) {
+		List<PageId> rest = new ArrayList<>(resident.keySet());
+		resident.clear();
+		resident.put(pid, Boolean.TRUE);
+		for (PageId p : rest)
+			resident.put(p, Boolean.TRUE);
+	}
+
+	public PageId evict(java.util.function.Predicate<PageId> evictable) {
+		for (Iterator<PageId> it = resident.keySet().iterator(); it.hasNext();) {
+			PageId pid = it.next();
+			if (evictable.test(pid)) {
+				it.remove();
+				return pid;
+			}
+		}
+		return null;
+	}
+}
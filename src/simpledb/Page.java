@@ -47,6 +47,14 @@ public interface Page {
 
 	public byte[] getPageData();
 
+	/**
+	 * @return the number of bytes of this page, which is the length of the array
+	 *         returned by getPageData.
+	 */
+	public default int getPageSize() {
+		return BufferPool.PAGE_SIZE;
+	}
+
 	/**
 	 * Provide a representation of this page before any modifications were made to
 	 * it. Used by recovery.
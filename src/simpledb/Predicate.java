@@ -1,9 +1,11 @@
 package simpledb;
 
+import java.util.function.LongPredicate;
+
 /**
  * Predicate compares tuples to a specified Field value.
  */
-public class Predicate {
+public class Predicate implements TupleFilter {
 
 	/** Constants used for return codes in Field.compare */
 	public enum Op {
@@ -27,30 +29,229 @@ public class Predicate {
 		public static Op getOp(int i) {
 			return values()[i];
 		}
+
+		/**
+		 * @param cmp the result of comparing a value to the operand, negative,
+		 *            zero or positive as by Comparable.compareTo
+		 * @return true if the comparison satisfies this operator. LIKE is
+		 *         equality, as for integers.
+		 */
+		boolean holds(int cmp) {
+			switch (this) {
+			case EQUALS:
+			case LIKE:
+				return cmp == 0;
+			case NOT_EQUALS:
+				return cmp != 0;
+			case GREATER_THAN:
+				return cmp > 0;
+			case GREATER_THAN_OR_EQ:
+				return cmp >= 0;
+			case LESS_THAN:
+				return cmp < 0;
+			case LESS_THAN_OR_EQ:
+				return cmp <= 0;
+			}
+			return false;
+		}
 	}
 
+	private final int field;
+	private final Op op;
+	private final Field operand;
 	/**
-	 * Constructor.
+	 * The comparison of a packed value to the operand, for operands that are
+	 * not strings; null for strings.
+	 */
+	private final LongPredicate packedTest;
+	/** The comparison of a string to the operand, for string operands. */
+	private final java.util.function.Predicate<String> stringTest;
+	/** The last schema the compiled tests were found to apply to. */
+	private TupleDesc checked;
+
+	/**
+	 * Constructor. The operator and the type of the operand are resolved once,
+	 * here, into a comparison specialized for both, which filter applies to the
+	 * unboxed value of each tuple.
 	 *
 	 * @param field   field number of passed in tuples to compare against.
 	 * @param op      operation to use for comparison
 	 * @param operand field value to compare passed in tuples to
 	 */
 	public Predicate(int field, Op op, Field operand) {
-		// some code goes here
+		this.field = field;
+		this.op = op;
+		this.operand = operand;
+		Type type = operand.getType();
+		if (Tuple.isString(type)) {
+			this.packedTest = null;
+			this.stringTest = compile(op, ((StringField) operand).getValue());
+		} else if (type == Type.DOUBLE_TYPE) {
+			this.packedTest = compile(op, ((DoubleField) operand).getValue());
+			this.stringTest = null;
+		} else {
+			this.packedTest = compile(op, integral(operand));
+			this.stringTest = null;
+		}
+	}
+
+	/** @return the packed value of an integral field. */
+	private static long integral(Field f) {
+		switch (f.getType()) {
+		case INT_TYPE:
+			return ((IntField) f).getValue();
+		case LONG_TYPE:
+			return ((LongField) f).getValue();
+		case DECIMAL_TYPE:
+			return ((DecimalField) f).getUnscaledValue();
+		case DATE_TYPE:
+			return ((DateField) f).getEpochDay();
+		case TIMESTAMP_TYPE:
+			return ((TimestampField) f).getEpochMicros();
+		default:
+			throw new IllegalArgumentException("not an integral field: " + f.getType());
+		}
+	}
+
+	private static LongPredicate compile(Op op, long v) {
+		switch (op) {
+		case EQUALS:
+		case LIKE:
+			return x -> x == v;
+		case NOT_EQUALS:
+			return x -> x != v;
+		case GREATER_THAN:
+			return x -> x > v;
+		case GREATER_THAN_OR_EQ:
+			return x -> x >= v;
+		case LESS_THAN:
+			return x -> x < v;
+		case LESS_THAN_OR_EQ:
+			return x -> x <= v;
+		}
+		throw new IllegalArgumentException("unknown operator " + op);
+	}
+
+	/** Compiles a comparison of the bits of a double, ordered as by Double.compare. */
+	private static LongPredicate compile(Op op, double v) {
+		switch (op) {
+		case EQUALS:
+		case LIKE:
+			return x -> Double.compare(Double.longBitsToDouble(x), v) == 0;
+		case NOT_EQUALS:
+			return x -> Double.compare(Double.longBitsToDouble(x), v) != 0;
+		case GREATER_THAN:
+			return x -> Double.compare(Double.longBitsToDouble(x), v) > 0;
+		case GREATER_THAN_OR_EQ:
+			return x -> Double.compare(Double.longBitsToDouble(x), v) >= 0;
+		case LESS_THAN:
+			return x -> Double.compare(Double.longBitsToDouble(x), v) < 0;
+		case LESS_THAN_OR_EQ:
+			return x -> Double.compare(Double.longBitsToDouble(x), v) <= 0;
+		}
+		throw new IllegalArgumentException("unknown operator " + op);
+	}
+
+	/** Compiles a string comparison; LIKE matches strings that contain v. */
+	private static java.util.function.Predicate<String> compile(Op op, String v) {
+		switch (op) {
+		case EQUALS:
+			return x -> x.equals(v);
+		case NOT_EQUALS:
+			return x -> !x.equals(v);
+		case GREATER_THAN:
+			return x -> x.compareTo(v) > 0;
+		case GREATER_THAN_OR_EQ:
+			return x -> x.compareTo(v) >= 0;
+		case LESS_THAN:
+			return x -> x.compareTo(v) < 0;
+		case LESS_THAN_OR_EQ:
+			return x -> x.compareTo(v) <= 0;
+		case LIKE:
+			return x -> x.contains(v);
+		}
+		throw new IllegalArgumentException("unknown operator " + op);
+	}
+
+	/** @return the field number */
+	public int getField() {
+		return field;
+	}
+
+	/** @return the operator */
+	public Op getOp() {
+		return op;
+	}
+
+	/** @return the operand */
+	public Field getOperand() {
+		return operand;
+	}
+
+	/**
+	 * Returns true if the compiled comparison applies to the field of tuples of
+	 * a schema: the field has the type of the operand, both are strings, or both
+	 * are plain integers.
+	 */
+	private boolean compiledFor(TupleDesc td) {
+		if (td == checked)
+			return true;
+		Type type = td.getType(field);
+		Type other = operand.getType();
+		boolean applies = type == other || Tuple.isString(type) && Tuple.isString(other)
+				|| (type == Type.INT_TYPE || type == Type.LONG_TYPE)
+						&& (other == Type.INT_TYPE || other == Type.LONG_TYPE);
+		if (applies)
+			checked = td;
+		return applies;
 	}
 
 	/**
 	 * Compares the field number of t specified in the constructor to the operand
 	 * field specified in the constructor using the operator specific in the
-	 * constructor. The comparison can be made through Field's compare method.
+	 * constructor. The value of the tuple is compared unboxed by the compiled
+	 * comparison; fields of a type it does not apply to are compared through
+	 * Field's compare method.
 	 *
 	 * @param t The tuple to compare against
 	 * @return true if the comparison is true, false otherwise.
 	 */
 	public boolean filter(Tuple t) {
-		// some code goes here
-		return false;
+		if (!compiledFor(t.getTupleDesc()))
+			return t.getField(field).compare(op, operand);
+		if (stringTest != null)
+			return stringTest.test(t.getString(field));
+		return packedTest.test(t.getPackedValue(field));
+	}
+
+	/**
+	 * Narrows the selection of a batch down to the rows whose field satisfies
+	 * this predicate, applying the compiled comparison to its column.
+	 *
+	 * @return the number of rows still selected
+	 */
+	public int filter(TupleBatch batch) {
+		int[] sel = batch.getSelection();
+		int n = batch.numSelected();
+		int kept = 0;
+		if (!compiledFor(batch.getTupleDesc())) {
+			for (int k = 0; k < n; k++)
+				if (batch.getField(field, sel[k]).compare(op, operand))
+					sel[kept++] = sel[k];
+		} else if (stringTest != null) {
+			java.util.function.Predicate<String> test = stringTest;
+			for (int k = 0; k < n; k++)
+				if (test.test(batch.getString(field, sel[k])))
+					sel[kept++] = sel[k];
+		} else {
+			LongPredicate test = packedTest;
+			long[] column = batch.getColumn(field);
+			for (int k = 0; k < n; k++)
+				if (test.test(column[sel[k]]))
+					sel[kept++] = sel[k];
+		}
+		batch.setNumSelected(kept);
+		return kept;
 	}
 
 	/**
@@ -58,7 +259,6 @@ public class Predicate {
 	 * operand_string
 	 */
 	public String toString() {
-		// some code goes here
-		return "";
+		return "f = " + field + " op = " + op + " operand = " + operand;
 	}
 }
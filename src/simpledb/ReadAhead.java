@@ -0,0 +1,121 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ReadAhead detects sequential page access within a table and reads the
+ * following pages on a background thread, so that a scan finds its next page
+ * already in memory instead of paying a blocking disk read per page.
+ * <p>
+ * Prefetched pages are staged here rather than placed in BufferPool frames:
+ * reading ahead takes no locks and evicts nothing, and a staged page only
+ * enters the pool when a transaction misses on it after acquiring its lock.
+ * Only misses are tracked, so hits never need the pool's monitor. A
+ * page is staged only while it is not resident, and the only writes to a page
+ * that is not resident, those of rollback and recovery, discard its staged
+ * image, so a staged image is never older than the one on disk.
+ * <p>
+ * All methods must be called while holding the monitor of the owning
+ * BufferPool.
+ */
+class ReadAhead {
+	/**
+	 * Shared by all buffer pools. A single thread keeps the reads of each file in
+	 * page order, which is what the disk handles best anyway.
+	 */
+	private static final ExecutorService IO = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "simpledb-read-ahead");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/** Position of the most recent access to a table and the prefetched range. */
+	private static class Stream {
+		int last = -2;
+		int prefetchedTo = -1;
+	}
+
+	private int window;
+	private final Map<Integer, Stream> streams = new HashMap<>();
+	private final Map<PageId, CompletableFuture<Page>> staged;
+
+	/**
+	 * @param window the number of pages to read ahead of a sequential access; 0
+	 *               disables read-ahead.
+	 */
+	ReadAhead(int window) {
+		this.window = window;
+		// pages of abandoned scans are never taken; drop the oldest ones
+		this.staged = new LinkedHashMap<PageId, CompletableFuture<Page>>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<PageId, CompletableFuture<Page>> eldest) {
+				return size() > 4 * Math.max(ReadAhead.this.window, 1);
+			}
+		};
+	}
+
+	int getWindow() {
+		return window;
+	}
+
+	void setWindow(int window) {
+		this.window = window;
+		if (window <= 0) {
+			staged.clear();
+		}
+	}
+
+	/**
+	 * Records a miss on pid and, if it continues a sequential run in its table,
+	 * stages the pages up to window pages further that are neither resident nor
+	 * staged yet.
+	 *
+	 * @param resident tells which pages are already in the buffer pool
+	 */
+	void recordAccess(PageId pid, java.util.function.Predicate<PageId> resident) {
+		if (window <= 0) {
+			return;
+		}
+		int tableId = pid.getTableId();
+		int pageno = pid.pageno();
+		Stream s = streams.computeIfAbsent(tableId, k -> new Stream());
+		boolean sequential = pageno == s.last + 1;
+		s.last = pageno;
+		if (!sequential) {
+			s.prefetchedTo = pageno;
+			return;
+		}
+
+		DbFile file = Database.getCatalog().getDbFile(tableId);
+		if (!(file instanceof HeapFile)) {
+			return;
+		}
+		int end = Math.min(pageno + window, ((HeapFile) file).numPages() - 1);
+		for (int n = Math.max(s.prefetchedTo, pageno) + 1; n <= end; n++) {
+			PageId next = new HeapPageId(tableId, n);
+			if (!resident.test(next) && !staged.containsKey(next)) {
+				staged.put(next, CompletableFuture.supplyAsync(() -> file.readPage(next), IO));
+			}
+		}
+		s.prefetchedTo = Math.max(s.prefetchedTo, end);
+	}
+
+	/**
+	 * Removes the staged read of pid. The caller waits for it outside the pool's
+	 * monitor.
+	 *
+	 * @return the read, which may still be running or have failed, or null if pid
+	 *         was not staged
+	 */
+	CompletableFuture<Page> take(PageId pid) {
+		return staged.remove(pid);
+	}
+
+	/** Drops the staged image of a page that became resident by other means. */
+	void invalidate(PageId pid) {
+		staged.remove(pid);
+	}
+}
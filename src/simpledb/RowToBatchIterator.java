@@ -0,0 +1,52 @@
+package simpledb;
+
+/**
+ * Implements a BatchIterator by collecting the tuples of a DbIterator into
+ * batches, for operators that produce one tuple at a time.
+ */
+public class RowToBatchIterator implements BatchIterator {
+	private final DbIterator child;
+	private final int capacity;
+	private TupleBatch batch;
+
+	/**
+	 * @param child    the iterator whose tuples are collected
+	 * @param capacity the maximum number of rows per batch
+	 */
+	public RowToBatchIterator(DbIterator child, int capacity) {
+		this.child = child;
+		this.capacity = capacity;
+	}
+
+	public RowToBatchIterator(DbIterator child) {
+		this(child, TupleBatch.DEFAULT_CAPACITY);
+	}
+
+	public void open() throws DbException, TransactionAbortedException {
+		child.open();
+		if (batch == null)
+			batch = new TupleBatch(child.getTupleDesc(), capacity);
+	}
+
+	public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+		if (batch == null)
+			throw new IllegalStateException("iterator is not open");
+		batch.clear();
+		while (!batch.isFull() && child.hasNext())
+			batch.add(child.next());
+		return batch.size() == 0 ? null : batch;
+	}
+
+	public void rewind() throws DbException, TransactionAbortedException {
+		child.rewind();
+	}
+
+	public TupleDesc getTupleDesc() {
+		return child.getTupleDesc();
+	}
+
+	public void close() {
+		child.close();
+		batch = null;
+	}
+}
@@ -6,15 +6,19 @@ import java.util.*;
  * SeqScan is an implementation of a sequential scan access method that reads
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
+ * <p>
+ * A SeqScan is also a BatchIterator. The batches of a HeapFile are decoded
+ * straight from its pages; those of other files are collected from their
+ * tuples. Tuples and batches continue where the other left off.
  */
-public class SeqScan implements DbIterator {
+public class SeqScan implements DbIterator, BatchIterator {
 
 	private TransactionId tid;
 	private int tableId;
-	private Iterator<Tuple> i;
 	private TupleDesc td;
-	private HeapFile hf;
-	private int numScannedPage = 0;
+	private DbFileIterator it;
+	/** The batch of files whose iterators do not return batches. */
+	private TupleBatch batch;
 
 	/**
 	 * Creates a sequential scan over the specified table as a part of the specified
@@ -33,15 +37,11 @@ public class SeqScan implements DbIterator {
 		this.tid = tid;
 		this.tableId = tableid;
 		this.td = Database.getCatalog().getTupleDesc(tableid);
-		this.hf = (HeapFile)Database.getCatalog().getDbFile(tableid);
+		this.it = Database.getCatalog().getDbFile(tableid).iterator(tid);
 	}
 
 	public void open() throws DbException, TransactionAbortedException {
-		this.numScannedPage = 0;
-		HeapPageId hpId = new HeapPageId(tableId, numScannedPage);
-		HeapPage hp = (HeapPage)Database.getBufferPool().getPage(tid, hpId, Permissions.READ_ONLY);
-		i = hp.iterator();
-		numScannedPage ++;
+		it.open();
 	}
 
 	/**
@@ -56,29 +56,29 @@ public class SeqScan implements DbIterator {
 	}
 
 	public boolean hasNext() throws TransactionAbortedException, DbException {
-		if(i == null)
-			return false;
-		else
-			return i.hasNext();
+		return it.hasNext();
 	}
 
 	public Tuple next() throws NoSuchElementException, TransactionAbortedException, DbException {
-		Tuple next = i.next();
-		if(!i.hasNext() && numScannedPage < hf.getPageNum()){
-			HeapPageId hpId = new HeapPageId(tableId, numScannedPage);
-			HeapPage hp = (HeapPage)Database.getBufferPool().getPage(tid, hpId, Permissions.READ_ONLY);
-			numScannedPage ++;
-			i = hp.iterator();
-		}
-		return next;
+		return it.next();
+	}
+
+	public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+		if (it instanceof BatchIterator)
+			return ((BatchIterator) it).nextBatch();
+		if (batch == null)
+			batch = new TupleBatch(td, TupleBatch.DEFAULT_CAPACITY);
+		batch.clear();
+		while (!batch.isFull() && it.hasNext())
+			batch.add(it.next());
+		return batch.size() == 0 ? null : batch;
 	}
 
 	public void close() {
-		i = null;
+		it.close();
 	}
 
 	public void rewind() throws DbException, NoSuchElementException, TransactionAbortedException {
-		close();
-		open();
+		it.rewind();
 	}
 }
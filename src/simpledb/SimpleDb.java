@@ -15,14 +15,12 @@ public class SimpleDb {
 					ArrayList<Type> ts = new ArrayList<Type>();
 					String[] typeStringAr = args[3].split(",");
 					for (String s : typeStringAr) {
-						if (s.toLowerCase().equals("int"))
-							ts.add(Type.INT_TYPE);
-						else if (s.toLowerCase().equals("string"))
-							ts.add(Type.STRING_TYPE);
-						else {
+						Type type = Type.forName(s);
+						if (type == null) {
 							System.out.println("Unknown type " + s);
 							return;
 						}
+						ts.add(type);
 					}
 					HeapFileEncoder.convert(new File(args[1]), new File(args[1].replaceAll(".txt", ".dat")),
 							BufferPool.PAGE_SIZE, Integer.parseInt(args[2]), ts.toArray(new Type[0]));
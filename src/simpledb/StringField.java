@@ -1,13 +1,17 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 
 /**
- * Instance of Field that stores a single String of a fixed length.
+ * Instance of Field that stores a single String, either of a fixed length
+ * ({@link Type#STRING_TYPE}) or of its actual length ({@link Type#VARCHAR_TYPE}).
+ * Strings are stored as UTF-8, and sizes are in bytes of their encoding.
  */
 public class StringField implements Field {
 	private String value;
 	private int maxSize;
+	private Type type;
 
 	public String getValue() {
 		return value;
@@ -17,16 +21,73 @@ public class StringField implements Field {
 	 * Constructor.
 	 *
 	 * @param s       The value of this field.
-	 * @param maxSize The maximum size of this string
+	 * @param maxSize The maximum size of this string, in bytes of its UTF-8
+	 *                encoding; a longer string is truncated.
 	 * 
 	 */
 	public StringField(String s, int maxSize) {
 		this.maxSize = maxSize;
+		this.type = Type.STRING_TYPE;
+		this.value = truncate(s, maxSize);
+	}
+
+	/**
+	 * Creates a field of type VARCHAR_TYPE. A string longer than
+	 * {@link Type#VARCHAR_MAX_LEN} bytes is truncated.
+	 *
+	 * @param s The value of this field.
+	 */
+	public StringField(String s) {
+		this.maxSize = Type.VARCHAR_MAX_LEN;
+		this.type = Type.VARCHAR_TYPE;
+		this.value = truncate(s, maxSize);
+	}
+
+	/**
+	 * @return the number of bytes of the UTF-8 encoding of s, without encoding
+	 *         it.
+	 */
+	static int encodedLength(String s) {
+		int bytes = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				bytes += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				bytes++; // encoded as '?'
+			} else {
+				bytes += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+			}
+		}
+		return bytes;
+	}
 
-		if (s.length() > maxSize)
-			value = s.substring(0, maxSize);
-		else
-			value = s;
+	/**
+	 * @return the longest prefix of s whose UTF-8 encoding has at most maxBytes
+	 *         bytes, not splitting a character.
+	 */
+	private static String truncate(String s, int maxBytes) {
+		// each char encodes to at most three bytes
+		if (s.length() * 3 <= maxBytes)
+			return s;
+		int bytes = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			int n;
+			if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1)))
+				n = 4;
+			else if (Character.isSurrogate(c))
+				n = 1;
+			else
+				n = c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+			if (bytes + n > maxBytes)
+				return s.substring(0, i);
+			bytes += n;
+			if (n == 4)
+				i++;
+		}
+		return s;
 	}
 
 	public String toString() {
@@ -42,22 +103,23 @@ public class StringField implements Field {
 	}
 
 	/**
-	 * Write this string to dos. Always writes maxSize + 4 bytes to the passed in
-	 * dos. First four bytes are string length, next bytes are string, with
-	 * remainder padded with 0 to maxSize.
+	 * Write this string to dos as UTF-8. A STRING_TYPE field always writes
+	 * maxSize + 4 bytes: first four bytes are the length of the encoding, next
+	 * bytes are the encoding, with remainder padded with 0 to maxSize. A
+	 * VARCHAR_TYPE field writes a two-byte length followed by the encoding.
 	 * 
 	 * @param dos Where the string is written
 	 */
 	public void serialize(DataOutputStream dos) throws IOException {
-		String s = value;
-		int overflow = maxSize - s.length();
-		if (overflow < 0) {
-			String news = s.substring(0, maxSize);
-			s = news;
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (type == Type.VARCHAR_TYPE) {
+			dos.writeShort(bytes.length);
+			dos.write(bytes);
+			return;
 		}
-		dos.writeInt(s.length());
-		dos.writeBytes(s);
-		while (overflow-- > 0)
+		dos.writeInt(bytes.length);
+		dos.write(bytes);
+		for (int overflow = maxSize - bytes.length; overflow > 0; overflow--)
 			dos.write((byte) 0);
 	}
 
@@ -104,6 +166,6 @@ public class StringField implements Field {
 	 */
 	public Type getType() {
 
-		return Type.STRING_TYPE;
+		return type;
 	}
 }
@@ -0,0 +1,82 @@
+package simpledb;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Instance of Field that stores a single timestamp without a time zone, as the
+ * number of microseconds since 1970-01-01T00:00.
+ */
+public class TimestampField implements Field {
+	private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+	private long micros;
+
+	/** @return the number of microseconds between 1970-01-01T00:00 and this timestamp. */
+	public long getEpochMicros() {
+		return micros;
+	}
+
+	public LocalDateTime getValue() {
+		return EPOCH.plus(micros, ChronoUnit.MICROS);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param epochMicros The number of microseconds between 1970-01-01T00:00 and
+	 *                    the value of this field.
+	 */
+	public TimestampField(long epochMicros) {
+		micros = epochMicros;
+	}
+
+	/**
+	 * Creates a field of the specified value, truncated to microseconds.
+	 *
+	 * @throws ArithmeticException if the value is out of range.
+	 */
+	public TimestampField(LocalDateTime value) {
+		this(Math.addExact(Math.multiplyExact(value.toEpochSecond(ZoneOffset.UTC), 1_000_000L),
+				value.getNano() / 1000));
+	}
+
+	/** @return the timestamp in ISO-8601 format, e.g. 2024-02-29T13:45:30.5 */
+	public String toString() {
+		return getValue().toString();
+	}
+
+	public int hashCode() {
+		return Long.hashCode(micros);
+	}
+
+	public boolean equals(Object field) {
+		return ((TimestampField) field).micros == micros;
+	}
+
+	public void serialize(DataOutputStream dos) throws IOException {
+		dos.writeLong(micros);
+	}
+
+	/**
+	 * Compare the specified field to the value of this Field. Return semantics are
+	 * as specified by Field.compare
+	 *
+	 * @throws IllegalCastException if val is not a TimestampField
+	 * @see Field#compare
+	 */
+	public boolean compare(Predicate.Op op, Field val) {
+		return op.holds(Long.compare(micros, ((TimestampField) val).micros));
+	}
+
+	/**
+	 * Return the Type of this field.
+	 * 
+	 * @return Type.TIMESTAMP_TYPE
+	 */
+	public Type getType() {
+		return Type.TIMESTAMP_TYPE;
+	}
+}
@@ -18,6 +18,8 @@ public class TransactionId {
 	}
 
 	public boolean equals(Object tid) {
+		if (!(tid instanceof TransactionId))
+			return false;
 		return ((TransactionId) tid).myid == myid;
 	}
 
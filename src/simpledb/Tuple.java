@@ -1,14 +1,37 @@
 package simpledb;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
 /**
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * Tuples decoded from a page are packed instead: the values of fixed-width
+ * fields are kept in a long[] (a double as its bits), and the bytes of all string fields in a single
+ * byte[], so that a tuple costs two or three objects however many fields it
+ * has. Typed accessors such as {@link #getInt} read the packed values directly;
+ * {@link #getField} creates Field objects on demand, and a field that is set
+ * replaces the packed value.
  */
 public class Tuple {
 
 	private TupleDesc schema;
+	/**
+	 * The fields that were set or asked for. Allocated on demand for packed
+	 * tuples; a field here takes precedence over the packed value.
+	 */
 	private Field[] fields;
+	/**
+	 * The packed values by field index, or null if this tuple is not packed. A
+	 * string field holds the offset of its bytes in strings in the upper and
+	 * their length in the lower 32 bits.
+	 */
+	private long[] values;
+	/** The bytes of the packed string fields. */
+	private byte[] strings;
 	private RecordId recordId;
 
 	/**
@@ -22,6 +45,82 @@ public class Tuple {
 		this.fields = new Field[td.numFields()];
 	}
 
+	private Tuple(TupleDesc td, long[] values, byte[] strings) {
+		this.schema = td;
+		this.values = values;
+		this.strings = strings;
+	}
+
+	/**
+	 * Creates a packed tuple from the on-disk representation of a tuple of the
+	 * specified schema. The buffer is only read here, and not referenced by the
+	 * tuple.
+	 *
+	 * @param buf    the buffer to read from; its position is not changed
+	 * @param offset the index of the tuple's first byte
+	 * @throws ParseException if the data is not a tuple of the schema
+	 */
+	static Tuple decode(TupleDesc td, ByteBuffer buf, int offset) throws ParseException {
+		int n = td.numFields();
+		long[] values = new long[n];
+		int stringBytes = 0;
+		try {
+			// the first pass keeps the position of each string's bytes in the
+			// buffer, the second copies them and replaces it
+			int at = offset;
+			for (int i = 0; i < n; i++) {
+				switch (td.getType(i)) {
+				case INT_TYPE:
+				case DATE_TYPE:
+					values[i] = buf.getInt(at);
+					at += 4;
+					break;
+				case LONG_TYPE:
+				case DOUBLE_TYPE:
+				case DECIMAL_TYPE:
+				case TIMESTAMP_TYPE:
+					// a double is kept as its bits
+					values[i] = buf.getLong(at);
+					at += 8;
+					break;
+				case STRING_TYPE:
+					int len = buf.getInt(at);
+					if (len < 0 || len > Type.STRING_LEN)
+						throw new ParseException("string length out of range", at);
+					values[i] = ((long) (at + 4) << 32) | len;
+					stringBytes += len;
+					at += Type.STRING_TYPE.getLen();
+					break;
+				case VARCHAR_TYPE:
+					len = buf.getShort(at) & 0xFFFF;
+					values[i] = ((long) (at + 2) << 32) | len;
+					stringBytes += len;
+					at += 2 + len;
+					break;
+				}
+			}
+			// every string is rebased, even when all of them are empty and
+			// the offsets are all 0
+			byte[] strings = stringBytes > 0 ? new byte[stringBytes] : null;
+			ByteBuffer src = strings == null ? null : buf.duplicate();
+			int copied = 0;
+			for (int i = 0; i < n; i++) {
+				if (isString(td.getType(i))) {
+					int len = (int) values[i];
+					if (len > 0) {
+						src.position((int) (values[i] >>> 32));
+						src.get(strings, copied, len);
+					}
+					values[i] = ((long) copied << 32) | len;
+					copied += len;
+				}
+			}
+			return new Tuple(td, values, strings);
+		} catch (IndexOutOfBoundsException | IllegalArgumentException | java.nio.BufferUnderflowException e) {
+			throw new ParseException("couldn't parse", offset);
+		}
+	}
+
 	/**
 	 * @return The TupleDesc representing the schema of this tuple.
 	 */
@@ -39,7 +138,7 @@ public class Tuple {
 
 	/**
 	 * Set the RecordId information for this tuple.
-	 * 
+	 *
 	 * @param rid the new RecordId for this tuple.
 	 */
 	public void setRecordId(RecordId rid) {
@@ -53,6 +152,8 @@ public class Tuple {
 	 * @param f new value for the field.
 	 */
 	public void setField(int i, Field f) {
+		if (fields == null)
+			fields = new Field[schema.numFields()];
 		fields[i] = f;
 	}
 
@@ -62,7 +163,151 @@ public class Tuple {
 	 * @param i field index to return. Must be a valid index.
 	 */
 	public Field getField(int i) {
-		return fields[i];
+		Field[] fs = fields;
+		Field f = fs == null ? null : fs[i];
+		if (f == null && values != null) {
+			f = packedField(i);
+			if (fs == null) {
+				fs = new Field[schema.numFields()];
+				fields = fs;
+			}
+			fs[i] = f;
+		}
+		return f;
+	}
+
+	static boolean isString(Type type) {
+		return type == Type.STRING_TYPE || type == Type.VARCHAR_TYPE;
+	}
+
+	private boolean isPacked(int i) {
+		return values != null && (fields == null || fields[i] == null);
+	}
+
+	private Field packedField(int i) {
+		return packedField(schema.getType(i), values[i], strings);
+	}
+
+	private String packedString(int i) {
+		return packedString(values[i], strings);
+	}
+
+	/**
+	 * Creates the Field of a packed value.
+	 *
+	 * @param value   the packed value
+	 * @param strings the bytes a packed string refers to
+	 */
+	static Field packedField(Type type, long value, byte[] strings) {
+		switch (type) {
+		case INT_TYPE:
+			return new IntField((int) value);
+		case STRING_TYPE:
+			return new StringField(packedString(value, strings), Type.STRING_LEN);
+		case VARCHAR_TYPE:
+			return new StringField(packedString(value, strings));
+		case LONG_TYPE:
+			return new LongField(value);
+		case DOUBLE_TYPE:
+			return new DoubleField(Double.longBitsToDouble(value));
+		case DECIMAL_TYPE:
+			return new DecimalField(value);
+		case DATE_TYPE:
+			return new DateField((int) value);
+		case TIMESTAMP_TYPE:
+			return new TimestampField(value);
+		}
+		throw new IllegalStateException("unknown type " + type);
+	}
+
+	/** Decodes a packed string. */
+	static String packedString(long value, byte[] strings) {
+		return new String(strings == null ? new byte[0] : strings, (int) (value >>> 32), (int) value,
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the value of an integer field without creating a Field.
+	 *
+	 * @param i the index of a field of type INT_TYPE
+	 * @throws IllegalArgumentException if the field is not an integer
+	 */
+	public int getInt(int i) {
+		if (schema.getType(i) != Type.INT_TYPE)
+			throw new IllegalArgumentException("field " + i + " is not an integer");
+		if (isPacked(i))
+			return (int) values[i];
+		return ((IntField) fields[i]).getValue();
+	}
+
+	/**
+	 * Returns the value of an integral field without creating a Field: an int or
+	 * long, the unscaled value of a decimal, the epoch day of a date or the
+	 * epoch microseconds of a timestamp. Values of the same type compare as
+	 * their fields do.
+	 *
+	 * @param i the index of a field of type INT_TYPE, LONG_TYPE, DECIMAL_TYPE,
+	 *          DATE_TYPE or TIMESTAMP_TYPE
+	 * @throws IllegalArgumentException if the field is not integral
+	 */
+	public long getLong(int i) {
+		Type type = schema.getType(i);
+		if (isString(type) || type == Type.DOUBLE_TYPE)
+			throw new IllegalArgumentException("field " + i + " is not integral");
+		if (isPacked(i))
+			return values[i];
+		switch (type) {
+		case INT_TYPE:
+			return ((IntField) fields[i]).getValue();
+		case LONG_TYPE:
+			return ((LongField) fields[i]).getValue();
+		case DECIMAL_TYPE:
+			return ((DecimalField) fields[i]).getUnscaledValue();
+		case DATE_TYPE:
+			return ((DateField) fields[i]).getEpochDay();
+		default:
+			return ((TimestampField) fields[i]).getEpochMicros();
+		}
+	}
+
+	/**
+	 * Returns the value of a double field without creating a Field.
+	 *
+	 * @param i the index of a field of type DOUBLE_TYPE
+	 * @throws IllegalArgumentException if the field is not a double
+	 */
+	public double getDouble(int i) {
+		if (schema.getType(i) != Type.DOUBLE_TYPE)
+			throw new IllegalArgumentException("field " + i + " is not a double");
+		if (isPacked(i))
+			return Double.longBitsToDouble(values[i]);
+		return ((DoubleField) fields[i]).getValue();
+	}
+
+	/**
+	 * Returns the packed value of a field that is not a string: an integral
+	 * value as by getLong, or the bits of a double.
+	 */
+	long getPackedValue(int i) {
+		if (schema.getType(i) != Type.DOUBLE_TYPE)
+			return getLong(i);
+		if (isPacked(i))
+			return values[i];
+		return Double.doubleToRawLongBits(((DoubleField) fields[i]).getValue());
+	}
+
+	/**
+	 * Returns the value of a string field without creating a Field.
+	 *
+	 * @param i the index of a field of type STRING_TYPE or VARCHAR_TYPE
+	 * @throws IllegalArgumentException if the field is not a string
+	 */
+	public String getString(int i) {
+		if (!isString(schema.getType(i)))
+			throw new IllegalArgumentException("field " + i + " is not a string");
+		if (isPacked(i))
+			return packedString(i);
+		return ((StringField) fields[i]).getValue();
 	}
 
 	/**
@@ -75,9 +320,9 @@ public class Tuple {
 	 */
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < fields.length; i++) {
+		for (int i = 0; i < schema.numFields(); i++) {
 			if (i > 0) sb.append("\t");
-			sb.append(fields[i].toString());
+			sb.append(getField(i).toString());
 		}
 		sb.append("\n");
 		return sb.toString();
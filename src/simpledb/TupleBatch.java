@@ -0,0 +1,317 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * TupleBatch holds up to a fixed number of rows of a schema as column vectors,
+ * for operators that process many rows per call instead of one Tuple at a time.
+ * <p>
+ * Each column is a long[] of packed values, as in a packed {@link Tuple}: an
+ * integral value as a long, a double as its bits, and a string as the offset
+ * of its UTF-8 bytes in a byte[] shared by all string columns in the upper and
+ * their length in the lower 32 bits. Typed accessors and {@link #getColumn}
+ * read the values without creating Fields.
+ * <p>
+ * The selection vector lists the rows, in order, that are still selected. It
+ * starts out with every row, and {@link #filter} narrows it down; rows that are
+ * not selected stay in the columns but should be ignored by consumers.
+ * <p>
+ * Batches are meant to be reused: a BatchIterator typically returns the same
+ * batch, refilled, on every call.
+ *
+ * @see BatchIterator
+ */
+public class TupleBatch {
+	/** The number of rows of the batches of iterators that do not specify one. */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final TupleDesc td;
+	private final int capacity;
+	private final long[][] columns;
+	private byte[] strings = new byte[0];
+	private int stringBytes;
+	/** Where each row is stored; null for rows that are not stored. */
+	private final PageId[] pages;
+	private final int[] slots;
+	private int size;
+	private final int[] selection;
+	private int selected;
+	private int[] scratch;
+
+	/**
+	 * Creates an empty batch.
+	 *
+	 * @param td       the schema of the rows
+	 * @param capacity the maximum number of rows
+	 */
+	public TupleBatch(TupleDesc td, int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+		this.td = td;
+		this.capacity = capacity;
+		this.columns = new long[td.numFields()][capacity];
+		this.pages = new PageId[capacity];
+		this.slots = new int[capacity];
+		this.selection = new int[capacity];
+	}
+
+	/** @return the schema of the rows of this batch. */
+	public TupleDesc getTupleDesc() {
+		return td;
+	}
+
+	/** @return the maximum number of rows of this batch. */
+	public int capacity() {
+		return capacity;
+	}
+
+	/** @return the number of rows in this batch, selected or not. */
+	public int size() {
+		return size;
+	}
+
+	/** @return true if no more rows can be added. */
+	public boolean isFull() {
+		return size == capacity;
+	}
+
+	/** Removes all rows. */
+	public void clear() {
+		size = 0;
+		selected = 0;
+		stringBytes = 0;
+		Arrays.fill(pages, null);
+	}
+
+	/** @return the number of selected rows. */
+	public int numSelected() {
+		return selected;
+	}
+
+	/**
+	 * Returns the selection vector: its first numSelected() entries are the
+	 * indexes of the selected rows, in increasing order. The array belongs to
+	 * the batch and must not be modified.
+	 */
+	public int[] getSelection() {
+		return selection;
+	}
+
+	/**
+	 * Returns the packed values of a column, for tight loops over the selected
+	 * rows. The array belongs to the batch and must not be modified.
+	 *
+	 * @see #getLong
+	 * @see #getDouble
+	 */
+	public long[] getColumn(int col) {
+		return columns[col];
+	}
+
+	/**
+	 * Returns an integral value: an int or long, the unscaled value of a
+	 * decimal, the epoch day of a date or the epoch microseconds of a timestamp.
+	 *
+	 * @see Tuple#getLong
+	 */
+	public long getLong(int col, int row) {
+		return columns[col][row];
+	}
+
+	/** @return the value of a field of type INT_TYPE. */
+	public int getInt(int col, int row) {
+		return (int) columns[col][row];
+	}
+
+	/** @return the value of a field of type DOUBLE_TYPE. */
+	public double getDouble(int col, int row) {
+		return Double.longBitsToDouble(columns[col][row]);
+	}
+
+	/** @return the value of a field of type STRING_TYPE or VARCHAR_TYPE. */
+	public String getString(int col, int row) {
+		return Tuple.packedString(columns[col][row], strings);
+	}
+
+	/** @return a Field of the value of a column in a row. */
+	public Field getField(int col, int row) {
+		return Tuple.packedField(td.getType(col), columns[col][row], strings);
+	}
+
+	/**
+	 * Creates a Tuple of a row, with the RecordId of the row if it was read from
+	 * a page.
+	 */
+	public Tuple getTuple(int row) {
+		Tuple t = new Tuple(td);
+		for (int col = 0; col < columns.length; col++)
+			t.setField(col, getField(col, row));
+		if (pages[row] != null)
+			t.setRecordId(new RecordId(pages[row], slots[row]));
+		return t;
+	}
+
+	/**
+	 * Adds a row with the values of a tuple. The row is selected.
+	 *
+	 * @throws IllegalStateException if the batch is full
+	 */
+	public void add(Tuple t) {
+		if (isFull())
+			throw new IllegalStateException("batch is full");
+		int row = size;
+		for (int col = 0; col < columns.length; col++) {
+			Type type = td.getType(col);
+			long value;
+			if (Tuple.isString(type)) {
+				byte[] bytes = t.getString(col).getBytes(StandardCharsets.UTF_8);
+				value = ((long) reserve(bytes.length) << 32) | bytes.length;
+				System.arraycopy(bytes, 0, strings, (int) (value >>> 32), bytes.length);
+			} else if (type == Type.DOUBLE_TYPE) {
+				value = Double.doubleToRawLongBits(t.getDouble(col));
+			} else {
+				value = t.getLong(col);
+			}
+			columns[col][row] = value;
+		}
+		RecordId rid = t.getRecordId();
+		pages[row] = rid == null ? null : rid.getPageId();
+		slots[row] = rid == null ? -1 : rid.tupleno();
+		selection[selected++] = row;
+		size++;
+	}
+
+	/**
+	 * Adds a row decoded from the on-disk representation of a tuple, as read by
+	 * {@link Tuple#decode}. The row is selected.
+	 *
+	 * @param buf    the buffer to read from; its position is not changed
+	 * @param offset the index of the tuple's first byte
+	 * @param pid    the page the tuple is stored on
+	 * @param slot   the slot the tuple is stored in
+	 */
+	void add(ByteBuffer buf, int offset, PageId pid, int slot) {
+		int row = size;
+		int at = offset;
+		for (int col = 0; col < columns.length; col++) {
+			int len;
+			switch (td.getType(col)) {
+			case INT_TYPE:
+			case DATE_TYPE:
+				columns[col][row] = buf.getInt(at);
+				at += 4;
+				break;
+			case STRING_TYPE:
+				len = buf.getInt(at);
+				columns[col][row] = copyString(buf, at + 4, len);
+				at += Type.STRING_TYPE.getLen();
+				break;
+			case VARCHAR_TYPE:
+				len = buf.getShort(at) & 0xFFFF;
+				columns[col][row] = copyString(buf, at + 2, len);
+				at += 2 + len;
+				break;
+			default:
+				columns[col][row] = buf.getLong(at);
+				at += 8;
+				break;
+			}
+		}
+		pages[row] = pid;
+		slots[row] = slot;
+		selection[selected++] = row;
+		size++;
+	}
+
+	/**
+	 * Adds the rows of tuples of a fixed size stored in slots of a page, a
+	 * column at a time. The rows are selected.
+	 *
+	 * @param buf      the page image
+	 * @param base     the offset of slot 0
+	 * @param slotSize the size of a slot
+	 * @param slots    the slots to add, in increasing order
+	 * @param n        the number of slots to add; they must fit in the batch
+	 */
+	void add(ByteBuffer buf, int base, int slotSize, PageId pid, int[] slots, int n) {
+		int first = size;
+		for (int col = 0; col < columns.length; col++) {
+			long[] column = columns[col];
+			int offset = base + td.getOffset(col);
+			switch (td.getType(col)) {
+			case INT_TYPE:
+			case DATE_TYPE:
+				for (int k = 0; k < n; k++)
+					column[first + k] = buf.getInt(offset + slots[k] * slotSize);
+				break;
+			case STRING_TYPE:
+				for (int k = 0; k < n; k++) {
+					int at = offset + slots[k] * slotSize;
+					column[first + k] = copyString(buf, at + 4, buf.getInt(at));
+				}
+				break;
+			default:
+				for (int k = 0; k < n; k++)
+					column[first + k] = buf.getLong(offset + slots[k] * slotSize);
+				break;
+			}
+		}
+		for (int k = 0; k < n; k++) {
+			int row = first + k;
+			pages[row] = pid;
+			this.slots[row] = slots[k];
+			selection[selected++] = row;
+		}
+		size += n;
+	}
+
+	/** @return an array of capacity() ints that pages may use to fill the batch. */
+	int[] scratchSlots() {
+		if (scratch == null)
+			scratch = new int[capacity];
+		return scratch;
+	}
+
+	/** @return the offset in strings of free space for the specified bytes. */
+	private int reserve(int len) {
+		if (stringBytes + len > strings.length)
+			strings = Arrays.copyOf(strings, Math.max(stringBytes + len, strings.length * 2));
+		int offset = stringBytes;
+		stringBytes += len;
+		return offset;
+	}
+
+	private long copyString(ByteBuffer buf, int at, int len) {
+		int offset = reserve(len);
+		ByteBuffer src = buf.duplicate();
+		src.position(at);
+		src.get(strings, offset, len);
+		return ((long) offset << 32) | len;
+	}
+
+	/**
+	 * Narrows the selection down to the rows that satisfy a filter.
+	 *
+	 * @return the number of rows still selected
+	 * @see TupleFilter#filter(TupleBatch)
+	 */
+	public int filter(TupleFilter f) {
+		return f.filter(this);
+	}
+
+	/**
+	 * Keeps only the first n rows of the selection vector selected, for filters
+	 * that narrow the selection in place.
+	 */
+	void setNumSelected(int n) {
+		selected = n;
+	}
+
+	/** Replaces the selection vector with the first n of the specified rows. */
+	void setSelection(int[] rows, int n) {
+		System.arraycopy(rows, 0, selection, 0, n);
+		selected = n;
+	}
+}
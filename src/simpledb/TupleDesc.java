@@ -9,6 +9,11 @@ public class TupleDesc {
 
 	private Type[] fieldTypes;
 	private String[] fieldNames;
+	/** Byte offset of each field within a serialized tuple. */
+	private int[] offsets;
+	private int size;
+	/** True if no field varies in length. */
+	private boolean fixedSize = true;
 
 	/**
 	 * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
@@ -59,6 +64,13 @@ public class TupleDesc {
 				this.fieldNames[i] = null; // Assign null if there is no name provided
 			}
 		}
+
+		this.offsets = new int[typeAr.length];
+		for (int i = 0; i < typeAr.length; i++) {
+			this.offsets[i] = size;
+			size += typeAr[i].getLen();
+			fixedSize &= !typeAr[i].isVariableLength();
+		}
 	}
 
 	/**
@@ -130,16 +142,39 @@ public class TupleDesc {
 
 	/**
 	 * @return The size (in bytes) of tuples corresponding to this TupleDesc. Note
-	 *         that tuples from a given TupleDesc are of a fixed size.
+	 *         that tuples from a given TupleDesc are of a fixed size, unless
+	 *         they have a variable-length field; then this is their minimum size.
 	 */
 	public int getSize() {
-		int size = 0;
-		for (Type type : fieldTypes) {
-			size += type.getLen();
-		}
 		return size;
 	}
 
+	/**
+	 * @return true if all tuples of this TupleDesc have the same size, because
+	 *         none of its fields varies in length.
+	 */
+	public boolean isFixedSize() {
+		return fixedSize;
+	}
+
+	/**
+	 * Gets the byte offset of the ith field within a tuple serialized according
+	 * to this TupleDesc. Fields have fixed sizes, so the offset is the same for
+	 * every tuple. Past a variable-length field, the offset varies from tuple to
+	 * tuple, and the one returned is that of a tuple whose variable-length
+	 * fields are empty.
+	 *
+	 * @param i The index of the field. It must be a valid index.
+	 * @return the offset of the ith field from the start of the tuple
+	 * @throws NoSuchElementException if i is not a valid field reference.
+	 */
+	public int getOffset(int i) throws NoSuchElementException {
+		if (i >= numFields()) {
+			throw new NoSuchElementException("Index out of range.");
+		}
+		return offsets[i];
+	}
+
 	/**
 	 * Compares the specified object with this TupleDesc for equality. Two
 	 * TupleDescs are considered equal if they are the same size and if the n-th
@@ -0,0 +1,23 @@
+package simpledb;
+
+/**
+ * A condition on tuples, which can be checked a tuple at a time or on the
+ * selected rows of a TupleBatch.
+ *
+ * @see Predicate
+ * @see CompoundPredicate
+ */
+public interface TupleFilter {
+	/**
+	 * @return true if the tuple satisfies this condition.
+	 */
+	public boolean filter(Tuple t);
+
+	/**
+	 * Narrows the selection of a batch down to the selected rows that satisfy
+	 * this condition, keeping them in order.
+	 *
+	 * @return the number of rows still selected
+	 */
+	public int filter(TupleBatch batch);
+}
@@ -0,0 +1,104 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Full 2Q eviction (Johnson and Shasha). New pages enter a FIFO probation queue
+ * A1in; when they are evicted from it, their ids are remembered in the ghost
+ * queue A1out. Only a page that is requested again while in A1out is promoted
+ * to the LRU main queue Am, so pages read once by a scan never displace the hot
+ * pages in Am.
+ */
+class TwoQueuePolicy implements BufferPool.EvictionPolicy {
+
+	private final int kIn;
+	private final int kOut;
+	private final LinkedHashSet<PageId> a1in = new LinkedHashSet<>();
+	private final LinkedHashSet<PageId> a1out = new LinkedHashSet<>();
+	private final LinkedHashMap<PageId, Boolean> am = new LinkedHashMap<>(16, 0.75f, true);
+	/** Whether the last victim came from Am. */
+	private boolean lastFromAm;
+
+	TwoQueuePolicy(int numPages) {
+		// the tuning suggested by the paper: A1in a quarter of the pool, A1out half
+		this.kIn = Math.max(1, numPages / 4);
+		this.kOut = Math.max(1, numPages / 2);
+	}
+
+	public void recordAccess(PageId pid) {
+		// pages in A1in are deliberately not promoted on a hit
+		am.get(pid);
+	}
+
+	public void recordInsert(PageId pid) {
+		if (a1in.contains(pid) || am.containsKey(pid)) {
+			recordAccess(pid);
+		} else if (a1out.remove(pid)) {
+			am.put(pid, Boolean.TRUE);
+		} else {
+			a1in.add(pid);
+		}
+	}
+
+	public void remove(PageId pid) {
+		a1in.remove(pid);
+		am.remove(pid);
+	}
+
+	public int temperature(PageId pid) {
+		return am.containsKey(pid) ? 2 : 1;
+	}
+
+	public PageId evict(java.util.function.Predicate<PageId> evictable) {
+		PageId victim = null;
+		if (a1in.size() > kIn || am.isEmpty()) {
+			victim = evictFrom(a1in.iterator(), evictable);
+			if (victim != null) {
+				a1out.add(victim);
+				if (a1out.size() > kOut) {
+					Iterator<PageId> it = a1out.iterator();
+					it.next();
+					it.remove();
+				}
+				lastFromAm = false;
+				return victim;
+			}
+		}
+		victim = evictFrom(am.keySet().iterator(), evictable);
+		lastFromAm = victim != null;
+		if (victim == null)
+			victim = evictFrom(a1in.iterator(), evictable);
+		return victim;
+	}
+
+	/**
+	 * Puts the page back at the head of the queue it was evicted from; a page of
+	 * A1in is not remembered in A1out, so it is not promoted when it returns.
+	 */
+	public void restore(PageId pid) {
+		if (lastFromAm) {
+			List<PageId> rest = new ArrayList<>(am.keySet());
+			am.clear();
+			am.put(pid, Boolean.TRUE);
+			for (PageId p : rest)
+				am.put(p, Boolean.TRUE);
+		} else {
+			a1out.remove(pid);
+			List<PageId> rest = new ArrayList<>(a1in);
+			a1in.clear();
+			a1in.add(pid);
+			a1in.addAll(rest);
+		}
+	}
+
+	private static PageId evictFrom(Iterator<PageId> it, java.util.function.Predicate<PageId> evictable) {
+		while (it.hasNext()) {
+			PageId pid = it.next();
+			if (evictable.test(pid)) {
+				it.remove();
+				return pid;
+			}
+		}
+		return null;
+	}
+}
@@ -2,6 +2,13 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 /**
  * Class representing a type in SimpleDB. Types are static objects defined by
@@ -23,6 +30,20 @@ public enum Type {
 			}
 		}
 
+		@Override
+		public Field parse(ByteBuffer buf, int offset) throws ParseException {
+			try {
+				return new IntField(buf.getInt(offset));
+			} catch (IndexOutOfBoundsException e) {
+				throw new ParseException("couldn't parse", offset);
+			}
+		}
+
+		@Override
+		public Field fromString(String s) {
+			return new IntField(Integer.parseInt(s.trim()));
+		}
+
 	},
 	STRING_TYPE() {
 		@Override
@@ -37,20 +58,313 @@ public enum Type {
 				byte bs[] = new byte[strLen];
 				dis.read(bs);
 				dis.skipBytes(STRING_LEN - strLen);
-				return new StringField(new String(bs), STRING_LEN);
+				return new StringField(new String(bs, StandardCharsets.UTF_8), STRING_LEN);
+			} catch (IOException e) {
+				throw new ParseException("couldn't parse", 0);
+			}
+		}
+
+		@Override
+		public Field parse(ByteBuffer buf, int offset) throws ParseException {
+			try {
+				int strLen = buf.getInt(offset);
+				if (strLen < 0 || strLen > STRING_LEN)
+					throw new ParseException("string length out of range", offset);
+				byte bs[] = new byte[strLen];
+				ByteBuffer src = buf.duplicate();
+				src.position(offset + 4);
+				src.get(bs);
+				return new StringField(new String(bs, StandardCharsets.UTF_8), STRING_LEN);
+			} catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+				throw new ParseException("couldn't parse", offset);
+			}
+		}
+
+		@Override
+		public Field fromString(String s) {
+			return new StringField(s.trim(), STRING_LEN);
+		}
+	},
+	/**
+	 * A string stored as UTF-8 with its actual length: a two-byte unsigned
+	 * length followed by that many bytes, at most {@link #VARCHAR_MAX_LEN}.
+	 * Tuples with a VARCHAR field vary in size and are stored in slotted pages.
+	 */
+	VARCHAR_TYPE() {
+		@Override
+		public int getLen() {
+			return 2;
+		}
+
+		@Override
+		public boolean isVariableLength() {
+			return true;
+		}
+
+		@Override
+		public int getLen(ByteBuffer buf, int offset) {
+			return 2 + (buf.getShort(offset) & 0xFFFF);
+		}
+
+		@Override
+		public Field parse(DataInputStream dis) throws ParseException {
+			try {
+				byte bs[] = new byte[dis.readUnsignedShort()];
+				dis.readFully(bs);
+				return new StringField(new String(bs, StandardCharsets.UTF_8));
 			} catch (IOException e) {
 				throw new ParseException("couldn't parse", 0);
 			}
 		}
+
+		@Override
+		public Field parse(ByteBuffer buf, int offset) throws ParseException {
+			try {
+				byte bs[] = new byte[buf.getShort(offset) & 0xFFFF];
+				ByteBuffer src = buf.duplicate();
+				src.position(offset + 2);
+				src.get(bs);
+				return new StringField(new String(bs, StandardCharsets.UTF_8));
+			} catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+				throw new ParseException("couldn't parse", offset);
+			}
+		}
+
+		@Override
+		public Field fromString(String s) {
+			return new StringField(s.trim());
+		}
+	},
+	/** A 64-bit integer. */
+	LONG_TYPE() {
+		@Override
+		public int getLen() {
+			return 8;
+		}
+
+		@Override
+		public Field parse(DataInputStream dis) throws ParseException {
+			try {
+				return new LongField(dis.readLong());
+			} catch (IOException e) {
+				throw new ParseException("couldn't parse", 0);
+			}
+		}
+
+		@Override
+		public Field parse(ByteBuffer buf, int offset) throws ParseException {
+			try {
+				return new LongField(buf.getLong(offset));
+			} catch (IndexOutOfBoundsException e) {
+				throw new ParseException("couldn't parse", offset);
+			}
+		}
+
+		@Override
+		public Field fromString(String s) {
+			return new LongField(Long.parseLong(s.trim()));
+		}
+	},
+	/** A double-precision floating point number. */
+	DOUBLE_TYPE() {
+		@Override
+		public int getLen() {
+			return 8;
+		}
+
+		@Override
+		public Field parse(DataInputStream dis) throws ParseException {
+			try {
+				return new DoubleField(dis.readDouble());
+			} catch (IOException e) {
+				throw new ParseException("couldn't parse", 0);
+			}
+		}
+
+		@Override
+		public Field parse(ByteBuffer buf, int offset) throws ParseException {
+			try {
+				return new DoubleField(buf.getDouble(offset));
+			} catch (IndexOutOfBoundsException e) {
+				throw new ParseException("couldn't parse", offset);
+			}
+		}
+
+		@Override
+		public Field fromString(String s) {
+			return new DoubleField(Double.parseDouble(s.trim()));
+		}
+	},
+	/**
+	 * A fixed-point decimal with {@link #DECIMAL_SCALE} digits after the point,
+	 * stored as a long scaled by 10^DECIMAL_SCALE.
+	 */
+	DECIMAL_TYPE() {
+		@Override
+		public int getLen() {
+			return 8;
+		}
+
+		@Override
+		public Field parse(DataInputStream dis) throws ParseException {
+			try {
+				return new DecimalField(dis.readLong());
+			} catch (IOException e) {
+				throw new ParseException("couldn't parse", 0);
+			}
+		}
+
+		@Override
+		public Field parse(ByteBuffer buf, int offset) throws ParseException {
+			try {
+				return new DecimalField(buf.getLong(offset));
+			} catch (IndexOutOfBoundsException e) {
+				throw new ParseException("couldn't parse", offset);
+			}
+		}
+
+		@Override
+		public Field fromString(String s) {
+			try {
+				return new DecimalField(new BigDecimal(s.trim()));
+			} catch (ArithmeticException e) {
+				throw new IllegalArgumentException("decimal out of range: " + s);
+			}
+		}
+	},
+	/** A date, stored as an int number of days since 1970-01-01. */
+	DATE_TYPE() {
+		@Override
+		public int getLen() {
+			return 4;
+		}
+
+		@Override
+		public Field parse(DataInputStream dis) throws ParseException {
+			try {
+				return new DateField(dis.readInt());
+			} catch (IOException e) {
+				throw new ParseException("couldn't parse", 0);
+			}
+		}
+
+		@Override
+		public Field parse(ByteBuffer buf, int offset) throws ParseException {
+			try {
+				return new DateField(buf.getInt(offset));
+			} catch (IndexOutOfBoundsException e) {
+				throw new ParseException("couldn't parse", offset);
+			}
+		}
+
+		/** Parses an ISO-8601 date such as 2024-02-29. */
+		@Override
+		public Field fromString(String s) {
+			try {
+				return new DateField(LocalDate.parse(s.trim()));
+			} catch (DateTimeException | ArithmeticException e) {
+				throw new IllegalArgumentException("bad date: " + s);
+			}
+		}
+	},
+	/**
+	 * A timestamp without a time zone, stored as a long number of microseconds
+	 * since 1970-01-01T00:00.
+	 */
+	TIMESTAMP_TYPE() {
+		@Override
+		public int getLen() {
+			return 8;
+		}
+
+		@Override
+		public Field parse(DataInputStream dis) throws ParseException {
+			try {
+				return new TimestampField(dis.readLong());
+			} catch (IOException e) {
+				throw new ParseException("couldn't parse", 0);
+			}
+		}
+
+		@Override
+		public Field parse(ByteBuffer buf, int offset) throws ParseException {
+			try {
+				return new TimestampField(buf.getLong(offset));
+			} catch (IndexOutOfBoundsException e) {
+				throw new ParseException("couldn't parse", offset);
+			}
+		}
+
+		/**
+		 * Parses an ISO-8601 timestamp such as 2024-02-29T13:45:30.25, or the
+		 * same with a space instead of the T.
+		 */
+		@Override
+		public Field fromString(String s) {
+			try {
+				return new TimestampField(LocalDateTime.parse(s.trim().replace(' ', 'T')));
+			} catch (DateTimeException | ArithmeticException e) {
+				throw new IllegalArgumentException("bad timestamp: " + s);
+			}
+		}
 	};
 
 	public static final int STRING_LEN = 128;
+	/** The maximum number of UTF-8 bytes of a VARCHAR_TYPE field. */
+	public static final int VARCHAR_MAX_LEN = 0xFFFF;
+	/** The number of digits after the point of a DECIMAL_TYPE field. */
+	public static final int DECIMAL_SCALE = 4;
 
 	/**
-	 * @return the number of bytes required to store a field of this type.
+	 * Returns the type of the specified name, as used in catalog files: int,
+	 * string, varchar, long, double, decimal, date or timestamp.
+	 *
+	 * @return the type, or null if there is no type of that name
+	 */
+	public static Type forName(String name) {
+		switch (name.trim().toLowerCase()) {
+		case "int":
+			return INT_TYPE;
+		case "string":
+			return STRING_TYPE;
+		case "varchar":
+			return VARCHAR_TYPE;
+		case "long":
+			return LONG_TYPE;
+		case "double":
+			return DOUBLE_TYPE;
+		case "decimal":
+			return DECIMAL_TYPE;
+		case "date":
+			return DATE_TYPE;
+		case "timestamp":
+			return TIMESTAMP_TYPE;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the number of bytes required to store a field of this type; for a
+	 *         variable-length type, the number of bytes of an empty value.
 	 */
 	public abstract int getLen();
 
+	/**
+	 * @return true if fields of this type vary in length, so that tuples that
+	 *         contain one do not have a fixed size.
+	 */
+	public boolean isVariableLength() {
+		return false;
+	}
+
+	/**
+	 * @return the number of bytes of the field of this type stored in the
+	 *         specified buffer at the specified index.
+	 */
+	public int getLen(ByteBuffer buf, int offset) {
+		return getLen();
+	}
+
 	/**
 	 * @return a Field object of the same type as this object that has contents read
 	 *         from the specified DataInputStream.
@@ -60,4 +374,23 @@ public enum Type {
 	 */
 	public abstract Field parse(DataInputStream dis) throws ParseException;
 
+	/**
+	 * @return a Field object of the same type as this object that has contents read
+	 *         from the specified buffer at the specified index. The position of
+	 *         the buffer is not changed.
+	 * @param buf    The buffer to read from
+	 * @param offset The index of the first byte of the field
+	 * @throws ParseException if the data in the buffer is not of the appropriate
+	 *                        type.
+	 */
+	public abstract Field parse(ByteBuffer buf, int offset) throws ParseException;
+
+	/**
+	 * @return a Field object of this type whose value is given as text, as in
+	 *         the input files of HeapFileEncoder. Surrounding whitespace is
+	 *         ignored.
+	 * @throws IllegalArgumentException if the text is not a value of this type.
+	 */
+	public abstract Field fromString(String s);
+
 }
@@ -0,0 +1,144 @@
+package simpledb;
+
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * WarmState saves the list of pages resident in a BufferPool, with the
+ * temperature the eviction policy gives each, so that a restarted database can
+ * read them back with {@link BufferPool#prewarm} instead of warming up through
+ * misses. The list is saved periodically rather than at shutdown, so that it
+ * also survives a crash.
+ * <p>
+ * A dump holds page ids only, never page contents; prewarming reads the
+ * current images from the table files, so an old dump costs hit ratio but is
+ * never wrong.
+ * <p>
+ * Dumps run on the thread of the BackgroundWriter. Like the writer, a WarmState
+ * only holds its pool weakly.
+ */
+class WarmState implements Runnable {
+	private static final int MAGIC = 0x53444257; // "SDBW"
+
+	/** A page that was resident, and how hot it was. */
+	static final class Entry {
+		final int tableId;
+		final int pageno;
+		final int temperature;
+
+		Entry(int tableId, int pageno, int temperature) {
+			this.tableId = tableId;
+			this.pageno = pageno;
+			this.temperature = temperature;
+		}
+	}
+
+	private final WeakReference<BufferPool> pool;
+	private File file;
+	private long interval;
+	private ScheduledFuture<?> task;
+	private long failures;
+	private Exception lastFailure;
+
+	WarmState(BufferPool pool) {
+		this.pool = new WeakReference<BufferPool>(pool);
+	}
+
+	/**
+	 * Dumps the pool to file every intervalMillis milliseconds from now on; 0
+	 * stops the dumps.
+	 */
+	synchronized void schedule(File file, long intervalMillis) {
+		if (task != null) {
+			task.cancel(false);
+			task = null;
+		}
+		this.file = file;
+		this.interval = intervalMillis;
+		if (intervalMillis > 0) {
+			task = BackgroundWriter.SCHEDULER.scheduleWithFixedDelay(this, intervalMillis, intervalMillis,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	synchronized long getInterval() {
+		return interval;
+	}
+
+	/** @return the number of periodic dumps that failed. */
+	synchronized long getFailures() {
+		return failures;
+	}
+
+	/** @return the exception of the last dump that failed, or null if none did. */
+	synchronized Exception getLastFailure() {
+		return lastFailure;
+	}
+
+	private synchronized void failed(Exception e) {
+		failures++;
+		lastFailure = e;
+	}
+
+	public void run() {
+		BufferPool bp = pool.get();
+		File f;
+		synchronized (this) {
+			f = file;
+		}
+		if (bp == null) {
+			schedule(null, 0);
+			return;
+		}
+		try {
+			bp.dumpWarmState(f);
+		} catch (IOException | RuntimeException e) {
+			// an exception would cancel the task; try again next round
+			failed(e);
+		}
+	}
+
+	/**
+	 * Writes a dump. The dump is written next to file and then moved over it, so
+	 * a crash while dumping leaves the previous dump intact.
+	 */
+	static void write(File file, List<Entry> entries) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(entries.size());
+			for (Entry e : entries) {
+				out.writeInt(e.tableId);
+				out.writeInt(e.pageno);
+				out.writeInt(e.temperature);
+			}
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Reads a dump.
+	 *
+	 * @throws IOException if the file is not a dump
+	 */
+	static List<Entry> read(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + " is not a buffer pool dump");
+			int n = in.readInt();
+			List<Entry> entries = new ArrayList<>(n);
+			for (int i = 0; i < n; i++)
+				entries.add(new Entry(in.readInt(), in.readInt(), in.readInt()));
+			return entries;
+		}
+	}
+}
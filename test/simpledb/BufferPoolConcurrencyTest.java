@@ -0,0 +1,123 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolConcurrencyTest extends SimpleDbTestBase {
+	private static final int PAGES = 20;
+
+	/** Counts page reads, and makes each one slow enough to overlap. */
+	private static class SlowHeapFile extends HeapFile {
+		final AtomicInteger reads = new AtomicInteger();
+		volatile long delayMillis = 0;
+
+		SlowHeapFile(File f, TupleDesc td) {
+			super(f, td);
+		}
+
+		@Override
+		public Page readPage(PageId pid) {
+			reads.incrementAndGet();
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			return super.readPage(pid);
+		}
+	}
+
+	private SlowHeapFile table;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * PAGES, 1000, null, null);
+		table = new SlowHeapFile(f, Utility.getTupleDesc(1));
+		Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+		Database.getBufferPool().setReadAheadWindow(0);
+	}
+
+	/**
+	 * Runs body on the given number of threads at once, each with its own
+	 * transaction, and rethrows the first failure.
+	 */
+	private void runConcurrently(int threads, final Callable<Void> body) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int i = 0; i < threads; i++)
+				results.add(pool.submit(body));
+			for (Future<Void> result : results)
+				result.get(60, TimeUnit.SECONDS);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Transactions missing on the same page at the same time share one read.
+	 */
+	@Test
+	public void concurrentMissesReadOnce() throws Exception {
+		table.delayMillis = 100;
+		final HeapPageId pid = new HeapPageId(table.getId(), 3);
+		final Set<Page> seen = Collections
+				.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Page, Boolean>()));
+		runConcurrently(8, new Callable<Void>() {
+			public Void call() throws Exception {
+				TransactionId tid = new TransactionId();
+				seen.add(Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY));
+				Database.getBufferPool().transactionComplete(tid);
+				return null;
+			}
+		});
+		assertEquals(1, table.reads.get());
+		assertEquals(1, seen.size());
+	}
+
+	/**
+	 * Hits from up to 64 threads, while the pool is too small to hold the table
+	 * and keeps evicting, always return the requested page.
+	 */
+	@Test
+	public void concurrentHitsAndMisses() throws Exception {
+		Database.resetBufferPool(PAGES / 2);
+		for (int threads : new int[] { 1, 4, 16, 64 }) {
+			runConcurrently(threads, new Callable<Void>() {
+				public Void call() throws Exception {
+					Random random = new Random();
+					TransactionId tid = new TransactionId();
+					for (int i = 0; i < 500; i++) {
+						// mostly the first few pages, so that most requests hit
+						int pageno = random.nextInt(4) == 0 ? random.nextInt(PAGES) : random.nextInt(3);
+						HeapPageId pid = new HeapPageId(table.getId(), pageno);
+						Page page = Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+						assertEquals(pid, page.getId());
+					}
+					Database.getBufferPool().transactionComplete(tid);
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(BufferPoolConcurrencyTest.class);
+	}
+}
@@ -0,0 +1,140 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.BufferPoolMetrics.Op;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolMetricsTest extends SimpleDbTestBase {
+	private HeapFile table;
+	private BufferPool bp;
+	private BufferPoolMetrics metrics;
+
+	/**
+	 * Set up a table of six pages and a pool of four.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		table = SystemTestUtil.createRandomHeapFile(1, 992 * 6, null, null);
+		bp = Database.resetBufferPool(4);
+		bp.setReadAheadWindow(0);
+		bp.setBackgroundWriterInterval(0);
+		metrics = bp.getMetrics();
+	}
+
+	private void read(int... pagenos) throws Exception {
+		TransactionId tid = new TransactionId();
+		for (int pageno : pagenos)
+			bp.getPage(tid, new HeapPageId(table.getId(), pageno), Permissions.READ_ONLY);
+		bp.transactionComplete(tid);
+	}
+
+	/**
+	 * Hits, misses, reads and evictions are counted, and their latencies
+	 * recorded.
+	 */
+	@Test
+	public void counters() throws Exception {
+		read(0, 1, 2, 3, 4, 5, 5);
+		assertEquals(1, metrics.getHits());
+		assertEquals(6, metrics.getMisses());
+		assertEquals(6, metrics.getPageReads());
+		assertEquals(6, metrics.getPageReads(table.getId()));
+		assertEquals(2, metrics.getEvictions());
+		assertEquals(0, metrics.getDirtyEvictions());
+		assertEquals(7, metrics.getLatency(Op.GET_PAGE).getCount());
+		assertEquals(6, metrics.getLatency(Op.READ_PAGE).getCount());
+		assertEquals(2, metrics.getLatency(Op.EVICT_PAGE).getCount());
+		assertEquals(1.0 / 7, bp.getHitRatio(), 1e-9);
+
+		metrics.reset();
+		assertEquals(0, metrics.getMisses());
+		assertEquals(0, metrics.getLatency(Op.GET_PAGE).getCount());
+	}
+
+	/**
+	 * Dirty pages are counted until they are written.
+	 */
+	@Test
+	public void writes() throws Exception {
+		TransactionId tid = new TransactionId();
+		bp.insertTuple(tid, table.getId(), Utility.getHeapTuple(1, 1));
+		bp.transactionComplete(tid);
+		assertEquals(1, bp.getDirtyPages());
+
+		bp.flushAllPages();
+		assertEquals(0, bp.getDirtyPages());
+		assertEquals(1, metrics.getPageWrites());
+		assertEquals(1, metrics.getPageWrites(table.getId()));
+		assertEquals(1, metrics.getLatency(Op.WRITE_PAGE).getCount());
+	}
+
+	/**
+	 * Only the total hits and misses are recorded while metrics are disabled.
+	 */
+	@Test
+	public void disabled() throws Exception {
+		bp.setMetricsEnabled(false);
+		read(0, 1, 2, 3, 4, 5, 5);
+		assertEquals(1, metrics.getHits());
+		assertEquals(6, metrics.getMisses());
+		assertEquals(0, bp.getHitCount(table.getId()));
+		assertEquals(0, metrics.getEvictions());
+		assertEquals(0, metrics.getPageReads());
+		assertEquals(0, metrics.getLatency(Op.GET_PAGE).getCount());
+
+		bp.setMetricsEnabled(true);
+		read(5);
+		assertEquals(2, metrics.getHits());
+		assertEquals(1, metrics.getLatency(Op.GET_PAGE).getCount());
+	}
+
+	/**
+	 * The metrics of the current pool are visible through JMX.
+	 */
+	@Test
+	public void jmx() throws Exception {
+		read(0, 1, 1);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("simpledb:type=BufferPool");
+		assertEquals(2L, server.getAttribute(name, "Misses"));
+		assertEquals(1L, server.getAttribute(name, "Hits"));
+		assertEquals(2, server.getAttribute(name, "ResidentPages"));
+		assertEquals(4L * BufferPool.PAGE_SIZE, server.getAttribute(name, "CapacityBytes"));
+	}
+
+	/**
+	 * Percentiles are bounded by the power of two above them.
+	 */
+	@Test
+	public void histogram() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.getPercentileNanos(0.5));
+		for (int i = 1; i <= 1000; i++)
+			h.record(i);
+		assertEquals(1000, h.getCount());
+		assertEquals(500.5, h.getMeanNanos(), 1e-9);
+		assertEquals(511, h.getPercentileNanos(0.5));
+		assertEquals(1023, h.getPercentileNanos(0.99));
+		assertEquals(1, h.getPercentileNanos(0.0));
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(BufferPoolMetricsTest.class);
+	}
+}
@@ -0,0 +1,204 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolPinTest extends SimpleDbTestBase {
+	private static final int PAGES = 6;
+
+	private HeapFile table;
+	private BufferPool bp;
+	private TransactionId tid;
+
+	/**
+	 * Set up a table of six pages and a pool of two.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		table = SystemTestUtil.createRandomHeapFile(1, 992 * PAGES, null, null);
+		bp = Database.resetBufferPool(2);
+		bp.setReadAheadWindow(0);
+		tid = new TransactionId();
+	}
+
+	private HeapPageId pid(int pageno) {
+		return new HeapPageId(table.getId(), pageno);
+	}
+
+	/**
+	 * A pinned page stays resident while every other page cycles through the
+	 * pool, and becomes evictable once unpinned.
+	 */
+	@Test
+	public void pinnedPageStaysResident() throws Exception {
+		Page pinned = bp.pinPage(tid, pid(0), Permissions.READ_ONLY);
+		assertEquals(1, bp.getPinCount(pid(0)));
+		for (int i = 1; i < PAGES; i++)
+			bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+		assertSame(pinned, bp.getPage(tid, pid(0), Permissions.READ_ONLY));
+
+		bp.unpinPage(tid, pid(0));
+		assertEquals(0, bp.getPinCount(pid(0)));
+		for (int i = 1; i < PAGES; i++)
+			bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+		assertNotSame(pinned, bp.getPage(tid, pid(0), Permissions.READ_ONLY));
+		bp.transactionComplete(tid);
+	}
+
+	/**
+	 * A miss fails when every frame is pinned.
+	 */
+	@Test
+	public void allPinned() throws Exception {
+		bp.pinPage(tid, pid(0), Permissions.READ_ONLY);
+		bp.pinPage(tid, pid(1), Permissions.READ_ONLY);
+		try {
+			bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+			fail("expected DbException");
+		} catch (DbException e) {
+		}
+		bp.unpinPage(tid, pid(1));
+		bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+		bp.unpinPage(tid, pid(0));
+		bp.transactionComplete(tid);
+	}
+
+	/**
+	 * A scan pins the page it is reading, and only that one.
+	 */
+	@Test
+	public void scanPinsCurrentPage() throws Exception {
+		DbFileIterator it = table.iterator(tid);
+		it.open();
+		it.next();
+		assertEquals(1, bp.getPinCount(pid(0)));
+		for (int i = 0; i < 992; i++)
+			it.next();
+		assertEquals(0, bp.getPinCount(pid(0)));
+		assertEquals(1, bp.getPinCount(pid(1)));
+		it.close();
+		assertEquals(0, bp.getPinCount(pid(1)));
+
+		// a scan that runs to the end leaves nothing pinned
+		it.open();
+		while (it.hasNext())
+			it.next();
+		for (int i = 0; i < PAGES; i++)
+			assertEquals(0, bp.getPinCount(pid(i)));
+		bp.transactionComplete(tid);
+	}
+
+	/**
+	 * A dirty victim that is pinned while it is being flushed stays resident,
+	 * and another page is evicted instead.
+	 */
+	@Test
+	public void pinnedDuringFlush() throws Exception {
+		boolean[] pinned = new boolean[1];
+		HeapFile pinning = new HeapFile(table.getFile(), table.getTupleDesc()) {
+			public void writePage(Page page) throws IOException {
+				if (!pinned[0]) {
+					pinned[0] = true;
+					try {
+						bp.pinPage(tid, page.getId(), Permissions.READ_WRITE);
+					} catch (DbException | TransactionAbortedException e) {
+						throw new IOException(e);
+					}
+				}
+				super.writePage(page);
+			}
+		};
+		Database.getCatalog().addTable(pinning, SystemTestUtil.getUUID());
+		Page p0 = bp.getPage(tid, pid(0), Permissions.READ_WRITE);
+		Page p1 = bp.getPage(tid, pid(1), Permissions.READ_WRITE);
+		p0.markDirty(true, tid);
+		p1.markDirty(true, tid);
+
+		bp.getPage(tid, pid(2), Permissions.READ_WRITE);
+		assertTrue(pinned[0]);
+		PageId kept = bp.getPinCount(pid(0)) == 1 ? pid(0) : pid(1);
+		assertEquals(1, bp.getPinCount(kept));
+		assertSame(kept.equals(pid(0)) ? p0 : p1, bp.getPage(tid, kept, Permissions.READ_WRITE));
+		bp.unpinPage(tid, kept);
+		bp.transactionComplete(tid);
+	}
+
+	/**
+	 * Pages pinned by several threads while the others cause evictions stay
+	 * resident, as the same object, until they are unpinned.
+	 */
+	@Test
+	public void concurrentPins() throws Exception {
+		bp = Database.resetBufferPool(4);
+		bp.setReadAheadWindow(0);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[3];
+		for (int t = 0; t < threads.length; t++) {
+			int seed = t;
+			threads[t] = new Thread(() -> {
+				Random random = new Random(seed);
+				TransactionId reader = new TransactionId();
+				try {
+					for (int i = 0; i < 2000; i++) {
+						PageId pid = pid(random.nextInt(PAGES));
+						Page pinned = bp.pinPage(reader, pid, Permissions.READ_ONLY);
+						Thread.yield();
+						assertSame(pinned, bp.getPage(reader, pid, Permissions.READ_ONLY));
+						bp.unpinPage(reader, pid);
+					}
+					bp.transactionComplete(reader);
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		if (failure.get() != null)
+			throw new AssertionError(failure.get());
+		for (int i = 0; i < PAGES; i++)
+			assertEquals(0, bp.getPinCount(pid(i)));
+	}
+
+	/**
+	 * Pins of an iterator that is never closed are released when its
+	 * transaction completes, and a late unpin does not release anyone else's.
+	 */
+	@Test
+	public void transactionCompleteReleasesPins() throws Exception {
+		DbFileIterator it = table.iterator(tid);
+		it.open();
+		it.next();
+		TransactionId other = new TransactionId();
+		bp.pinPage(other, pid(0), Permissions.READ_ONLY);
+		assertEquals(2, bp.getPinCount(pid(0)));
+
+		bp.transactionComplete(tid, false);
+		assertEquals(1, bp.getPinCount(pid(0)));
+		it.close();
+		assertEquals(1, bp.getPinCount(pid(0)));
+		bp.unpinPage(other, pid(0));
+		assertEquals(0, bp.getPinCount(pid(0)));
+		bp.transactionComplete(other);
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(BufferPoolPinTest.class);
+	}
+}
@@ -0,0 +1,101 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolQuotaTest extends SimpleDbTestBase {
+	private static final int PAGES = 20;
+
+	private HeapFile hot;
+	private HeapFile batch;
+	private BufferPool bp;
+
+	/**
+	 * Set up two tables of twenty pages and a pool of eight.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		hot = SystemTestUtil.createRandomHeapFile(1, 992 * PAGES, null, null);
+		batch = SystemTestUtil.createRandomHeapFile(1, 992 * PAGES, null, null);
+		bp = Database.resetBufferPool(8);
+		bp.setReadAheadWindow(0);
+	}
+
+	private void read(HeapFile table, int from, int to) throws Exception {
+		TransactionId tid = new TransactionId();
+		for (int pageno = from; pageno < to; pageno++)
+			bp.getPage(tid, new HeapPageId(table.getId(), pageno), Permissions.READ_ONLY);
+		bp.transactionComplete(tid);
+	}
+
+	/**
+	 * Pages of a low priority table go before those of a high priority one, even
+	 * when they are more recent.
+	 */
+	@Test
+	public void priority() throws Exception {
+		Database.getCatalog().setPoolPriority(hot.getId(), BufferPool.Priority.HIGH);
+		Database.getCatalog().setPoolPriority(batch.getId(), BufferPool.Priority.LOW);
+		read(hot, 0, 4);
+		read(batch, 0, PAGES);
+		assertEquals(4, bp.getResidentPages(hot.getId()));
+		assertEquals(4, bp.getResidentPages(batch.getId()));
+
+		read(hot, 0, 4);
+		assertEquals(4, bp.getMissCount(hot.getId()));
+		assertEquals(4, bp.getHitCount(hot.getId()));
+		assertEquals(0.5, bp.getHitRatio(hot.getId()), 0.0);
+		assertEquals(0.0, bp.getHitRatio(batch.getId()), 0.0);
+	}
+
+	/**
+	 * A table with a maximum share cycles through its share of the pool and
+	 * leaves the rest alone.
+	 */
+	@Test
+	public void maxShare() throws Exception {
+		Database.getCatalog().setPoolQuota(batch.getId(), 0, 0.25);
+		read(hot, 0, 4);
+		read(batch, 0, PAGES);
+		assertEquals(2, bp.getResidentPages(batch.getId()));
+		assertEquals(2L * BufferPool.PAGE_SIZE, bp.getResidentBytes(batch.getId()));
+		assertEquals(4, bp.getResidentPages(hot.getId()));
+	}
+
+	/**
+	 * A table keeps its reserved share of the pool while others cycle through
+	 * the rest.
+	 */
+	@Test
+	public void minShare() throws Exception {
+		Database.getCatalog().setPoolQuota(hot.getId(), 0.5, 1);
+		read(hot, 0, 6);
+		read(batch, 0, PAGES);
+		assertEquals(4, bp.getResidentPages(hot.getId()));
+		assertEquals(4, bp.getResidentPages(batch.getId()));
+	}
+
+	/**
+	 * Quotas must be fractions of the pool, the minimum no larger than the
+	 * maximum.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidQuota() throws Exception {
+		Database.getCatalog().setPoolQuota(hot.getId(), 0.6, 0.5);
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(BufferPoolQuotaTest.class);
+	}
+}
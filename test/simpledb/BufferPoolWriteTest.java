@@ -0,0 +1,159 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BufferPoolWriteTest extends SimpleDbTestBase {
+	private HeapFile hf;
+	private HeapPageId p0;
+	private BufferPool bp;
+	private TransactionId tid;
+
+	/**
+	 * Set up a one-page table and a pool without a background writer, so that
+	 * tests decide when pages are written.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		hf = SystemTestUtil.createRandomHeapFile(2, 20, null, null);
+		p0 = new HeapPageId(hf.getId(), 0);
+		bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+		bp.setBackgroundWriterInterval(0);
+		tid = new TransactionId();
+	}
+
+	private int emptySlotsOnDisk() {
+		return ((HeapPage) hf.readPage(p0)).getNumEmptySlots();
+	}
+
+	/**
+	 * A transaction may dirty more pages than the pool holds; the pages are
+	 * stolen as the pool fills up.
+	 */
+	@Test
+	public void largeTransaction() throws Exception {
+		bp = Database.resetBufferPool(4);
+		bp.setBackgroundWriterInterval(0);
+		ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+		HeapFile empty = SystemTestUtil.createRandomHeapFile(1, 0, null, tuples);
+		for (int i = 0; i < 992 * 8; i++) {
+			bp.insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 1));
+			tuples.add(SystemTestUtil.tupleToList(Utility.getHeapTuple(i, 1)));
+		}
+		bp.transactionComplete(tid);
+		assertEquals(8, empty.numPages());
+		SystemTestUtil.matchTuples(empty, tuples);
+	}
+
+	/**
+	 * A commit does not write its pages, but recovery installs them.
+	 */
+	@Test
+	public void noForceCommit() throws Exception {
+		int empty = emptySlotsOnDisk();
+		bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { 1, 2 }));
+		bp.transactionComplete(tid);
+		assertEquals(empty, emptySlotsOnDisk());
+
+		// crash, then recover
+		Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+		Database.getLogFile().recover();
+		assertEquals(empty - 1, emptySlotsOnDisk());
+	}
+
+	/**
+	 * An abort restores pages that were written back before it from the log.
+	 */
+	@Test
+	public void abortAfterSteal() throws Exception {
+		byte[] original = hf.readPage(p0).getPageData();
+		bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { 1, 2 }));
+		bp.flushPages(tid);
+		assertFalse(Arrays.equals(original, hf.readPage(p0).getPageData()));
+
+		bp.transactionComplete(tid, false);
+		assertArrayEquals(original, hf.readPage(p0).getPageData());
+		TransactionId reader = new TransactionId();
+		assertArrayEquals(original, bp.getPage(reader, p0, Permissions.READ_ONLY).getPageData());
+		bp.transactionComplete(reader);
+	}
+
+	/**
+	 * Recovery removes the changes of a transaction that did not commit.
+	 */
+	@Test
+	public void recoverUncommitted() throws Exception {
+		byte[] original = hf.readPage(p0).getPageData();
+		bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { 1, 2 }));
+		bp.flushPages(tid);
+
+		Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+		Database.getLogFile().recover();
+		assertArrayEquals(original, hf.readPage(p0).getPageData());
+	}
+
+	/**
+	 * The background writer writes committed pages, and leaves pages of running
+	 * transactions alone.
+	 */
+	@Test
+	public void writeBehind() throws Exception {
+		int empty = emptySlotsOnDisk();
+		bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { 1, 2 }));
+		assertEquals(0, bp.writeBehind(10));
+		assertEquals(empty, emptySlotsOnDisk());
+
+		bp.transactionComplete(tid);
+		assertEquals(1, bp.writeBehind(10));
+		assertEquals(empty - 1, emptySlotsOnDisk());
+		assertEquals(0, bp.writeBehind(10));
+	}
+
+	/**
+	 * A round of the background writer that cannot write a page is counted, and
+	 * leaves the page dirty.
+	 */
+	@Test
+	public void writeBehindFailure() throws Exception {
+		HeapFile failing = new HeapFile(hf.getFile(), hf.getTupleDesc()) {
+			public void writePage(Page page) throws IOException {
+				throw new IOException("disk full");
+			}
+		};
+		String name = SystemTestUtil.getUUID();
+		Database.getCatalog().addTable(failing, name);
+		bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { 1, 2 }));
+		bp.transactionComplete(tid);
+		assertEquals(0, bp.getBackgroundWriterFailures());
+		assertNull(bp.getLastBackgroundWriterFailure());
+
+		bp.setBackgroundWriterInterval(5);
+		for (int i = 0; i < 500 && bp.getBackgroundWriterFailures() == 0; i++)
+			Thread.sleep(10);
+		bp.setBackgroundWriterInterval(0);
+		assertTrue(bp.getBackgroundWriterFailures() > 0);
+		assertEquals("disk full", bp.getLastBackgroundWriterFailure().getMessage());
+		assertEquals(1, bp.getDirtyPages());
+
+		Database.getCatalog().addTable(hf, name);
+		assertEquals(1, bp.writeBehind(10));
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(BufferPoolWriteTest.class);
+	}
+}
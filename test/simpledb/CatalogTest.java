@@ -2,6 +2,8 @@ package simpledb;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.util.NoSuchElementException;
 
 import junit.framework.Assert;
@@ -72,6 +74,32 @@ public class CatalogTest extends SimpleDbTestBase {
 		assertEquals(-1, f.getId());
 	}
 
+	/**
+	 * Unit test for Catalog.getPageSize() and the pool settings of tables loaded
+	 * from a schema file
+	 */
+	@Test
+	public void loadSchemaOptions() throws Exception {
+		File schema = File.createTempFile("catalog", ".txt");
+		schema.deleteOnExit();
+		String small = new File(schema.getParent(), SystemTestUtil.getUUID()).getPath();
+		String large = new File(schema.getParent(), SystemTestUtil.getUUID()).getPath();
+		FileWriter out = new FileWriter(schema);
+		out.write(small + " (a int, b int)\n");
+		out.write(large + " (a int pk, b string) pagesize 65536 priority low maxshare 0.5\n");
+		out.close();
+
+		Database.getCatalog().loadSchema(schema.getPath());
+		assertEquals(BufferPool.PAGE_SIZE,
+				Database.getCatalog().getPageSize(Database.getCatalog().getTableId(small)));
+		assertEquals(65536, Database.getCatalog().getPageSize(Database.getCatalog().getTableId(large)));
+		assertEquals(4096, Database.getCatalog().getPageSize(-1));
+		int largeId = Database.getCatalog().getTableId(large);
+		assertEquals(BufferPool.Priority.LOW, Database.getCatalog().getPoolPriority(largeId));
+		assertEquals(0.0, Database.getCatalog().getMinPoolShare(largeId), 0.0);
+		assertEquals(0.5, Database.getCatalog().getMaxPoolShare(largeId), 0.0);
+	}
+
 	/**
 	 * JUnit suite target
 	 */
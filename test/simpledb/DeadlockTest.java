@@ -0,0 +1,176 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class DeadlockTest extends SimpleDbTestBase {
+	private static final int TIMEOUT = 100;
+
+	private PageId p0, p1, p2;
+	private TransactionId tid1, tid2;
+	private BufferPool bp;
+	private LockManager lm;
+
+	/**
+	 * Set up a three-page table for each unit test. tid1 is older than tid2.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 1500, null, null);
+		p0 = new HeapPageId(hf.getId(), 0);
+		p1 = new HeapPageId(hf.getId(), 1);
+		p2 = new HeapPageId(hf.getId(), 2);
+		tid1 = new TransactionId();
+		tid2 = new TransactionId();
+		bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+		lm = bp.getLockManager();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		bp.transactionComplete(tid1);
+		bp.transactionComplete(tid2);
+	}
+
+	/**
+	 * Starts a LockGrabber for the given request and waits TIMEOUT milliseconds
+	 * for it to either acquire the lock or fail.
+	 */
+	private TestUtil.LockGrabber startGrabber(TransactionId tid, PageId pid, Permissions perm) throws Exception {
+		TestUtil.LockGrabber t = new TestUtil.LockGrabber(tid, pid, perm);
+		t.setDaemon(true);
+		t.start();
+		Thread.sleep(TIMEOUT);
+		return t;
+	}
+
+	/**
+	 * A cycle closed by the youngest transaction aborts the requester itself.
+	 */
+	@Test
+	public void detectAbortsYoungestRequester() throws Exception {
+		bp.getPage(tid1, p0, Permissions.READ_WRITE);
+		bp.getPage(tid2, p1, Permissions.READ_WRITE);
+
+		TestUtil.LockGrabber t1 = startGrabber(tid1, p1, Permissions.READ_WRITE);
+		assertFalse(t1.acquired());
+		TestUtil.LockGrabber t2 = startGrabber(tid2, p0, Permissions.READ_WRITE);
+
+		assertTrue(t2.getError() instanceof TransactionAbortedException);
+		t1.join(TIMEOUT * 10);
+		assertTrue(t1.acquired());
+		assertNull(t1.getError());
+		assertEquals(1, lm.getDeadlockCount());
+		assertEquals(1, lm.getAbortCount());
+	}
+
+	/**
+	 * A cycle closed by an older transaction wakes up and aborts the blocked
+	 * younger one.
+	 */
+	@Test
+	public void detectAbortsYoungestWaiter() throws Exception {
+		bp.getPage(tid1, p0, Permissions.READ_WRITE);
+		bp.getPage(tid2, p1, Permissions.READ_WRITE);
+
+		TestUtil.LockGrabber t2 = startGrabber(tid2, p0, Permissions.READ_WRITE);
+		assertFalse(t2.acquired());
+		TestUtil.LockGrabber t1 = startGrabber(tid1, p1, Permissions.READ_WRITE);
+
+		assertTrue(t2.getError() instanceof TransactionAbortedException);
+		t1.join(TIMEOUT * 10);
+		assertTrue(t1.acquired());
+		assertEquals(1, lm.getDeadlockCount());
+	}
+
+	/**
+	 * A deadlock between two shared holders that both try to upgrade.
+	 */
+	@Test
+	public void detectUpgradeDeadlock() throws Exception {
+		bp.getPage(tid1, p0, Permissions.READ_ONLY);
+		bp.getPage(tid2, p0, Permissions.READ_ONLY);
+
+		TestUtil.LockGrabber t1 = startGrabber(tid1, p0, Permissions.READ_WRITE);
+		assertFalse(t1.acquired());
+		TestUtil.LockGrabber t2 = startGrabber(tid2, p0, Permissions.READ_WRITE);
+
+		assertTrue(t2.getError() instanceof TransactionAbortedException);
+		t1.join(TIMEOUT * 10);
+		assertTrue(t1.acquired());
+		assertTrue(lm.holdsExclusive(tid1, p0));
+	}
+
+	/**
+	 * FEWEST_LOCKS picks the transaction holding fewer locks, even if it is older.
+	 */
+	@Test
+	public void detectAbortsCheapestVictim() throws Exception {
+		lm.setVictimPolicy(LockManager.VictimPolicy.FEWEST_LOCKS);
+		bp.getPage(tid1, p0, Permissions.READ_WRITE);
+		bp.getPage(tid2, p1, Permissions.READ_WRITE);
+		bp.getPage(tid2, p2, Permissions.READ_WRITE);
+
+		TestUtil.LockGrabber t2 = startGrabber(tid2, p0, Permissions.READ_WRITE);
+		TestUtil.LockGrabber t1 = startGrabber(tid1, p1, Permissions.READ_WRITE);
+
+		assertTrue(t1.getError() instanceof TransactionAbortedException);
+		t2.join(TIMEOUT * 10);
+		assertTrue(t2.acquired());
+	}
+
+	/**
+	 * Under WAIT_DIE a younger requester aborts and an older one waits.
+	 */
+	@Test
+	public void waitDie() throws Exception {
+		lm.setDeadlockPolicy(LockManager.DeadlockPolicy.WAIT_DIE);
+		bp.getPage(tid1, p0, Permissions.READ_WRITE);
+		bp.getPage(tid2, p1, Permissions.READ_WRITE);
+
+		TestUtil.LockGrabber t2 = startGrabber(tid2, p0, Permissions.READ_ONLY);
+		assertTrue(t2.getError() instanceof TransactionAbortedException);
+
+		TestUtil.LockGrabber t1 = startGrabber(tid1, p2, Permissions.READ_WRITE);
+		assertTrue(t1.acquired());
+		assertEquals(0, lm.getDeadlockCount());
+		assertEquals(1, lm.getAbortCount());
+	}
+
+	/**
+	 * Under WOUND_WAIT an older requester aborts the younger holder, which finds
+	 * out on its next lock request.
+	 */
+	@Test
+	public void woundWait() throws Exception {
+		lm.setDeadlockPolicy(LockManager.DeadlockPolicy.WOUND_WAIT);
+		bp.getPage(tid2, p0, Permissions.READ_WRITE);
+
+		TestUtil.LockGrabber t1 = startGrabber(tid1, p0, Permissions.READ_WRITE);
+		assertFalse(t1.acquired());
+
+		TestUtil.LockGrabber t2 = startGrabber(tid2, p1, Permissions.READ_ONLY);
+		assertTrue(t2.getError() instanceof TransactionAbortedException);
+		t1.join(TIMEOUT * 10);
+		assertTrue(t1.acquired());
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(DeadlockTest.class);
+	}
+}
@@ -0,0 +1,163 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+	private static final int CAPACITY = 40;
+
+	/**
+	 * Replays a page-access trace against a cache of the given capacity managed
+	 * by policy, the way BufferPool drives it.
+	 *
+	 * @return the hit ratio over the whole trace
+	 */
+	private static double replay(BufferPool.EvictionPolicy policy, int capacity, List<PageId> trace) {
+		Set<PageId> resident = new HashSet<>();
+		int hits = 0;
+		for (PageId pid : trace) {
+			if (resident.contains(pid)) {
+				hits++;
+				policy.recordAccess(pid);
+				continue;
+			}
+			if (resident.size() >= capacity) {
+				PageId victim = policy.evict(p -> true);
+				assertTrue("evicted a page that is not resident", resident.remove(victim));
+			}
+			resident.add(pid);
+			policy.recordInsert(pid);
+		}
+		return (double) hits / trace.size();
+	}
+
+	private static Map<BufferPool.Eviction, Double> compare(List<PageId> trace) {
+		Map<BufferPool.Eviction, Double> ratios = new EnumMap<>(BufferPool.Eviction.class);
+		for (BufferPool.Eviction e : BufferPool.Eviction.values()) {
+			ratios.put(e, replay(e.create(CAPACITY), CAPACITY, trace));
+			Debug.log("%s hit ratio: %.3f", e, ratios.get(e));
+		}
+		return ratios;
+	}
+
+	/**
+	 * OLTP point reads on a hot set of 20 pages running concurrently with
+	 * repeated sequential scans of a table larger than the pool.
+	 */
+	private static List<PageId> scanPollutedTrace() {
+		Random r = new Random(42);
+		List<PageId> trace = new ArrayList<>();
+		for (int round = 0; round < 50; round++) {
+			for (int i = 0; i < 100; i++) {
+				trace.add(new HeapPageId(2, i));
+				trace.add(new HeapPageId(1, r.nextInt(20)));
+			}
+		}
+		return trace;
+	}
+
+	/**
+	 * Point reads where 80% of the accesses go to 20% of 200 pages.
+	 */
+	private static List<PageId> skewedTrace() {
+		Random r = new Random(42);
+		List<PageId> trace = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			int page = r.nextInt(10) < 8 ? r.nextInt(40) : 40 + r.nextInt(160);
+			trace.add(new HeapPageId(1, page));
+		}
+		return trace;
+	}
+
+	/**
+	 * Scan-resistant policies keep the hot set across scans; LRU does not.
+	 */
+	@Test
+	public void scanResistance() {
+		Map<BufferPool.Eviction, Double> ratios = compare(scanPollutedTrace());
+		double lru = ratios.get(BufferPool.Eviction.LRU);
+		assertTrue(ratios.get(BufferPool.Eviction.LRU_K) > lru);
+		assertTrue(ratios.get(BufferPool.Eviction.TWO_Q) > lru);
+		assertTrue(ratios.get(BufferPool.Eviction.ARC) > lru);
+	}
+
+	/**
+	 * Every policy captures most of a skewed working set.
+	 */
+	@Test
+	public void skewedWorkload() {
+		for (double ratio : compare(skewedTrace()).values())
+			assertTrue(ratio > 0.5);
+	}
+
+	/**
+	 * Pages rejected by the evictable filter are never chosen.
+	 */
+	@Test
+	public void respectsEvictableFilter() {
+		PageId pinned = new HeapPageId(1, 0);
+		for (BufferPool.Eviction e : BufferPool.Eviction.values()) {
+			BufferPool.EvictionPolicy policy = e.create(4);
+			for (int i = 0; i < 4; i++)
+				policy.recordInsert(new HeapPageId(1, i));
+			for (int i = 1; i < 4; i++)
+				assertFalse(pinned.equals(policy.evict(p -> !p.equals(pinned))));
+			assertNull(policy.evict(p -> !p.equals(pinned)));
+			assertEquals(pinned, policy.evict(p -> true));
+			assertNull(policy.evict(p -> true));
+		}
+	}
+
+	/**
+	 * A restored victim is the next victim again, and restoring it counts no
+	 * access.
+	 */
+	@Test
+	public void restoreUndoesEvict() {
+		for (BufferPool.Eviction e : BufferPool.Eviction.values()) {
+			BufferPool.EvictionPolicy policy = e.create(4);
+			for (int i = 0; i < 4; i++)
+				policy.recordInsert(new HeapPageId(1, i));
+			// 2Q and ARC remember their victims as ghosts
+			PageId victim = policy.evict(p -> true);
+			policy.recordInsert(new HeapPageId(1, 4));
+			victim = policy.evict(p -> true);
+			int temperature = policy.temperature(victim);
+			policy.restore(victim);
+			assertEquals(e.toString(), temperature, policy.temperature(victim));
+			assertEquals(e.toString(), victim, policy.evict(p -> true));
+		}
+	}
+
+	/**
+	 * Every policy works inside a BufferPool that is smaller than the table.
+	 */
+	@Test
+	public void scanThroughSmallPool() throws Exception {
+		ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+		HeapFile f = SystemTestUtil.createRandomHeapFile(1, 992 * 30, null, tuples);
+		for (BufferPool.Eviction e : BufferPool.Eviction.values()) {
+			Database.resetBufferPool(10, e);
+			SystemTestUtil.matchTuples(f, tuples);
+			SystemTestUtil.matchTuples(f, tuples);
+		}
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(EvictionPolicyTest.class);
+	}
+}
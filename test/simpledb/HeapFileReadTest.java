@@ -3,6 +3,7 @@ package simpledb;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
 
+import java.io.*;
 import java.util.*;
 import org.junit.After;
 import org.junit.Before;
@@ -78,6 +79,130 @@ public class HeapFileReadTest extends SimpleDbTestBase {
 		assertFalse(page.getSlot(20));
 	}
 
+	/**
+	 * Unit test for HeapFile.readPage() in memory-mapped mode
+	 */
+	@Test
+	public void readPageMemoryMapped() throws Exception {
+		HeapFile big = SystemTestUtil.createRandomHeapFile(2, 2000, null, null);
+		big.setMemoryMapped(true);
+		// two pages per segment, so that the last segment is partial
+		big.setMapSegmentSize(2 * BufferPool.PAGE_SIZE);
+		for (int i = 0; i < big.numPages(); i++) {
+			HeapPageId pid = new HeapPageId(big.getId(), i);
+			HeapPage mapped = (HeapPage) big.readPage(pid);
+			big.setMemoryMapped(false);
+			HeapPage read = (HeapPage) big.readPage(pid);
+			big.setMemoryMapped(true);
+			assertArrayEquals(read.getPageData(), mapped.getPageData());
+			assertEquals(read.getNumEmptySlots(), mapped.getNumEmptySlots());
+		}
+	}
+
+	/**
+	 * Tables with pages of other sizes than BufferPool.PAGE_SIZE are read, scanned
+	 * and appended to through a pool too small to hold them.
+	 */
+	@Test
+	public void pageSizes() throws Exception {
+		for (int pageSize : new int[] { 4096, 16384, 65536 }) {
+			Database.resetBufferPool(8);
+			int slots = pageSize * 8 / (td.getSize() * 8 + 1);
+			ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+			for (int i = 0; i < slots * 5 / 2; i++)
+				tuples.add(new ArrayList<Integer>(Arrays.asList(i, -i)));
+			File f = File.createTempFile("table", ".dat");
+			f.deleteOnExit();
+			HeapFileEncoder.convert(tuples, f, pageSize, 2);
+			HeapFile table = new HeapFile(f, td, pageSize);
+			Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+
+			assertEquals(pageSize, Database.getCatalog().getPageSize(table.getId()));
+			assertEquals(3, table.numPages());
+			HeapPage last = (HeapPage) table.readPage(new HeapPageId(table.getId(), 2));
+			assertEquals(pageSize, last.getPageData().length);
+			assertEquals(slots / 2 + slots % 2, last.getNumEmptySlots());
+
+			SystemTestUtil.matchTuples(table, tuples);
+			for (int pageno = 2; pageno >= 0; pageno--) {
+				HeapPageId pid = new HeapPageId(table.getId(), pageno);
+				HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+				assertEquals(slots * pageno, ((IntField) page.iterator().next().getField(0)).getValue());
+			}
+			Database.getBufferPool().transactionComplete(tid);
+
+			for (int i = 0; i < slots; i++) {
+				Tuple t = Utility.getHeapTuple(new int[] { -1, i });
+				Database.getBufferPool().insertTuple(tid, table.getId(), t);
+				tuples.add(SystemTestUtil.tupleToList(t));
+			}
+			Database.getBufferPool().transactionComplete(tid);
+			Database.getBufferPool().flushAllPages();
+			assertEquals(4, table.numPages());
+			assertEquals(4L * pageSize, f.length());
+			SystemTestUtil.matchTuples(table, tuples);
+		}
+	}
+
+	/**
+	 * A text file with a VARCHAR column is encoded into slotted pages that hold
+	 * many more rows than fixed-length strings would, and rows inserted later
+	 * go to the free space in them.
+	 */
+	@Test
+	public void varcharFile() throws Exception {
+		File text = File.createTempFile("table", ".txt");
+		text.deleteOnExit();
+		ArrayList<String> names = new ArrayList<String>();
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(text), java.nio.charset.StandardCharsets.UTF_8)) {
+			for (int i = 0; i < 1000; i++) {
+				names.add("n\u00e4me " + i);
+				w.write(i + "," + names.get(i) + "\n");
+			}
+		}
+		File f = File.createTempFile("table", ".dat");
+		f.deleteOnExit();
+		Type[] types = new Type[] { Type.INT_TYPE, Type.VARCHAR_TYPE };
+		HeapFileEncoder.convert(text, f, BufferPool.PAGE_SIZE, 2, types);
+		HeapFile table = new HeapFile(f, new TupleDesc(types), BufferPool.PAGE_SIZE);
+		Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+
+		// at most 24 bytes per row, against 28 rows per page of STRING_TYPE
+		assertEquals(1000 / ((BufferPool.PAGE_SIZE - 12) / 24) + 1, table.numPages());
+		Tuple extra = new Tuple(table.getTupleDesc());
+		extra.setField(0, new IntField(1000));
+		extra.setField(1, new StringField("n\u00e4me 1000"));
+		Database.getBufferPool().insertTuple(tid, table.getId(), extra);
+		Database.getBufferPool().transactionComplete(tid);
+		names.add("n\u00e4me 1000");
+		assertEquals(6, table.numPages());
+
+		DbFileIterator it = table.iterator(tid);
+		it.open();
+		int count = 0;
+		while (it.hasNext()) {
+			Tuple t = it.next();
+			assertEquals(names.get(t.getInt(0)), t.getString(1));
+			count++;
+		}
+		it.close();
+		assertEquals(1001, count);
+	}
+
+	/**
+	 * Page sizes must be powers of two within the supported range.
+	 */
+	@Test
+	public void badPageSize() throws Exception {
+		for (int pageSize : new int[] { BufferPool.MIN_PAGE_SIZE / 2, BufferPool.MAX_PAGE_SIZE * 2, 5000 }) {
+			try {
+				new HeapFile(hf.getFile(), td, pageSize);
+				fail("expected IllegalArgumentException");
+			} catch (IllegalArgumentException e) {
+			}
+		}
+	}
+
 	@Test
 	public void testIteratorBasic() throws Exception {
 		HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null, null);
@@ -120,6 +245,51 @@ public class HeapFileReadTest extends SimpleDbTestBase {
 		it.close();
 	}
 
+	@Test
+	public void testIteratorRewind() throws Exception {
+		HeapFile twoPageFile = SystemTestUtil.createRandomHeapFile(2, 520, null, null);
+
+		DbFileIterator it = twoPageFile.iterator(tid);
+		it.open();
+		Tuple first = it.next();
+		int count = 1;
+		while (it.hasNext()) {
+			it.next();
+			count += 1;
+		}
+		assertEquals(520, count);
+
+		it.rewind();
+		assertEquals(first.getRecordId(), it.next().getRecordId());
+		it.close();
+	}
+
+	/**
+	 * Empty pages in the middle of a file are skipped.
+	 */
+	@Test
+	public void testIteratorSkipsEmptyPages() throws Exception {
+		HeapFile threePageFile = SystemTestUtil.createRandomHeapFile(2, 1100, null, null);
+		HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(threePageFile.getId(), 0),
+				Permissions.READ_WRITE);
+		ArrayList<Tuple> onPage = new ArrayList<Tuple>();
+		Iterator<Tuple> pageIt = page.iterator();
+		while (pageIt.hasNext())
+			onPage.add(pageIt.next());
+		for (Tuple t : onPage)
+			page.deleteTuple(t);
+
+		DbFileIterator it = threePageFile.iterator(tid);
+		it.open();
+		int count = 0;
+		while (it.hasNext()) {
+			it.next();
+			count += 1;
+		}
+		assertEquals(1100 - onPage.size(), count);
+		it.close();
+	}
+
 	/**
 	 * JUnit suite target
 	 */
@@ -0,0 +1,340 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class HeapFileWriteTest extends SimpleDbTestBase {
+	private File f;
+	private HeapFile hf;
+	private TransactionId tid;
+
+	/**
+	 * Set up initial resources for each unit test.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		hf = SystemTestUtil.createRandomHeapFile(2, 1000, null, null);
+		f = hf.getFile();
+		tid = new TransactionId();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		hf.close();
+	}
+
+	/**
+	 * Unit test for HeapFile.writePage() followed by HeapFile.readPage()
+	 */
+	@Test
+	public void writeThenRead() throws Exception {
+		HeapPageId pid = new HeapPageId(hf.getId(), 1);
+		HeapPage page = (HeapPage) hf.readPage(pid);
+		int empty = page.getNumEmptySlots();
+		page.addTuple(Utility.getHeapTuple(new int[] { 7, 8 }));
+		page.markDirty(true, tid);
+		hf.writePage(page);
+
+		HeapPage reread = (HeapPage) hf.readPage(pid);
+		assertEquals(empty - 1, reread.getNumEmptySlots());
+		assertArrayEquals(page.getPageData(), reread.getPageData());
+	}
+
+	/**
+	 * Pages past the 2 GB mark are addressed with 64-bit offsets.
+	 */
+	@Test
+	public void pagesBeyondTwoGigabytes() throws Exception {
+		int pageno = (int) ((3L << 30) / BufferPool.PAGE_SIZE);
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		raf.setLength((long) (pageno + 1) * BufferPool.PAGE_SIZE); // sparse
+		raf.close();
+		HeapFile big = Utility.openHeapFile(2, f);
+		assertEquals(pageno + 1, big.numPages());
+
+		HeapPageId pid = new HeapPageId(big.getId(), pageno);
+		HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+		page.addTuple(Utility.getHeapTuple(new int[] { 1, 2 }));
+		page.markDirty(true, tid);
+		big.writePage(page);
+		assertEquals((long) (pageno + 1) * BufferPool.PAGE_SIZE, f.length());
+
+		HeapPage reread = (HeapPage) big.readPage(pid);
+		assertArrayEquals(page.getPageData(), reread.getPageData());
+		// the start of the file is untouched
+		assertArrayEquals(hf.readPage(new HeapPageId(hf.getId(), 0)).getPageData(),
+				big.readPage(new HeapPageId(big.getId(), 0)).getPageData());
+		big.close();
+	}
+
+	/**
+	 * The mapping of a memory-mapped file grows with the file.
+	 */
+	@Test
+	public void memoryMappedGrowth() throws Exception {
+		HeapFile full = SystemTestUtil.createRandomHeapFile(2, 1008, null, null);
+		full.setMemoryMapped(true);
+		full.setMapSegmentSize(2 * BufferPool.PAGE_SIZE);
+		assertEquals(2, full.numPages());
+		assertEquals(0, ((HeapPage) full.readPage(new HeapPageId(full.getId(), 1))).getNumEmptySlots());
+
+		// the table is full, so this appends and maps a third page
+		full.addTuple(tid, Utility.getHeapTuple(new int[] { 5, 6 }));
+		assertEquals(3, full.numPages());
+		// the tuple is only in the pool until the page is written back
+		Database.getBufferPool().flushPages(tid);
+		HeapPage page = (HeapPage) full.readPage(new HeapPageId(full.getId(), 2));
+		Tuple t = page.iterator().next();
+		assertEquals(new IntField(5), t.getField(0));
+		assertEquals(new IntField(6), t.getField(1));
+		Database.getBufferPool().transactionComplete(tid);
+		full.close();
+	}
+
+	/**
+	 * Inserts skip pages the free space map knows are full, and the map
+	 * survives reopening the file.
+	 */
+	@Test
+	public void freeSpaceMap() throws Exception {
+		HeapFile table = SystemTestUtil.createRandomHeapFile(2, 1100, null, null);
+		new File(table.getFile().getPath() + ".fsm").deleteOnExit();
+		BufferPool bp = Database.getBufferPool();
+		HeapPageId p0 = new HeapPageId(table.getId(), 0);
+		HeapPageId p1 = new HeapPageId(table.getId(), 1);
+
+		// a fresh map does not know pages 0 and 1 are full yet
+		ArrayList<Page> affected = table.addTuple(tid, Utility.getHeapTuple(new int[] { 1, 2 }));
+		assertEquals(2, affected.get(0).getId().pageno());
+		assertFalse(bp.holdsLock(tid, p0));
+		assertFalse(bp.holdsLock(tid, p1));
+		assertFalse(table.freeSpaceMap().isFree(0));
+		assertTrue(table.freeSpaceMap().isFree(2));
+		table.close();
+
+		HeapFile reopened = Utility.openHeapFile(2, table.getFile());
+		assertFalse(reopened.freeSpaceMap().isFree(0));
+		assertEquals(2, reopened.freeSpaceMap().nextFree(0));
+		reopened.close();
+		bp.transactionComplete(tid);
+	}
+
+	/**
+	 * A delete makes room that the next insert reuses instead of growing the file.
+	 */
+	@Test
+	public void insertAfterDelete() throws Exception {
+		HeapFile table = SystemTestUtil.createRandomHeapFile(2, 1008, null, null);
+		new File(table.getFile().getPath() + ".fsm").deleteOnExit();
+		table.freeSpaceMap().setFree(0, false);
+		table.freeSpaceMap().setFree(1, false);
+
+		HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(table.getId(), 1),
+				Permissions.READ_WRITE);
+		table.deleteTuple(tid, page.iterator().next());
+		assertTrue(table.freeSpaceMap().isFree(1));
+
+		Tuple t = Utility.getHeapTuple(new int[] { 3, 4 });
+		table.addTuple(tid, t);
+		assertEquals(2, table.numPages());
+		assertEquals(1, t.getRecordId().getPageId().pageno());
+		assertFalse(table.freeSpaceMap().isFree(1));
+		Database.getBufferPool().transactionComplete(tid);
+		table.close();
+	}
+
+	/**
+	 * Aborting the insert that filled a page gives the page back to the free
+	 * space map, and so does writing a page image with room.
+	 */
+	@Test
+	public void insertAfterAbort() throws Exception {
+		HeapFile table = SystemTestUtil.createRandomHeapFile(2, 1000, null, null);
+		new File(table.getFile().getPath() + ".fsm").deleteOnExit();
+		BufferPool bp = Database.getBufferPool();
+		for (int i = 0; i < 8; i++)
+			table.addTuple(tid, Utility.getHeapTuple(new int[] { i, i }));
+		assertEquals(2, table.numPages());
+		assertFalse(table.freeSpaceMap().isFree(1));
+		bp.transactionComplete(tid, false);
+		assertTrue(table.freeSpaceMap().isFree(1));
+
+		TransactionId next = new TransactionId();
+		Tuple t = Utility.getHeapTuple(new int[] { 3, 4 });
+		table.addTuple(next, t);
+		assertEquals(2, table.numPages());
+		assertEquals(1, t.getRecordId().getPageId().pageno());
+		bp.transactionComplete(next);
+
+		// as a rollback does with a before-image
+		table.freeSpaceMap().setFree(1, false);
+		table.writePage(table.readPage(new HeapPageId(table.getId(), 1)));
+		assertTrue(table.freeSpaceMap().isFree(1));
+		table.close();
+	}
+
+	/**
+	 * Unit test for HeapFile.bulkInsert()
+	 */
+	@Test
+	public void bulkInsert() throws Exception {
+		new File(f.getPath() + ".fsm").deleteOnExit();
+		int before = hf.numPages();
+		ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+		SeqScan scan = new SeqScan(tid, hf.getId(), "");
+		scan.open();
+		while (scan.hasNext())
+			expected.add(SystemTestUtil.tupleToList(scan.next()));
+		scan.close();
+
+		// more than one batch of full pages plus a partial one
+		final int ROWS = 504 * (HeapFile.BULK_WRITE_PAGES + 3) + 17;
+		ArrayList<Tuple> rows = new ArrayList<Tuple>();
+		for (int i = 0; i < ROWS; i++) {
+			rows.add(Utility.getHeapTuple(new int[] { i, -i }));
+			expected.add(SystemTestUtil.tupleToList(rows.get(i)));
+		}
+		assertEquals(ROWS, hf.bulkInsert(rows.iterator()));
+
+		assertEquals(before + HeapFile.BULK_WRITE_PAGES + 4, hf.numPages());
+		assertEquals((long) hf.numPages() * BufferPool.PAGE_SIZE, f.length());
+		assertEquals(new HeapPageId(hf.getId(), before), rows.get(0).getRecordId().getPageId());
+		assertFalse(hf.freeSpaceMap().isFree(before));
+		assertTrue(hf.freeSpaceMap().isFree(hf.numPages() - 1));
+		SystemTestUtil.matchTuples(hf, tid, expected);
+		Database.getBufferPool().transactionComplete(tid);
+	}
+
+	/**
+	 * An insert that appends a page while a bulk insert runs gets a page after
+	 * the bulk-loaded ones instead of one the bulk insert overwrites.
+	 */
+	@Test
+	public void appendDuringBulkInsert() throws Exception {
+		HeapFile table = SystemTestUtil.createRandomHeapFile(2, 1008, null, null);
+		new File(table.getFile().getPath() + ".fsm").deleteOnExit();
+		Tuple appended = Utility.getHeapTuple(new int[] { -1, -1 });
+		Thread inserter = new Thread(() -> {
+			try {
+				table.addTuple(tid, appended);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		ArrayList<Tuple> rows = new ArrayList<Tuple>();
+		for (int i = 0; i < 504 * 3; i++)
+			rows.add(Utility.getHeapTuple(new int[] { i, i }));
+		Iterator<Tuple> it = rows.iterator();
+		table.bulkInsert(new Iterator<Tuple>() {
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			public Tuple next() {
+				Tuple t = it.next();
+				if (t == rows.get(504)) {
+					// the insert blocks until the bulk insert is done
+					inserter.start();
+					try {
+						inserter.join(200);
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				return t;
+			}
+		});
+		inserter.join();
+
+		assertEquals(6, table.numPages());
+		assertEquals(5, appended.getRecordId().getPageId().pageno());
+		Database.getBufferPool().transactionComplete(tid);
+		int count = 0;
+		TransactionId reader = new TransactionId();
+		DbFileIterator scan = table.iterator(reader);
+		scan.open();
+		while (scan.hasNext()) {
+			scan.next();
+			count++;
+		}
+		scan.close();
+		assertEquals(1008 + 504 * 3 + 1, count);
+		Database.getBufferPool().transactionComplete(reader);
+		table.close();
+	}
+
+	/**
+	 * A VARCHAR tuple too large for any page is rejected before the file
+	 * changes, by an insert and by a bulk insert that already wrote batches.
+	 */
+	@Test
+	public void tupleLargerThanPage() throws Exception {
+		File file = File.createTempFile("table", ".dat");
+		file.deleteOnExit();
+		new File(file.getPath() + ".fsm").deleteOnExit();
+		TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.VARCHAR_TYPE });
+		HeapFile table = new HeapFile(file, td);
+		Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+		char[] chars = new char[BufferPool.PAGE_SIZE];
+		Arrays.fill(chars, 'x');
+		Tuple big = new Tuple(td);
+		big.setField(0, new IntField(0));
+		big.setField(1, new StringField(new String(chars)));
+
+		try {
+			table.addTuple(tid, big);
+			fail("expected DbException");
+		} catch (DbException e) {
+		}
+		assertEquals(0, table.numPages());
+		assertEquals(0, file.length());
+
+		ArrayList<Tuple> rows = new ArrayList<Tuple>();
+		for (int i = 0; i < 200 * (HeapFile.BULK_WRITE_PAGES + 1); i++) {
+			Tuple t = new Tuple(td);
+			t.setField(0, new IntField(i));
+			t.setField(1, new StringField("row " + i));
+			rows.add(t);
+		}
+		rows.add(big);
+		try {
+			table.bulkInsert(rows.iterator());
+			fail("expected DbException");
+		} catch (DbException e) {
+		}
+		assertEquals(0, table.numPages());
+		assertEquals(0, file.length());
+		Database.getBufferPool().transactionComplete(tid);
+		table.close();
+	}
+
+	/**
+	 * A closed file reopens its channel on the next access.
+	 */
+	@Test
+	public void reopenAfterClose() throws Exception {
+		HeapPageId pid = new HeapPageId(hf.getId(), 0);
+		byte[] before = hf.readPage(pid).getPageData();
+		hf.close();
+		assertArrayEquals(before, hf.readPage(pid).getPageData());
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(HeapFileWriteTest.class);
+	}
+}
@@ -13,6 +13,7 @@ import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import junit.framework.JUnit4TestAdapter;
 
 public class HeapPageReadTest extends SimpleDbTestBase {
@@ -84,6 +85,23 @@ public class HeapPageReadTest extends SimpleDbTestBase {
 		}
 	}
 
+	/**
+	 * Unit test for HeapPage.getField() and HeapPage.getInt()
+	 */
+	@Test
+	public void getField() throws Exception {
+		HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+		for (int row = 0; row < EXAMPLE_VALUES.length; row++) {
+			assertEquals(new IntField(EXAMPLE_VALUES[row][0]), page.getField(row, 0));
+			assertEquals(EXAMPLE_VALUES[row][1], page.getInt(row, 1));
+		}
+		try {
+			page.getField(EXAMPLE_VALUES.length, 0);
+			fail("expected exception for an empty slot");
+		} catch (NoSuchElementException e) {
+		}
+	}
+
 	/**
 	 * Unit test for HeapPage.getNumEmptySlots()
 	 */
@@ -0,0 +1,252 @@
+package simpledb;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class HeapPageWriteTest extends SimpleDbTestBase {
+	private HeapPageId pid;
+
+	/**
+	 * Set up initial resources for each unit test.
+	 */
+	@Before
+	public void addTable() throws Exception {
+		this.pid = new HeapPageId(-1, -1);
+		Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+	}
+
+	/**
+	 * Unit test for HeapPage.addTuple()
+	 */
+	@Test
+	public void addTuple() throws Exception {
+		HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA.clone());
+		int free = page.getNumEmptySlots();
+
+		Tuple t = Utility.getHeapTuple(new int[] { 11, 12 });
+		page.addTuple(t);
+		assertEquals(free - 1, page.getNumEmptySlots());
+		int slot = t.getRecordId().tupleno();
+		assertTrue(page.getSlot(slot));
+		assertEquals(12, page.getInt(slot, 1));
+
+		// the patched image reads back the same
+		HeapPage reread = new HeapPage(pid, page.getPageData());
+		assertEquals(free - 1, reread.getNumEmptySlots());
+		assertEquals(new IntField(11), reread.getField(slot, 0));
+	}
+
+	/**
+	 * addTuple() fills the page and then fails
+	 */
+	@Test
+	public void addTupleFull() throws Exception {
+		HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+		int free = page.getNumEmptySlots();
+		for (int i = 0; i < free; i++)
+			page.addTuple(Utility.getHeapTuple(new int[] { i, -i }));
+		assertEquals(0, page.getNumEmptySlots());
+		try {
+			page.addTuple(Utility.getHeapTuple(new int[] { 0, 0 }));
+			fail("page should be full");
+		} catch (DbException e) {
+		}
+	}
+
+	/**
+	 * Slot counting and allocation work when the slots do not fill the last
+	 * header byte.
+	 */
+	@Test
+	public void addTuplePartialHeaderByte() throws Exception {
+		Database.getCatalog().addTable(new SkeletonFile(-2, Utility.getTupleDesc(3)), SystemTestUtil.getUUID());
+		HeapPage page = new HeapPage(new HeapPageId(-2, 0), HeapPage.createEmptyPageData());
+		int free = page.getNumEmptySlots();
+		assertTrue(free % 8 != 0);
+		for (int i = 0; i < free; i++) {
+			Tuple t = Utility.getHeapTuple(new int[] { i, i, i });
+			page.addTuple(t);
+			assertEquals(i, t.getRecordId().tupleno());
+			assertEquals(free - i - 1, page.getNumEmptySlots());
+		}
+		try {
+			page.addTuple(Utility.getHeapTuple(new int[] { 0, 0, 0 }));
+			fail("page should be full");
+		} catch (DbException e) {
+		}
+	}
+
+	/**
+	 * addTuple() rejects a tuple of a different schema
+	 */
+	@Test(expected = DbException.class)
+	public void addTupleMismatch() throws Exception {
+		HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+		page.addTuple(Utility.getHeapTuple(new int[] { 1, 2, 3 }));
+	}
+
+	/**
+	 * Unit test for HeapPage.deleteTuple()
+	 */
+	@Test
+	public void deleteTuple() throws Exception {
+		HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA.clone());
+		int free = page.getNumEmptySlots();
+		Tuple first = page.iterator().next();
+		page.deleteTuple(first);
+		assertEquals(free + 1, page.getNumEmptySlots());
+		assertFalse(page.getSlot(0));
+		assertNull(first.getRecordId());
+
+		Iterator<Tuple> it = page.iterator();
+		assertEquals(HeapPageReadTest.EXAMPLE_VALUES[1][0], ((IntField) it.next().getField(0)).getValue());
+
+		try {
+			page.deleteTuple(first);
+			fail("tuple was already deleted");
+		} catch (DbException e) {
+		}
+	}
+
+	/**
+	 * The buffer a page is created from is never modified.
+	 */
+	@Test
+	public void sourceUnchanged() throws Exception {
+		byte[] source = HeapPageReadTest.EXAMPLE_DATA.clone();
+		HeapPage page = new HeapPage(pid, source);
+		page.addTuple(Utility.getHeapTuple(new int[] { 1, 2 }));
+		page.deleteTuple(page.iterator().next());
+		assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, source);
+	}
+
+	/**
+	 * The before-image is the page as of the last setBeforeImage(), or as read.
+	 */
+	@Test
+	public void beforeImage() throws Exception {
+		HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+		assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+		page.addTuple(Utility.getHeapTuple(new int[] { 1, 2 }));
+		assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+		page.setBeforeImage();
+		byte[] committed = page.getPageData();
+		assertArrayEquals(committed, page.getBeforeImage().getPageData());
+		page.deleteTuple(page.iterator().next());
+		assertArrayEquals(committed, page.getBeforeImage().getPageData());
+		assertFalse(Arrays.equals(committed, page.getPageData()));
+	}
+
+	private static Tuple varcharTuple(TupleDesc td, int i, String s) {
+		Tuple t = new Tuple(td);
+		t.setField(0, new IntField(i));
+		t.setField(1, new StringField(s));
+		return t;
+	}
+
+	/**
+	 * Tuples with a VARCHAR field are stored in a slotted page with their actual
+	 * length, and deleted space is reused.
+	 */
+	@Test
+	public void varcharTuples() throws Exception {
+		TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.VARCHAR_TYPE });
+		Database.getCatalog().addTable(new SkeletonFile(-3, td), SystemTestUtil.getUUID());
+		HeapPageId vpid = new HeapPageId(-3, 0);
+		HeapPage page = new HeapPage(vpid, HeapPage.createEmptyPageData());
+
+		// 4 + 2 + 10 bytes of tuple and 8 of slot entry each; a STRING_TYPE
+		// field would take 136 bytes and a header bit
+		int added = 0;
+		for (Tuple t = varcharTuple(td, 0, "caf\u00e9-1000"); page.hasRoomFor(t);
+				t = varcharTuple(td, added, "caf\u00e9-" + (1000 + added))) {
+			page.addTuple(t);
+			added++;
+		}
+		assertEquals((BufferPool.PAGE_SIZE - 12) / 24, added);
+		assertTrue(added > 5 * (BufferPool.PAGE_SIZE * 8 / (136 * 8 + 1)));
+		try {
+			page.addTuple(varcharTuple(td, -1, "x"));
+			fail("page should be full");
+		} catch (DbException e) {
+		}
+
+		// every other tuple makes room for a longer one, after compaction
+		ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+		page.iterator().forEachRemaining(tuples::add);
+		for (int i = 0; i < 10; i += 2)
+			page.deleteTuple(tuples.get(i));
+		Tuple longer = varcharTuple(td, 99, "a longer string of 33 characters.");
+		assertTrue(page.hasRoomFor(longer));
+		page.addTuple(longer);
+		assertEquals(0, longer.getRecordId().tupleno());
+
+		HeapPage reread = new HeapPage(vpid, page.getPageData());
+		assertEquals("a longer string of 33 characters.", ((StringField) reread.getField(0, 1)).getValue());
+		assertEquals(99, reread.getInt(0, 0));
+		assertFalse(reread.getSlot(2));
+		assertEquals("caf\u00e9-1001", ((StringField) reread.getField(1, 1)).getValue());
+		int used = 0;
+		for (Iterator<Tuple> it = reread.iterator(); it.hasNext(); it.next())
+			used++;
+		assertEquals(added - 4, used);
+	}
+
+	/**
+	 * Random adds and deletes of VARCHAR tuples on small slotted pages, which
+	 * compact often; every tuple reads back as it was added.
+	 */
+	@Test
+	public void randomSlotted() throws Exception {
+		TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.VARCHAR_TYPE });
+		Database.getCatalog().addTable(new SkeletonFile(-4, td) {
+			public int getPageSize() {
+				return 512;
+			}
+		}, SystemTestUtil.getUUID());
+		HeapPageId vpid = new HeapPageId(-4, 0);
+		HeapPage page = new HeapPage(vpid, HeapPage.createEmptyPageData(512));
+		Random random = new Random(42);
+		Map<Integer, Tuple> live = new HashMap<Integer, Tuple>();
+		for (int op = 0; op < 2000; op++) {
+			char[] chars = new char[random.nextInt(60)];
+			Arrays.fill(chars, (char) ('a' + op % 26));
+			Tuple t = varcharTuple(td, op, new String(chars));
+			if (random.nextInt(3) > 0 && page.hasRoomFor(t)) {
+				page.addTuple(t);
+				assertNull(live.put(t.getRecordId().tupleno(), t));
+			} else if (!live.isEmpty()) {
+				List<Integer> slots = new ArrayList<Integer>(live.keySet());
+				Tuple victim = live.remove(slots.get(random.nextInt(slots.size())));
+				page.deleteTuple(victim);
+			}
+			HeapPage reread = new HeapPage(vpid, page.getPageData());
+			int used = 0;
+			for (Iterator<Tuple> it = reread.iterator(); it.hasNext(); used++) {
+				Tuple read = it.next();
+				Tuple added = live.get(read.getRecordId().tupleno());
+				assertEquals(added.getField(0), read.getField(0));
+				assertEquals(added.getField(1), read.getField(1));
+			}
+			assertEquals(live.size(), used);
+		}
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(HeapPageWriteTest.class);
+	}
+}
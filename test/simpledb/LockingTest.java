@@ -0,0 +1,146 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class LockingTest extends SimpleDbTestBase {
+	private static final int TIMEOUT = 100;
+
+	private PageId p0, p1;
+	private TransactionId tid1, tid2;
+	private BufferPool bp;
+
+	/**
+	 * Set up a two-page table for each unit test.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 1000, null, null);
+		assertEquals(2, hf.numPages());
+		p0 = new HeapPageId(hf.getId(), 0);
+		p1 = new HeapPageId(hf.getId(), 1);
+		tid1 = new TransactionId();
+		tid2 = new TransactionId();
+		bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		bp.transactionComplete(tid1);
+		bp.transactionComplete(tid2);
+	}
+
+	/**
+	 * Starts a LockGrabber for the given request and checks whether the lock was
+	 * granted within TIMEOUT milliseconds.
+	 */
+	private TestUtil.LockGrabber grabLock(TransactionId tid, PageId pid, Permissions perm, boolean expected)
+			throws Exception {
+		TestUtil.LockGrabber t = new TestUtil.LockGrabber(tid, pid, perm);
+		t.setDaemon(true);
+		t.start();
+		Thread.sleep(TIMEOUT);
+		assertEquals(expected, t.acquired());
+		assertEquals(null, t.getError());
+		return t;
+	}
+
+	/**
+	 * Unit test for BufferPool.getPage() granting two shared locks on one page
+	 */
+	@Test
+	public void acquireReadLocksOnSamePage() throws Exception {
+		bp.getPage(tid1, p0, Permissions.READ_ONLY);
+		grabLock(tid2, p0, Permissions.READ_ONLY, true);
+		assertTrue(bp.holdsLock(tid1, p0));
+		assertTrue(bp.holdsLock(tid2, p0));
+	}
+
+	/**
+	 * Unit test for BufferPool.getPage() blocking a writer behind a reader
+	 */
+	@Test
+	public void acquireReadWriteLocksOnSamePage() throws Exception {
+		bp.getPage(tid1, p0, Permissions.READ_ONLY);
+		grabLock(tid2, p0, Permissions.READ_WRITE, false);
+	}
+
+	/**
+	 * Unit test for BufferPool.getPage() blocking a reader behind a writer
+	 */
+	@Test
+	public void acquireWriteReadLocksOnSamePage() throws Exception {
+		bp.getPage(tid1, p0, Permissions.READ_WRITE);
+		grabLock(tid2, p0, Permissions.READ_ONLY, false);
+	}
+
+	/**
+	 * Unit test for BufferPool.getPage() locking unrelated pages independently
+	 */
+	@Test
+	public void acquireWriteLocksOnTwoPages() throws Exception {
+		bp.getPage(tid1, p0, Permissions.READ_WRITE);
+		grabLock(tid2, p1, Permissions.READ_WRITE, true);
+	}
+
+	/**
+	 * Unit test for upgrading a shared lock held by a single transaction
+	 */
+	@Test
+	public void lockUpgrade() throws Exception {
+		bp.getPage(tid1, p0, Permissions.READ_ONLY);
+		grabLock(tid1, p0, Permissions.READ_WRITE, true);
+		assertTrue(bp.getLockManager().holdsExclusive(tid1, p0));
+
+		// an upgrade has to wait while another transaction shares the page
+		bp.getPage(tid2, p1, Permissions.READ_ONLY);
+		bp.getPage(tid1, p1, Permissions.READ_ONLY);
+		grabLock(tid2, p1, Permissions.READ_WRITE, false);
+	}
+
+	/**
+	 * Unit test for BufferPool.releasePage() waking up a blocked transaction
+	 */
+	@Test
+	public void acquireThenRelease() throws Exception {
+		bp.getPage(tid1, p0, Permissions.READ_WRITE);
+		TestUtil.LockGrabber t = grabLock(tid2, p0, Permissions.READ_WRITE, false);
+
+		bp.releasePage(tid1, p0);
+		assertFalse(bp.holdsLock(tid1, p0));
+		t.join(TIMEOUT * 10);
+		assertTrue(t.acquired());
+		assertTrue(bp.holdsLock(tid2, p0));
+	}
+
+	/**
+	 * Unit test for BufferPool.transactionComplete() releasing every lock
+	 */
+	@Test
+	public void transactionCompleteReleasesLocks() throws Exception {
+		bp.getPage(tid1, p0, Permissions.READ_WRITE);
+		bp.getPage(tid1, p1, Permissions.READ_ONLY);
+		bp.transactionComplete(tid1);
+		assertFalse(bp.holdsLock(tid1, p0));
+		assertFalse(bp.holdsLock(tid1, p1));
+		grabLock(tid2, p0, Permissions.READ_WRITE, true);
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(LockingTest.class);
+	}
+}
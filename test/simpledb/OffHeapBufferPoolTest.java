@@ -0,0 +1,102 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class OffHeapBufferPoolTest extends SimpleDbTestBase {
+	private static final int PAGES = 12;
+
+	private HeapFile table;
+	private ArrayList<ArrayList<Integer>> tuples;
+	private BufferPool bp;
+
+	/**
+	 * Set up a table larger than an off-heap pool of 8 pages.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		tuples = new ArrayList<ArrayList<Integer>>();
+		table = SystemTestUtil.createRandomHeapFile(1, 992 * PAGES, null, tuples);
+		bp = Database.resetBufferPool(8L * BufferPool.PAGE_SIZE, true);
+		bp.setBackgroundWriterInterval(0);
+		bp.setReadAheadWindow(0);
+	}
+
+	/**
+	 * Pages are read into frames, and scans see the same tuples as on the heap.
+	 */
+	@Test
+	public void scan() throws Exception {
+		assertTrue(bp.isOffHeap());
+		SystemTestUtil.matchTuples(table, tuples);
+
+		TransactionId tid = new TransactionId();
+		HeapPage page = (HeapPage) bp.getPage(tid, new HeapPageId(table.getId(), 0), Permissions.READ_ONLY);
+		assertTrue(page.inFrame());
+		bp.transactionComplete(tid);
+	}
+
+	/**
+	 * A page that is evicted while a transaction still holds it stays valid after
+	 * its frame is reused.
+	 */
+	@Test
+	public void evictedPageStaysValid() throws Exception {
+		TransactionId tid = new TransactionId();
+		HeapPageId pid = new HeapPageId(table.getId(), 0);
+		HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+		byte[] image = page.getPageData();
+
+		for (int i = 1; i < PAGES; i++)
+			bp.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+		assertFalse(page.inFrame());
+		assertArrayEquals(image, page.getPageData());
+		bp.transactionComplete(tid);
+	}
+
+	/**
+	 * Pages in frames are modified in place, written back and reverted like any
+	 * other page.
+	 */
+	@Test
+	public void insertAndAbort() throws Exception {
+		HeapPageId pid = new HeapPageId(table.getId(), 0);
+		byte[] original = table.readPage(pid).getPageData();
+
+		TransactionId tid = new TransactionId();
+		HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+		bp.deleteTuple(tid, page.iterator().next());
+		assertTrue(page.inFrame());
+		assertArrayEquals(original, page.getBeforeImage().getPageData());
+		bp.transactionComplete(tid, false);
+
+		tid = new TransactionId();
+		assertArrayEquals(original, bp.getPage(tid, pid, Permissions.READ_ONLY).getPageData());
+		bp.transactionComplete(tid);
+	}
+
+	/**
+	 * A pool must have room for at least one page.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void tooSmall() throws Exception {
+		new BufferPool(BufferPool.PAGE_SIZE - 1, BufferPool.DEFAULT_EVICTION, true);
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(OffHeapBufferPoolTest.class);
+	}
+}
@@ -0,0 +1,137 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class PredicateTest extends SimpleDbTestBase {
+
+	private static Tuple tuple(int a, String b) {
+		Tuple t = new Tuple(new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE }));
+		t.setField(0, new IntField(a));
+		t.setField(1, new StringField(b, Type.STRING_LEN));
+		return t;
+	}
+
+	/**
+	 * Unit test for Predicate.filter() on integer fields
+	 */
+	@Test
+	public void filterInt() {
+		Tuple t = tuple(3, "x");
+		assertTrue(new Predicate(0, Predicate.Op.EQUALS, new IntField(3)).filter(t));
+		assertFalse(new Predicate(0, Predicate.Op.NOT_EQUALS, new IntField(3)).filter(t));
+		assertTrue(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(2)).filter(t));
+		assertFalse(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(3)).filter(t));
+		assertTrue(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(3)).filter(t));
+		assertTrue(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(4)).filter(t));
+		assertFalse(new Predicate(0, Predicate.Op.LESS_THAN_OR_EQ, new IntField(2)).filter(t));
+		assertTrue(new Predicate(0, Predicate.Op.LIKE, new IntField(3)).filter(t));
+	}
+
+	/**
+	 * Unit test for Predicate.filter() on string fields
+	 */
+	@Test
+	public void filterString() {
+		Tuple t = tuple(3, "simpledb");
+		assertTrue(new Predicate(1, Predicate.Op.EQUALS, new StringField("simpledb", Type.STRING_LEN)).filter(t));
+		assertTrue(new Predicate(1, Predicate.Op.LIKE, new StringField("pled", Type.STRING_LEN)).filter(t));
+		assertTrue(new Predicate(1, Predicate.Op.LESS_THAN, new StringField("t", Type.STRING_LEN)).filter(t));
+		assertFalse(new Predicate(1, Predicate.Op.GREATER_THAN, new StringField("t", Type.STRING_LEN)).filter(t));
+	}
+
+	/**
+	 * Predicate.filter() on the other fixed-width types, and on integers of
+	 * mixed widths
+	 */
+	@Test
+	public void filterTypes() {
+		TupleDesc td = new TupleDesc(new Type[] { Type.LONG_TYPE, Type.DOUBLE_TYPE, Type.DATE_TYPE, Type.INT_TYPE });
+		Tuple t = new Tuple(td);
+		t.setField(0, new LongField(1L << 40));
+		t.setField(1, new DoubleField(-0.0));
+		t.setField(2, Type.DATE_TYPE.fromString("2024-02-29"));
+		t.setField(3, new IntField(7));
+		assertTrue(new Predicate(0, Predicate.Op.GREATER_THAN, new LongField(1L << 39)).filter(t));
+		assertTrue(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(5)).filter(t));
+		assertTrue(new Predicate(1, Predicate.Op.LESS_THAN, new DoubleField(0.0)).filter(t));
+		assertFalse(new Predicate(1, Predicate.Op.EQUALS, new DoubleField(0.0)).filter(t));
+		assertTrue(new Predicate(2, Predicate.Op.LESS_THAN_OR_EQ, Type.DATE_TYPE.fromString("2024-03-01")).filter(t));
+		assertTrue(new Predicate(3, Predicate.Op.EQUALS, new LongField(7)).filter(t));
+	}
+
+	/**
+	 * Predicate.filter() on a batch keeps the selected rows that satisfy it, in
+	 * order
+	 */
+	@Test
+	public void filterBatch() {
+		TupleBatch batch = new TupleBatch(new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE }), 8);
+		for (int i = 0; i < 8; i++)
+			batch.add(tuple(i, "s" + i % 3));
+		assertEquals(5, batch.filter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(3))));
+		assertEquals(2, batch.filter(new Predicate(1, Predicate.Op.EQUALS, new StringField("s1", Type.STRING_LEN))));
+		assertEquals(4, batch.getSelection()[0]);
+		assertEquals(7, batch.getSelection()[1]);
+	}
+
+	/**
+	 * Conjunctions and disjunctions give the same result on tuples and batches
+	 */
+	@Test
+	public void compound() {
+		Predicate even = new Predicate(1, Predicate.Op.LIKE, new StringField("even", Type.STRING_LEN));
+		Predicate small = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(10));
+		Predicate big = new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(90));
+		CompoundPredicate p = CompoundPredicate.or(CompoundPredicate.and(even, small), big);
+		TupleBatch batch = new TupleBatch(new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE }), 100);
+		int expected = 0;
+		for (int i = 0; i < 100; i++) {
+			Tuple t = tuple(i, i % 2 == 0 ? "even" : "odd");
+			boolean pass = i % 2 == 0 && i < 10 || i > 90;
+			assertEquals(pass, p.filter(t));
+			if (pass)
+				expected++;
+			batch.add(t);
+		}
+		assertEquals(expected, batch.filter(p));
+		int[] sel = batch.getSelection();
+		assertEquals(0, sel[0]);
+		assertEquals(8, sel[4]);
+		assertEquals(91, sel[5]);
+		assertEquals(99, sel[expected - 1]);
+		assertEquals("((f = 1 op = LIKE operand = even AND f = 0 op = LESS_THAN operand = 10) OR "
+				+ "f = 0 op = GREATER_THAN operand = 90)", p.toString());
+	}
+
+	/**
+	 * A conjunction moves its most selective term first, a disjunction its
+	 * least selective one
+	 */
+	@Test
+	public void reorder() {
+		Predicate rare = new Predicate(0, Predicate.Op.EQUALS, new IntField(0));
+		Predicate common = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(99));
+		CompoundPredicate and = CompoundPredicate.and(common, rare);
+		CompoundPredicate or = CompoundPredicate.or(rare, common);
+		for (int i = 0; i < CompoundPredicate.REORDER_INTERVAL; i++) {
+			Tuple t = tuple(i % 100, "x");
+			assertEquals(i % 100 == 0, and.filter(t));
+			assertEquals(i % 100 != 99, or.filter(t));
+		}
+		assertSame(rare, and.getTerms()[0]);
+		assertSame(common, or.getTerms()[0]);
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(PredicateTest.class);
+	}
+}
@@ -0,0 +1,103 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+	private static final int PAGES = 20;
+
+	/** Records the thread each readPage call runs on. */
+	private static class RecordingHeapFile extends HeapFile {
+		final List<String> readers = Collections.synchronizedList(new ArrayList<String>());
+
+		RecordingHeapFile(File f, TupleDesc td) {
+			super(f, td);
+		}
+
+		@Override
+		public Page readPage(PageId pid) {
+			readers.add(Thread.currentThread().getName());
+			return super.readPage(pid);
+		}
+
+		int readsOn(String thread) {
+			synchronized (readers) {
+				return Collections.frequency(readers, thread);
+			}
+		}
+	}
+
+	private RecordingHeapFile table;
+	private ArrayList<ArrayList<Integer>> tuples;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		tuples = new ArrayList<ArrayList<Integer>>();
+		File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * PAGES, 1000, null, tuples);
+		table = new RecordingHeapFile(f, Utility.getTupleDesc(1));
+		Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+	}
+
+	/**
+	 * After two sequential requests, every following page of a scan is read in
+	 * the background, and exactly once.
+	 */
+	@Test
+	public void prefetchesSequentialScan() throws Exception {
+		SystemTestUtil.matchTuples(table, tuples);
+		assertEquals(PAGES, table.readers.size());
+		assertEquals(2, table.readsOn(Thread.currentThread().getName()));
+		assertEquals(PAGES - 2, table.readsOn("simpledb-read-ahead"));
+	}
+
+	/**
+	 * Random page requests are not mistaken for a scan.
+	 */
+	@Test
+	public void ignoresRandomAccess() throws Exception {
+		TransactionId tid = new TransactionId();
+		for (int pageno : new int[] { 7, 3, 12, 0, 5, 18 })
+			Database.getBufferPool().getPage(tid, new HeapPageId(table.getId(), pageno), Permissions.READ_ONLY);
+		assertEquals(0, table.readsOn("simpledb-read-ahead"));
+		Database.getBufferPool().transactionComplete(tid);
+	}
+
+	/**
+	 * A window of 0 turns read-ahead off.
+	 */
+	@Test
+	public void disabled() throws Exception {
+		Database.getBufferPool().setReadAheadWindow(0);
+		SystemTestUtil.matchTuples(table, tuples);
+		assertEquals(PAGES, table.readsOn(Thread.currentThread().getName()));
+	}
+
+	/**
+	 * Prefetched pages go through the scan's ring like any other page.
+	 */
+	@Test
+	public void prefetchesThroughRing() throws Exception {
+		Database.resetBufferPool(8);
+		SystemTestUtil.matchTuples(table, tuples);
+		assertEquals(PAGES, table.readers.size());
+		assertEquals(PAGES - 2, table.readsOn("simpledb-read-ahead"));
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(ReadAheadTest.class);
+	}
+}
@@ -0,0 +1,142 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class TupleBatchTest extends SimpleDbTestBase {
+
+	/**
+	 * Scanning, filtering and summing batches gives the same result as doing it
+	 * a tuple at a time.
+	 */
+	@Test
+	public void scanFilterAggregate() throws Exception {
+		HeapFile table = SystemTestUtil.createRandomHeapFile(3, 5000, null, null);
+		Predicate p = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(1 << 15));
+		TransactionId tid = new TransactionId();
+
+		long rowSum = 0;
+		int rowCount = 0;
+		Tuple first = null;
+		SeqScan scan = new SeqScan(tid, table.getId(), "");
+		scan.open();
+		while (scan.hasNext()) {
+			Tuple t = scan.next();
+			if (p.filter(t)) {
+				if (first == null)
+					first = t;
+				rowSum += t.getInt(0);
+				rowCount++;
+			}
+		}
+		scan.close();
+
+		long batchSum = 0;
+		int batchCount = 0;
+		int batches = 0;
+		scan = new SeqScan(tid, table.getId(), "");
+		scan.open();
+		for (TupleBatch batch = scan.nextBatch(); batch != null; batch = scan.nextBatch()) {
+			batches++;
+			int n = batch.filter(p);
+			int[] sel = batch.getSelection();
+			long[] values = batch.getColumn(0);
+			for (int k = 0; k < n; k++)
+				batchSum += values[sel[k]];
+			batchCount += n;
+			if (batches == 1) {
+				assertEquals(first.getRecordId(), batch.getTuple(sel[0]).getRecordId());
+				assertEquals(first.toString(), batch.getTuple(sel[0]).toString());
+			}
+		}
+		scan.close();
+		Database.getBufferPool().transactionComplete(tid);
+
+		assertEquals((5000 + TupleBatch.DEFAULT_CAPACITY - 1) / TupleBatch.DEFAULT_CAPACITY, batches);
+		assertEquals(rowCount, batchCount);
+		assertEquals(rowSum, batchSum);
+	}
+
+	/**
+	 * Tuples and batches of a scan continue where the other left off.
+	 */
+	@Test
+	public void mixed() throws Exception {
+		ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+		HeapFile table = SystemTestUtil.createRandomHeapFile(2, 2000, null, tuples);
+		TransactionId tid = new TransactionId();
+		SeqScan scan = new SeqScan(tid, table.getId(), "");
+		scan.open();
+		ArrayList<ArrayList<Integer>> seen = new ArrayList<ArrayList<Integer>>();
+		for (int i = 0; i < 10; i++)
+			seen.add(SystemTestUtil.tupleToList(scan.next()));
+		TupleBatch batch = scan.nextBatch();
+		assertEquals(TupleBatch.DEFAULT_CAPACITY, batch.size());
+		for (int row = 0; row < batch.size(); row++)
+			seen.add(SystemTestUtil.tupleToList(batch.getTuple(row)));
+		while (scan.hasNext())
+			seen.add(SystemTestUtil.tupleToList(scan.next()));
+		assertNull(scan.nextBatch());
+		scan.close();
+		Database.getBufferPool().transactionComplete(tid);
+		assertEquals(tuples, seen);
+	}
+
+	/**
+	 * Tuples of every type go through batches and back unchanged, and batches
+	 * filter on strings and doubles.
+	 */
+	@Test
+	public void adapters() throws Exception {
+		TupleDesc td = new TupleDesc(new Type[] { Type.VARCHAR_TYPE, Type.DOUBLE_TYPE, Type.STRING_TYPE,
+				Type.TIMESTAMP_TYPE });
+		ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+		for (int i = 0; i < 10; i++) {
+			Tuple t = new Tuple(td);
+			t.setField(0, new StringField("v\u00e4lue " + i));
+			t.setField(1, new DoubleField(i / 4.0));
+			t.setField(2, new StringField("s" + i, Type.STRING_LEN));
+			t.setField(3, new TimestampField(i * 1000000L));
+			tuples.add(t);
+		}
+
+		BatchToRowIterator rows = new BatchToRowIterator(new RowToBatchIterator(new TupleIterator(td, tuples), 3));
+		rows.open();
+		for (int pass = 0; pass < 2; pass++) {
+			for (Tuple t : tuples) {
+				assertTrue(rows.hasNext());
+				assertEquals(t.toString(), rows.next().toString());
+			}
+			assertFalse(rows.hasNext());
+			rows.rewind();
+		}
+		rows.close();
+
+		RowToBatchIterator batches = new RowToBatchIterator(new TupleIterator(td, tuples));
+		batches.open();
+		TupleBatch batch = batches.nextBatch();
+		assertEquals(10, batch.size());
+		assertEquals(7, batch.filter(new Predicate(1, Predicate.Op.LESS_THAN_OR_EQ, new DoubleField(1.5))));
+		assertEquals(1, batch.filter(new Predicate(0, Predicate.Op.LIKE, new StringField("\u00e4lue 3"))));
+		assertEquals(3, batch.getSelection()[0]);
+		assertEquals("s3", batch.getString(2, 3));
+		assertEquals(3000000L, batch.getLong(3, 3));
+		assertNull(batches.nextBatch());
+		batches.close();
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(TupleBatchTest.class);
+	}
+}
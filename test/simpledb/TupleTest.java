@@ -1,6 +1,12 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Test;
@@ -57,6 +63,107 @@ public class TupleTest extends SimpleDbTestBase {
 	}
     }
 
+    /**
+     * Unit test for packed tuples: Tuple.getInt(), Tuple.getString() and the
+     * Fields created by Tuple.getField()
+     */
+    @Test public void packedFields() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE });
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeInt(0xdeadbeef); // bytes before the tuple
+        new IntField(-7).serialize(dos);
+        new StringField("packed", Type.STRING_LEN).serialize(dos);
+        new IntField(42).serialize(dos);
+        dos.flush();
+
+        Tuple tup = Tuple.decode(td, ByteBuffer.wrap(baos.toByteArray()), 4);
+        assertEquals(-7, tup.getInt(0));
+        assertEquals("packed", tup.getString(1));
+        assertEquals(42, tup.getInt(2));
+        assertEquals(new IntField(-7), tup.getField(0));
+        assertEquals(new StringField("packed", Type.STRING_LEN), tup.getField(1));
+        assertEquals("-7\tpacked\t42\n", tup.toString());
+
+        // a field that is set replaces the packed value
+        tup.setField(2, new IntField(43));
+        assertEquals(43, tup.getInt(2));
+        assertEquals(new IntField(43), tup.getField(2));
+        assertEquals(-7, tup.getInt(0));
+
+        try {
+            tup.getInt(1);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /**
+     * Strings are stored as UTF-8: a VARCHAR with its actual length, a fixed
+     * length string truncated to whole characters.
+     */
+    @Test public void utf8Strings() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.VARCHAR_TYPE, Type.INT_TYPE, Type.STRING_TYPE });
+        String s = "Gr\u00fc\u00dfe, \u4e16\u754c \uD83D\uDE00";
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        new StringField(s).serialize(dos);
+        new IntField(5).serialize(dos);
+        new StringField(s, Type.STRING_LEN).serialize(dos);
+        dos.flush();
+        int encoded = s.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+        assertEquals(2 + encoded + 4 + Type.STRING_TYPE.getLen(), baos.size());
+
+        Tuple tup = Tuple.decode(td, ByteBuffer.wrap(baos.toByteArray()), 0);
+        assertEquals(s, tup.getString(0));
+        assertEquals(5, tup.getInt(1));
+        assertEquals(s, tup.getString(2));
+        assertEquals(Type.VARCHAR_TYPE, tup.getField(0).getType());
+        assertEquals(new StringField(s), tup.getField(0));
+        assertEquals(new StringField(s), Type.VARCHAR_TYPE.parse(ByteBuffer.wrap(baos.toByteArray()), 0));
+
+        // 43 three-byte characters do not fit in STRING_LEN bytes
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 43; i++)
+            sb.append('\u4e16');
+        assertEquals(42, new StringField(sb.toString(), Type.STRING_LEN).getValue().length());
+    }
+
+    /**
+     * Tuple.decode() of a tuple whose strings are all empty
+     */
+    @Test public void emptyStrings() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.VARCHAR_TYPE });
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        new IntField(8).serialize(dos);
+        new StringField("", Type.STRING_LEN).serialize(dos);
+        new StringField("").serialize(dos);
+        dos.flush();
+
+        // decoded at a non-zero offset so stale buffer offsets would show
+        byte[] bytes = new byte[baos.size() + 8];
+        System.arraycopy(baos.toByteArray(), 0, bytes, 8, baos.size());
+        Tuple tup = Tuple.decode(td, ByteBuffer.wrap(bytes), 8);
+        assertEquals(8, tup.getInt(0));
+        assertEquals("", tup.getString(1));
+        assertEquals("", tup.getString(2));
+        assertEquals(new StringField("", Type.STRING_LEN), tup.getField(1));
+        assertEquals(new StringField(""), tup.getField(2));
+        assertEquals("8\t\t\n", tup.toString());
+    }
+
+    /**
+     * Unit test for Tuple.getInt() on a tuple built from Fields
+     */
+    @Test public void unpackedGetInt() {
+        Tuple tup = new Tuple(Utility.getTupleDesc(2));
+        tup.setField(0, new IntField(5));
+        tup.setField(1, new IntField(-5));
+        assertEquals(5, tup.getInt(0));
+        assertEquals(-5, tup.getInt(1));
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,115 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class TypeTest extends SimpleDbTestBase {
+	private static final Type[] TYPES = { Type.INT_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE, Type.DECIMAL_TYPE,
+			Type.DATE_TYPE, Type.TIMESTAMP_TYPE };
+
+	/**
+	 * Values of every fixed-width type are encoded from text, stored and read
+	 * back both as Fields and as primitives.
+	 */
+	@Test
+	public void encodeAndScan() throws Exception {
+		File text = File.createTempFile("table", ".txt");
+		text.deleteOnExit();
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(text), StandardCharsets.UTF_8)) {
+			w.write("1, 9000000000, 2.5, 12.34565, 2024-02-29, 2024-02-29 13:45:30.000125\n");
+			w.write("-1, -9000000000, -0.0, -0.0001, 1969-12-31, 1969-12-31T23:59:59.999999\n");
+		}
+		File f = File.createTempFile("table", ".dat");
+		f.deleteOnExit();
+		HeapFileEncoder.convert(text, f, BufferPool.PAGE_SIZE, TYPES.length, TYPES);
+		HeapFile table = new HeapFile(f, new TupleDesc(TYPES), BufferPool.PAGE_SIZE);
+		Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+
+		TransactionId tid = new TransactionId();
+		DbFileIterator it = table.iterator(tid);
+		it.open();
+		Tuple t = it.next();
+		assertEquals(1, t.getInt(0));
+		assertEquals(9000000000L, t.getLong(1));
+		assertEquals(2.5, t.getDouble(2), 0.0);
+		assertEquals(123457, t.getLong(3));
+		assertEquals(new BigDecimal("12.3457"), ((DecimalField) t.getField(3)).getValue());
+		assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), t.getLong(4));
+		assertEquals(LocalDateTime.of(2024, 2, 29, 13, 45, 30, 125000), ((TimestampField) t.getField(5)).getValue());
+		assertEquals("1\t9000000000\t2.5\t12.3457\t2024-02-29\t2024-02-29T13:45:30.000125\n", t.toString());
+
+		t = it.next();
+		assertEquals(-1, t.getLong(4));
+		assertEquals(-1, t.getLong(5));
+		assertEquals(new DecimalField(-1), t.getField(3));
+		assertEquals(new DoubleField(-0.0), t.getField(2));
+		assertFalse(it.hasNext());
+		it.close();
+		Database.getBufferPool().transactionComplete(tid);
+
+		try {
+			t.getDouble(1);
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Fields compare by value; doubles as by Double.compare.
+	 */
+	@Test
+	public void compare() {
+		assertTrue(new LongField(1L << 40).compare(Predicate.Op.GREATER_THAN, new LongField(1)));
+		assertTrue(new DecimalField(new BigDecimal("0.5")).compare(Predicate.Op.LESS_THAN_OR_EQ,
+				Type.DECIMAL_TYPE.fromString("0.50")));
+		assertTrue(new DoubleField(-0.0).compare(Predicate.Op.LESS_THAN, new DoubleField(0.0)));
+		assertTrue(new DoubleField(Double.NaN).compare(Predicate.Op.EQUALS, new DoubleField(Double.NaN)));
+		assertTrue(Type.DATE_TYPE.fromString("2024-03-01").compare(Predicate.Op.GREATER_THAN,
+				Type.DATE_TYPE.fromString("2024-02-29")));
+		assertTrue(Type.TIMESTAMP_TYPE.fromString("2024-02-29T00:00").compare(Predicate.Op.NOT_EQUALS,
+				Type.TIMESTAMP_TYPE.fromString("2024-02-29T00:00:00.000001")));
+		assertTrue(new LongField(3).compare(Predicate.Op.LIKE, new LongField(3)));
+	}
+
+	/**
+	 * Types are found by their catalog names, and values that are not of the
+	 * type are rejected.
+	 */
+	@Test
+	public void names() {
+		assertEquals(Type.DECIMAL_TYPE, Type.forName(" Decimal"));
+		assertEquals(Type.TIMESTAMP_TYPE, Type.forName("timestamp"));
+		assertNull(Type.forName("float"));
+		for (String bad : new String[] { "2024-02-30", "x" }) {
+			try {
+				Type.DATE_TYPE.fromString(bad);
+				fail("expected IllegalArgumentException");
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		try {
+			Type.DECIMAL_TYPE.fromString("1e20");
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(TypeTest.class);
+	}
+}
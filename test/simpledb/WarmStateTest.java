@@ -0,0 +1,149 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class WarmStateTest extends SimpleDbTestBase {
+	private static final int PAGES = 20;
+
+	private HeapFile table;
+	private File dump;
+
+	/**
+	 * Set up a table of twenty pages and a place for the dump.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		table = SystemTestUtil.createRandomHeapFile(1, 992 * PAGES, null, null);
+		dump = File.createTempFile("bufferpool", ".dump");
+		dump.delete();
+		dump.deleteOnExit();
+	}
+
+	private BufferPool newPool(int pages, BufferPool.Eviction eviction) {
+		BufferPool bp = Database.resetBufferPool(pages, eviction);
+		bp.setReadAheadWindow(0);
+		return bp;
+	}
+
+	private void read(BufferPool bp, int... pagenos) throws Exception {
+		TransactionId tid = new TransactionId();
+		for (int pageno : pagenos)
+			bp.getPage(tid, new HeapPageId(table.getId(), pageno), Permissions.READ_ONLY);
+		bp.transactionComplete(tid);
+	}
+
+	/**
+	 * A restarted pool reads the pages that were resident back, and serves them
+	 * without misses.
+	 */
+	@Test
+	public void prewarm() throws Exception {
+		BufferPool bp = newPool(8, BufferPool.DEFAULT_EVICTION);
+		read(bp, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11);
+		assertEquals(12, bp.getMissCount());
+		bp.dumpWarmState(dump);
+
+		bp = newPool(8, BufferPool.DEFAULT_EVICTION);
+		assertEquals(8, bp.prewarm(dump));
+		assertTrue(Double.isNaN(bp.getHitRatio()));
+		read(bp, 4, 5, 6, 7, 8, 9, 10, 11);
+		assertEquals(8, bp.getHitCount());
+		assertEquals(0, bp.getMissCount());
+		assertEquals(1.0, bp.getHitRatio(), 0.0);
+	}
+
+	/**
+	 * A smaller pool takes the hottest pages.
+	 */
+	@Test
+	public void hottestFirst() throws Exception {
+		BufferPool bp = newPool(8, BufferPool.Eviction.LRU_K);
+		read(bp, 0, 1, 2, 3, 4, 5, 6, 7, 5, 2);
+		bp.dumpWarmState(dump);
+
+		bp = newPool(2, BufferPool.Eviction.LRU_K);
+		assertEquals(2, bp.prewarm(dump));
+		read(bp, 2, 5);
+		assertEquals(0, bp.getMissCount());
+	}
+
+	/**
+	 * Pages of dropped tables and past the end of shrunk ones are skipped, and a
+	 * missing dump is a cold start.
+	 */
+	@Test
+	public void stalePages() throws Exception {
+		BufferPool bp = newPool(8, BufferPool.DEFAULT_EVICTION);
+		HeapFile dropped = SystemTestUtil.createRandomHeapFile(1, 992, null, null);
+		read(bp, 0, 1, 15);
+		TransactionId tid = new TransactionId();
+		bp.getPage(tid, new HeapPageId(dropped.getId(), 0), Permissions.READ_ONLY);
+		bp.transactionComplete(tid);
+		bp.dumpWarmState(dump);
+
+		Database.getCatalog().clear();
+		RandomAccessFile raf = new RandomAccessFile(table.getFile(), "rw");
+		raf.setLength(10L * BufferPool.PAGE_SIZE);
+		raf.close();
+		HeapFile shrunk = new HeapFile(table.getFile(), table.getTupleDesc());
+		Database.getCatalog().addTable(shrunk, SystemTestUtil.getUUID());
+		bp = newPool(8, BufferPool.DEFAULT_EVICTION);
+		assertEquals(2, bp.prewarm(dump));
+
+		dump.delete();
+		bp = newPool(8, BufferPool.DEFAULT_EVICTION);
+		assertEquals(0, bp.prewarm(dump));
+	}
+
+	/**
+	 * The warm state is saved periodically once a dump file is set.
+	 */
+	@Test
+	public void periodicDump() throws Exception {
+		BufferPool bp = newPool(8, BufferPool.DEFAULT_EVICTION);
+		read(bp, 0, 1, 2);
+		bp.setWarmStateDump(dump, 10);
+		for (int i = 0; i < 500 && !dump.exists(); i++)
+			Thread.sleep(10);
+		bp.setWarmStateDump(null, 0);
+		assertEquals(0, bp.getWarmStateDumpInterval());
+
+		bp = newPool(8, BufferPool.DEFAULT_EVICTION);
+		assertEquals(3, bp.prewarm(dump));
+	}
+
+	/**
+	 * A periodic dump that cannot be written is counted.
+	 */
+	@Test
+	public void failedDump() throws Exception {
+		BufferPool bp = newPool(8, BufferPool.DEFAULT_EVICTION);
+		read(bp, 0);
+		bp.setWarmStateDump(new File(dump.getPath() + ".missing", "dump"), 5);
+		for (int i = 0; i < 500 && bp.getWarmStateDumpFailures() == 0; i++)
+			Thread.sleep(10);
+		bp.setWarmStateDump(null, 0);
+		assertTrue(bp.getWarmStateDumpFailures() > 0);
+		assertTrue(bp.getLastWarmStateDumpFailure() instanceof IOException);
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(WarmStateTest.class);
+	}
+}
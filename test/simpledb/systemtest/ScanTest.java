@@ -22,6 +22,37 @@ import simpledb.*;
 public class ScanTest extends SimpleDbTestBase {
 	private final static Random r = new Random();
 
+	/** Counts the number of readPage operations. */
+	private static class CountingHeapFile extends HeapFile {
+		public CountingHeapFile(File f, TupleDesc td) {
+			super(f, td);
+		}
+
+		@Override
+		public Page readPage(PageId pid) throws NoSuchElementException {
+			readCount += 1;
+			return super.readPage(pid);
+		}
+
+		public int readCount = 0;
+	}
+
+	/** Creates and registers a single-column table of the given number of full pages. */
+	private static CountingHeapFile createCountingTable(int pages, ArrayList<ArrayList<Integer>> tuples)
+			throws IOException {
+		File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * pages, 1000, null, tuples);
+		CountingHeapFile table = new CountingHeapFile(f, Utility.getTupleDesc(1));
+		Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+		return table;
+	}
+
+	/** Reads every page of a table through the buffer pool. */
+	private static void readPages(HeapFile table, TransactionId tid)
+			throws DbException, TransactionAbortedException {
+		for (int i = 0; i < table.numPages(); i++)
+			Database.getBufferPool().getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+	}
+
 	/** Tests the scan operator for a table with the specified dimensions. */
 	private void validateScan(int[] columnSizes, int[] rowSizes)
 			throws IOException, DbException, TransactionAbortedException {
@@ -109,6 +140,32 @@ public class ScanTest extends SimpleDbTestBase {
 		assertEquals(0, table.readCount);
 	}
 
+	/**
+	 * Verifies that scanning a table larger than the buffer pool runs in a small
+	 * ring and leaves other cached pages alone.
+	 */
+	@Test
+	public void testScanResistance() throws IOException, DbException, TransactionAbortedException {
+		Database.resetBufferPool(20);
+		CountingHeapFile hot = createCountingTable(4, null);
+		ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+		HeapFile big = createCountingTable(60, tuples);
+		TransactionId tid = new TransactionId();
+
+		readPages(hot, tid);
+		SystemTestUtil.matchTuples(big, tuples);
+		hot.readCount = 0;
+		readPages(hot, tid);
+		assertEquals(0, hot.readCount);
+
+		// without a ring the same scan flushes the hot pages out of the pool
+		Database.getBufferPool().setScanRingThreshold(Double.MAX_VALUE);
+		SystemTestUtil.matchTuples(big, tuples);
+		readPages(hot, tid);
+		assertEquals(hot.numPages(), hot.readCount);
+		Database.getBufferPool().transactionComplete(tid);
+	}
+
 	/** Make test compatible with older version of ant. */
 	public static junit.framework.Test suite() {
 		return new junit.framework.JUnit4TestAdapter(ScanTest.class);